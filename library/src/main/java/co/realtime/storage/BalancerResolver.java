@@ -0,0 +1,264 @@
+package co.realtime.storage;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.security.KeyManagementException;
+import java.security.NoSuchAlgorithmException;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+import javax.net.ssl.HttpsURLConnection;
+
+import org.json.simple.JSONObject;
+import org.json.simple.JSONValue;
+
+import co.realtime.storage.entities.BalancerConfig;
+import co.realtime.storage.entities.TimeoutConfig;
+import co.realtime.storage.ext.OnError;
+import co.realtime.storage.ext.StorageException;
+
+//Caches the storage server given by the balancer in cluster mode. Requests that find no valid server
+//wait for the one balancer request in flight instead of sending their own. Shortly before the server
+//expires it is refreshed in the background, so requests keep using the cached one meanwhile.
+//No lock is held during the balancer request: it is bounded by the connect and read timeouts of the
+//context, and the threads joining it wait no longer than those timeouts.
+//A resolver can be shared by the contexts with the same application key and cluster url, it is forgotten once the last of them released it.
+class BalancerResolver {
+	private static final HashMap<String, BalancerResolver> sharedResolvers = new HashMap<String, BalancerResolver>();
+
+	private final String balancerUrl;
+	//the key of a shared resolver and the contexts using it, guarded by sharedResolvers
+	private String sharedKey;
+	private int references;
+	private volatile BalancerConfig config;
+	private final AtomicReference<Endpoint> endpoint = new AtomicReference<Endpoint>();
+	//the balancer request in flight, joined by every thread that needs a server meanwhile
+	private final AtomicReference<Fetch> fetching = new AtomicReference<Fetch>();
+	private final AtomicBoolean refreshing = new AtomicBoolean();
+
+	private final AtomicLong resolutions = new AtomicLong();
+	private final AtomicLong refreshes = new AtomicLong();
+	private final AtomicLong failures = new AtomicLong();
+
+	BalancerResolver(String clusterUrl, String applicationKey, BalancerConfig config){
+		this.balancerUrl = clusterUrl + "?appkey=" + applicationKey;
+		this.config = config;
+	}
+
+	//each call must be matched by a release of the resolver returned
+	static BalancerResolver shared(String clusterUrl, String applicationKey, BalancerConfig config){
+		String key = applicationKey + "@" + clusterUrl;
+		synchronized(sharedResolvers){
+			BalancerResolver resolver = sharedResolvers.get(key);
+			if(resolver == null){
+				resolver = new BalancerResolver(clusterUrl, applicationKey, config);
+				resolver.sharedKey = key;
+				sharedResolvers.put(key, resolver);
+			}
+			resolver.references++;
+			resolver.config = config;
+			return resolver;
+		}
+	}
+
+	//the context no longer uses the resolver, nothing to do unless it is shared
+	void release(){
+		synchronized(sharedResolvers){
+			if(sharedKey == null || references == 0)
+				return;
+			if(--references == 0)
+				sharedResolvers.remove(sharedKey);
+		}
+	}
+
+	String resolve(StorageContext context) throws IOException, StorageException, KeyManagementException, NoSuchAlgorithmException {
+		return resolve(context, Long.MAX_VALUE);
+	}
+
+	//neither the wait for the balancer nor its request outlive the time remaining, in milliseconds, to the deadline of the call
+	String resolve(StorageContext context, long remaining) throws IOException, StorageException, KeyManagementException, NoSuchAlgorithmException {
+		BalancerConfig current = config;
+		Endpoint cached = endpoint.get();
+		if(cached != null){
+			long age = System.currentTimeMillis() - cached.resolvedAt;
+			if(age < current.getTtl()){
+				if(current.getRefreshAhead() > 0 && age >= current.getTtl() - current.getRefreshAhead())
+					refreshInBackground(context);
+				return cached.url;
+			}
+		}
+		return request(context, false, remaining);
+	}
+
+	//asks the balancer again even if the cached server is valid, to discover other storage servers
+	String lookup(StorageContext context) throws IOException, StorageException, KeyManagementException, NoSuchAlgorithmException {
+		return request(context, true, Long.MAX_VALUE);
+	}
+
+	//forgets the server after a request to it failed, unless it was already replaced
+	boolean invalidate(String url){
+		Endpoint cached = endpoint.get();
+		if(cached == null || url == null || !cached.url.equals(url))
+			return false;
+		return endpoint.compareAndSet(cached, null);
+	}
+
+	void collectMetrics(Map<String, Long> metrics){
+		metrics.put("balancer.resolutions", resolutions.get());
+		metrics.put("balancer.refreshes", refreshes.get());
+		metrics.put("balancer.failures", failures.get());
+	}
+
+	private void refreshInBackground(final StorageContext context){
+		if(!refreshing.compareAndSet(false, true))
+			return;
+		context.restExecutor.execute(new Runnable(){
+			@Override
+			public void run() {
+				try {
+					refreshes.incrementAndGet();
+					request(context, true, Long.MAX_VALUE);
+				} catch (Exception e) {
+					//the cached server stays in use until it expires
+				} finally {
+					refreshing.set(false);
+				}
+			}
+		}, new OnError(){
+			@Override
+			public void run(Integer code, String errorMessage) {
+				refreshing.set(false);
+			}
+		});
+	}
+
+	//joins the balancer request in flight, or sends it from the calling thread when there is none
+	private String request(StorageContext context, boolean fresh, long remaining) throws IOException, StorageException, KeyManagementException, NoSuchAlgorithmException {
+		TimeoutConfig timeouts = context.timeouts;
+		while(true){
+			Fetch current = fetching.get();
+			if(current != null)
+				return current.await(Math.min((long) timeouts.getConnectTimeout() + timeouts.getReadTimeout(), remaining));
+			if(!fresh){
+				//the request that just finished may have brought a valid server
+				Endpoint cached = endpoint.get();
+				if(cached != null && System.currentTimeMillis() - cached.resolvedAt < config.getTtl())
+					return cached.url;
+			}
+			Fetch created = new Fetch();
+			if(!fetching.compareAndSet(null, created))
+				continue;
+			String server = null;
+			try {
+				server = fetch(context, timeouts, remaining);
+				return server;
+			} finally {
+				fetching.compareAndSet(created, null);
+				created.finish(server);
+			}
+		}
+	}
+
+	private String fetch(StorageContext context, TimeoutConfig timeouts, long remaining) throws IOException, StorageException, KeyManagementException, NoSuchAlgorithmException {
+		resolutions.incrementAndGet();
+		String server = null;
+		try {
+			URL url = new URL(balancerUrl);
+			int connectTimeout = timeout(timeouts.getConnectTimeout(), remaining);
+			int readTimeout = timeout(timeouts.getReadTimeout(), remaining);
+			String balancerResponse = balancerUrl.startsWith("https:") ? secureBalancerRequest(context, url, connectTimeout, readTimeout) : unsecureBalancerRequest(url, connectTimeout, readTimeout);
+			JSONObject obj = balancerResponse == null ? null : (JSONObject) JSONValue.parse(balancerResponse);
+			if(obj != null)
+				server = (String) obj.get("url");
+		} catch (IOException e) {
+			failures.incrementAndGet();
+			throw e;
+		}
+		if(server == null){
+			failures.incrementAndGet();
+			throw new StorageException("Cannot get response from balancer!");
+		}
+		endpoint.set(new Endpoint(server, System.currentTimeMillis()));
+		return server;
+	}
+
+	//0 would mean no timeout at all
+	private static int timeout(int configured, long remaining){
+		return (int) Math.max(1, Math.min(configured, remaining));
+	}
+
+	private static String unsecureBalancerRequest(URL url, int connectTimeout, int readTimeout) throws IOException {
+		HttpURLConnection connection = (HttpURLConnection) url.openConnection();
+		connection.setConnectTimeout(connectTimeout);
+		connection.setReadTimeout(readTimeout);
+		connection.setRequestProperty("user-agent", "storage-java-client");
+		return readResponse(connection);
+	}
+
+	private static String secureBalancerRequest(StorageContext context, URL url, int connectTimeout, int readTimeout) throws IOException, NoSuchAlgorithmException, KeyManagementException {
+		HttpsURLConnection conn = (HttpsURLConnection) url.openConnection();
+		conn.setSSLSocketFactory(context.tls.getSocketFactory());
+		conn.setConnectTimeout(connectTimeout);
+		conn.setReadTimeout(readTimeout);
+		conn.setRequestMethod("GET");
+		conn.setDoInput(true);
+		conn.connect();
+		return readResponse(conn);
+	}
+
+	private static String readResponse(HttpURLConnection connection) throws IOException {
+		BufferedReader rd = new BufferedReader(new InputStreamReader(connection.getInputStream()));
+		StringBuilder response = new StringBuilder();
+		try {
+			String line;
+			while ((line = rd.readLine()) != null) {
+				response.append(line);
+			}
+		} finally {
+			rd.close();
+		}
+		return response.toString();
+	}
+
+	//the outcome of one balancer request, null when it failed
+	private static class Fetch {
+		private final CountDownLatch done = new CountDownLatch(1);
+		private volatile String server;
+
+		void finish(String server){
+			this.server = server;
+			done.countDown();
+		}
+
+		String await(long timeout) throws IOException {
+			try {
+				if(!done.await(timeout, TimeUnit.MILLISECONDS))
+					throw new IOException("Timed out waiting for the balancer!");
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new IOException("Interrupted while waiting for the balancer!");
+			}
+			if(server == null)
+				throw new IOException("Cannot get response from balancer!");
+			return server;
+		}
+	}
+
+	private static class Endpoint {
+		final String url;
+		final long resolvedAt;
+
+		Endpoint(String url, long resolvedAt){
+			this.url = url;
+			this.resolvedAt = resolvedAt;
+		}
+	}
+}
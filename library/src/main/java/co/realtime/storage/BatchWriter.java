@@ -0,0 +1,173 @@
+package co.realtime.storage;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+
+import co.realtime.storage.Rest.RestType;
+import co.realtime.storage.entities.BatchResult;
+import co.realtime.storage.ext.OnBatchCompleted;
+import co.realtime.storage.ext.OnBatchItemError;
+import co.realtime.storage.ext.OnError;
+import co.realtime.storage.ext.OnItemSnapshot;
+
+//Puts or deletes the items of an iterable with a bounded number of requests in flight. The next item is
+//only taken from the iterator when a request completes, so neither the items of a lazy iterable nor their
+//request bodies are held in memory beyond the requests in flight.
+//A request can fail on the calling thread, so next() is a trampoline: a call made while another thread or
+//an outer call is already taking items is left to that loop, and the stack never grows with the items.
+//An item rejected because the request queue is full (1013) is sent again later, a limited number of times,
+//so a queue that stays full or an executor that was shut down fails the item instead of stalling the batch.
+class BatchWriter {
+	//milliseconds before an item rejected by a full request queue is sent again
+	static final long BUSY_RETRY_DELAY = 100;
+	//times an item is sent again after a full request queue before it fails with 1013
+	static final int MAX_BUSY_RETRIES = 20;
+
+	private final TableRef table;
+	private final RestType type;
+	private final Iterator<LinkedHashMap<String, ItemAttribute>> items;
+	private final int parallelism;
+	private final OnBatchItemError onItemError;
+	private final OnBatchCompleted onCompleted;
+
+	private int inFlight;
+	//the items asked for by the completed requests and not taken yet, and whether a loop is taking them
+	private int requested;
+	private boolean taking;
+	private boolean exhausted;
+	private boolean completed;
+	private long succeeded;
+	private long failed;
+	private long startedAt;
+
+	BatchWriter(TableRef table, RestType type, Iterable<LinkedHashMap<String, ItemAttribute>> items, int parallelism, OnBatchItemError onItemError, OnBatchCompleted onCompleted){
+		this.table = table;
+		this.type = type;
+		this.items = items.iterator();
+		this.parallelism = parallelism;
+		this.onItemError = onItemError;
+		this.onCompleted = onCompleted;
+	}
+
+	void start(){
+		startedAt = System.currentTimeMillis();
+		for(int i = 0; i < parallelism; i++)
+			next();
+	}
+
+	private void next(){
+		synchronized(this){
+			requested++;
+			if(taking)
+				return;
+			taking = true;
+		}
+		while(true){
+			synchronized(this){
+				if(requested == 0){
+					taking = false;
+					return;
+				}
+				requested--;
+			}
+			take();
+		}
+	}
+
+	//sends the next item, or completes the batch once the last request is done
+	private void take(){
+		while(true){
+			LinkedHashMap<String, ItemAttribute> item = null;
+			BatchResult result = null;
+			synchronized(this){
+				if(!exhausted && items.hasNext()){
+					item = items.next();
+					inFlight++;
+				} else {
+					exhausted = true;
+					if(inFlight == 0 && !completed){
+						completed = true;
+						result = new BatchResult(succeeded, failed, System.currentTimeMillis() - startedAt);
+					}
+				}
+			}
+			if(item == null){
+				if(result != null && onCompleted != null)
+					onCompleted.run(result);
+				return;
+			}
+			//an item rejected before being sent is replaced by the next one in this loop
+			if(send(item))
+				return;
+		}
+	}
+
+	private boolean send(final LinkedHashMap<String, ItemAttribute> item){
+		PostBodyBuilder pbb = new PostBodyBuilder(table.context);
+		pbb.addObject("table", table.name);
+		if(type == RestType.DELETEITEM){
+			LinkedHashMap<String, Object> key = key(item);
+			if(key == null){
+				record(item, 1001, "The item does not have the key attributes of the table");
+				return false;
+			}
+			pbb.addObject("key", key);
+		} else {
+			pbb.addObject("item", item);
+		}
+		send(item, pbb, 0);
+		return true;
+	}
+
+	private void send(final LinkedHashMap<String, ItemAttribute> item, final PostBodyBuilder pbb, final int busyRetries){
+		Rest r = new Rest(table.context, type, pbb, table);
+		r.onItemSnapshot = new OnItemSnapshot(){
+			@Override
+			public void run(ItemSnapshot itemSnapshot) {
+				record(item, null, null);
+				next();
+			}
+		};
+		r.onError = new OnError(){
+			@Override
+			public void run(Integer code, String errorMessage) {
+				if(code != null && code == 1013 && busyRetries < MAX_BUSY_RETRIES){
+					//the item keeps its place among the requests in flight until the queue has room
+					table.context.scheduleOnTimer(new Runnable(){
+						@Override
+						public void run() {
+							send(item, pbb, busyRetries + 1);
+						}
+					}, BUSY_RETRY_DELAY);
+					return;
+				}
+				record(item, code, errorMessage);
+				next();
+			}
+		};
+		table.context.processRest(r);
+	}
+
+	private LinkedHashMap<String, Object> key(LinkedHashMap<String, ItemAttribute> item){
+		ItemKey id = ItemKey.of(table.context.getTableMeta(table.name), item);
+		if(id == null)
+			return null;
+		LinkedHashMap<String, Object> key = new LinkedHashMap<String, Object>();
+		key.put("primary", id.primary);
+		if(id.secondary != null)
+			key.put("secondary", id.secondary);
+		return key;
+	}
+
+	private void record(LinkedHashMap<String, ItemAttribute> item, Integer code, String errorMessage){
+		synchronized(this){
+			inFlight--;
+			if(code == null)
+				succeeded++;
+			else
+				failed++;
+		}
+		if(code != null && onItemError != null)
+			onItemError.run(item, code, errorMessage);
+	}
+}
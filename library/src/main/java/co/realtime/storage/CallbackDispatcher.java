@@ -0,0 +1,208 @@
+package co.realtime.storage;
+
+import java.lang.Thread.UncaughtExceptionHandler;
+import java.util.LinkedList;
+import java.util.Map;
+import java.util.concurrent.Executor;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import co.realtime.storage.entities.DispatchConfig;
+import co.realtime.storage.entities.DispatchConfig.DispatchMode;
+
+//Runs the listeners of the notifications. Except inline, the channels are spread over partitions by their
+//name; a partition runs its listeners one after the other in arrival order, and has at most one task
+//submitted to its executor at a time, so the partitions run in parallel and the order within a channel holds.
+//A dispatcher that replaces another one hands the notifications to it until it has run every listener it had
+//queued, so the order within a channel also holds across a change of the configuration.
+class CallbackDispatcher {
+	private static final long KEEP_ALIVE_SECONDS = 30;
+	//listeners a partition runs before giving its thread back to a shared executor
+	private static final int BATCH = 64;
+	private static final AtomicInteger dispatcherNumber = new AtomicInteger(1);
+
+	private final Partition[] partitions;
+	private final ThreadPoolExecutor pool;
+	//the exceptions thrown by the listeners that do not run inline
+	private final UncaughtExceptionHandler onListenerError;
+	//the replaced dispatcher, until its listeners have run
+	private volatile CallbackDispatcher previous;
+	//the listeners queued or running
+	private final AtomicLong pending = new AtomicLong();
+
+	private final AtomicLong queued = new AtomicLong();
+	private final AtomicLong callbacks = new AtomicLong();
+	private final AtomicLong listenerNanos = new AtomicLong();
+	private final AtomicLong maxListenerNanos = new AtomicLong();
+
+	CallbackDispatcher(DispatchConfig config, CallbackDispatcher previous, UncaughtExceptionHandler onListenerError){
+		this.onListenerError = onListenerError;
+		if(previous != null && !previous.retireIfIdle())
+			this.previous = previous;
+		DispatchMode mode = config.getMode();
+		Executor executor = config.getExecutor();
+		if(mode == DispatchMode.INLINE || mode == null || (mode == DispatchMode.EXECUTOR && executor == null)){
+			this.pool = null;
+			this.partitions = null;
+			return;
+		}
+		int count = mode == DispatchMode.SERIAL ? 1 : config.getPartitions();
+		if(mode == DispatchMode.EXECUTOR){
+			this.pool = null;
+		} else {
+			final int number = dispatcherNumber.getAndIncrement();
+			ThreadFactory factory = new ThreadFactory(){
+				private final AtomicInteger threadNumber = new AtomicInteger(1);
+				@Override
+				public Thread newThread(Runnable r) {
+					Thread t = new Thread(r, "storage-" + number + "-dispatch-" + threadNumber.getAndIncrement());
+					t.setDaemon(true);
+					return t;
+				}
+			};
+			//a partition has one task at most, so the queue never holds more than the partitions
+			this.pool = new ThreadPoolExecutor(count, count, KEEP_ALIVE_SECONDS, TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>(), factory);
+			this.pool.allowCoreThreadTimeOut(true);
+			executor = this.pool;
+		}
+		this.partitions = new Partition[count];
+		for(int i = 0; i < count; i++)
+			this.partitions[i] = new Partition(executor);
+	}
+
+	void dispatch(String channel, final Event ev, final ItemSnapshot itemSnapshot){
+		CallbackDispatcher old = previous;
+		if(old != null){
+			if(!old.retireIfIdle()){
+				old.dispatch(channel, ev, itemSnapshot);
+				return;
+			}
+			previous = null;
+		}
+		Runnable listener = new Runnable(){
+			@Override
+			public void run() {
+				ev.fire(itemSnapshot);
+			}
+		};
+		if(partitions == null){
+			run(listener);
+			return;
+		}
+		partitions[(channel.hashCode() & Integer.MAX_VALUE) % partitions.length].add(listener);
+	}
+
+	//true once every listener queued has run, the threads of the dispatcher are then released
+	private boolean retireIfIdle(){
+		if(pending.get() > 0)
+			return false;
+		CallbackDispatcher old = previous;
+		if(old != null && !old.retireIfIdle())
+			return false;
+		if(pool != null)
+			pool.shutdown();
+		return true;
+	}
+
+	void collectMetrics(Map<String, Long> metrics){
+		metrics.put("dispatch.queueDepth", queued.get());
+		metrics.put("dispatch.callbacks", callbacks.get());
+		metrics.put("dispatch.listenerTimeMs", TimeUnit.NANOSECONDS.toMillis(listenerNanos.get()));
+		metrics.put("dispatch.maxListenerTimeMs", TimeUnit.NANOSECONDS.toMillis(maxListenerNanos.get()));
+	}
+
+	private void run(Runnable listener){
+		long start = System.nanoTime();
+		try {
+			listener.run();
+		} finally {
+			long elapsed = System.nanoTime() - start;
+			callbacks.incrementAndGet();
+			listenerNanos.addAndGet(elapsed);
+			long max = maxListenerNanos.get();
+			while(elapsed > max && !maxListenerNanos.compareAndSet(max, elapsed))
+				max = maxListenerNanos.get();
+		}
+	}
+
+	//guarded by its own monitor
+	private class Partition implements Runnable {
+		private final Executor executor;
+		private final LinkedList<Runnable> queue = new LinkedList<Runnable>();
+		private boolean scheduled;
+
+		Partition(Executor executor){
+			this.executor = executor;
+		}
+
+		void add(Runnable listener){
+			boolean schedule;
+			synchronized(this){
+				queue.add(listener);
+				schedule = !scheduled;
+				scheduled = true;
+			}
+			pending.incrementAndGet();
+			queued.incrementAndGet();
+			if(schedule && !submit())
+				run();
+		}
+
+		@Override
+		public void run() {
+			boolean finished = false;
+			try {
+				//the executor was shut down or is full when the partition can not be submitted again, it carries on here
+				while(drain() && !submit());
+				finished = true;
+			} finally {
+				//an Error thrown by a listener ends this run, the listeners queued behind it still get a thread
+				if(!finished && !submit())
+					unschedule();
+			}
+		}
+
+		private synchronized void unschedule(){
+			scheduled = false;
+		}
+
+		//runs a batch of listeners; false once the queue is empty
+		private boolean drain(){
+			for(int i = 0; i < BATCH; i++){
+				Runnable listener;
+				synchronized(this){
+					listener = queue.poll();
+					if(listener == null){
+						scheduled = false;
+						return false;
+					}
+				}
+				queued.decrementAndGet();
+				try {
+					CallbackDispatcher.this.run(listener);
+				} catch (RuntimeException e) {
+					//a failing listener does not stop the ones queued behind it
+					if(onListenerError != null)
+						onListenerError.uncaughtException(Thread.currentThread(), e);
+				} finally {
+					pending.decrementAndGet();
+				}
+			}
+			return true;
+		}
+
+		private boolean submit(){
+			try {
+				executor.execute(this);
+				return true;
+			} catch (RejectedExecutionException e) {
+				return false;
+			}
+		}
+	}
+}
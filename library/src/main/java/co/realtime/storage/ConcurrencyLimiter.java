@@ -0,0 +1,178 @@
+package co.realtime.storage;
+
+import java.util.ArrayList;
+import java.util.LinkedList;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import co.realtime.storage.entities.ConcurrencyLimitConfig;
+import co.realtime.storage.ext.OnError;
+
+//Limits the requests in flight to each table to a window found by additive increase and multiplicative
+//decrease. While the window is full and the latency stays near the lowest recent latency, it grows by about
+//one request per round trip. It is halved when the storage throttles or fails, and cut by a tenth when the
+//latency inflates, at most once per round trip. The requests beyond the window wait in a queue.
+class ConcurrencyLimiter {
+	private static final double ALPHA = 0.2;
+	private static final double TOLERANCE = 2.0;
+	private static final double OVERLOAD_DECREASE = 0.5;
+	private static final double LATENCY_DECREASE = 0.9;
+	private static final int BASELINE_PERIOD = 100;
+
+	private final ConcurrencyLimitConfig config;
+	private final StorageContext context;
+	private final ConcurrentHashMap<String, Window> windows = new ConcurrentHashMap<String, Window>();
+
+	private final AtomicLong rejected = new AtomicLong();
+
+	ConcurrencyLimiter(StorageContext context, ConcurrencyLimitConfig config){
+		this.context = context;
+		this.config = config;
+	}
+
+	//true when the window of the table lets the caller send the request right away; otherwise the request
+	//is queued and later run on the executor, or rejected when the queue is full. A request sent must call
+	//release once it got its response
+	boolean acquire(String table, Runnable request, OnError onError){
+		Window window = window(table);
+		synchronized(window){
+			if(window.inFlight < (int) window.limit){
+				window.inFlight++;
+				return true;
+			}
+			if(window.queue.size() < config.getMaxQueued()){
+				window.queue.add(new Pending(window, request, onError));
+				return false;
+			}
+		}
+		rejected.incrementAndGet();
+		if(onError != null)
+			onError.run(1013, "The request queue is full!");
+		return false;
+	}
+
+	//a negative latency, for an aborted request, gives the place back without adapting the window
+	void release(String table, long latency, boolean overloaded){
+		Window window = windows.get(table);
+		if(window == null)
+			return;
+		ArrayList<Pending> next;
+		synchronized(window){
+			window.inFlight--;
+			if(latency >= 0)
+				window.adapt(latency, overloaded, System.currentTimeMillis(), config.getMaxLimit());
+			next = window.admit();
+		}
+		for(Pending pending : next)
+			start(pending);
+	}
+
+	void collectMetrics(Map<String, Long> metrics){
+		metrics.put("concurrency.rejected", rejected.get());
+		for(Map.Entry<String, Window> entry : windows.entrySet()){
+			Window window = entry.getValue();
+			synchronized(window){
+				metrics.put("concurrency." + entry.getKey() + ".limit", (long) window.limit);
+				metrics.put("concurrency." + entry.getKey() + ".inFlight", (long) window.inFlight);
+				metrics.put("concurrency." + entry.getKey() + ".queued", (long) window.queue.size());
+			}
+		}
+	}
+
+	private Window window(String table){
+		Window window = windows.get(table);
+		if(window == null){
+			Window created = new Window(Math.min(config.getInitialLimit(), config.getMaxLimit()));
+			window = windows.putIfAbsent(table, created);
+			if(window == null)
+				window = created;
+		}
+		return window;
+	}
+
+	private void start(final Pending pending){
+		//a queued request the executor does not run gives its place back
+		context.restExecutor.execute(pending.request, new OnError(){
+			@Override
+			public void run(Integer code, String errorMessage) {
+				ArrayList<Pending> next;
+				synchronized(pending.window){
+					pending.window.inFlight--;
+					next = pending.window.admit();
+				}
+				for(Pending queued : next)
+					start(queued);
+				if(pending.onError != null)
+					pending.onError.run(code, errorMessage);
+			}
+		});
+	}
+
+	private static class Pending {
+		final Window window;
+		final Runnable request;
+		final OnError onError;
+
+		Pending(Window window, Runnable request, OnError onError){
+			this.window = window;
+			this.request = request;
+			this.onError = onError;
+		}
+	}
+
+	//guarded by its own monitor
+	private static class Window {
+		double limit;
+		int inFlight;
+		final LinkedList<Pending> queue = new LinkedList<Pending>();
+		private double smoothed = -1;
+		private double baseline = -1;
+		private double periodMin = -1;
+		private int periodSamples;
+		private long lastDecrease;
+
+		Window(int limit){
+			this.limit = limit;
+		}
+
+		void adapt(long latency, boolean overloaded, long now, int maxLimit){
+			if(overloaded){
+				decrease(OVERLOAD_DECREASE, now);
+				return;
+			}
+			smoothed = smoothed < 0 ? latency : ALPHA * latency + (1 - ALPHA) * smoothed;
+			//the lowest latency of the previous period, so the baseline follows a slower storage
+			periodMin = periodMin < 0 ? latency : Math.min(periodMin, latency);
+			if(baseline < 0 || latency < baseline)
+				baseline = latency;
+			if(++periodSamples >= BASELINE_PERIOD){
+				baseline = periodMin;
+				periodMin = -1;
+				periodSamples = 0;
+			}
+			if(smoothed > TOLERANCE * Math.max(baseline, 1)){
+				decrease(LATENCY_DECREASE, now);
+			} else if(inFlight + 1 >= (int) limit || !queue.isEmpty()){
+				//only a window in use grows, an idle client keeps its limit
+				limit = Math.min(maxLimit, limit + 1 / limit);
+			}
+		}
+
+		private void decrease(double factor, long now){
+			if(now - lastDecrease < Math.max(smoothed, 1))
+				return;
+			limit = Math.max(1, limit * factor);
+			lastDecrease = now;
+		}
+
+		ArrayList<Pending> admit(){
+			ArrayList<Pending> next = new ArrayList<Pending>();
+			while(inFlight < (int) limit && !queue.isEmpty()){
+				next.add(queue.poll());
+				inFlight++;
+			}
+			return next;
+		}
+	}
+}
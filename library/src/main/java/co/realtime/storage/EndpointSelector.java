@@ -0,0 +1,292 @@
+package co.realtime.storage;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.net.MalformedURLException;
+import java.net.URL;
+import java.security.KeyManagementException;
+import java.security.NoSuchAlgorithmException;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+import co.realtime.storage.entities.EndpointSelectionConfig;
+import co.realtime.storage.ext.OnError;
+import co.realtime.storage.ext.StorageException;
+
+//Spreads the requests over a few storage servers instead of pinning the one given by the balancer.
+//Each server keeps an exponentially weighted moving average of its latency and of its error rate,
+//fed by the requests sent to it and by periodic probes, and each request goes to the best server.
+//The servers come from the configuration or, in cluster mode, from the successive balancer answers.
+//A discovered server is evicted once it fails a request or its error rate reaches UNHEALTHY, and the
+//balancer is asked again when no healthy server is left, as a single server would be after an error.
+class EndpointSelector {
+	private static final double ALPHA = 0.2;
+	private static final double ERROR_PENALTY = 10;
+	private static final double UNHEALTHY = 0.5;
+	private static final int PROBE_TIMEOUT = 5000;
+
+	private final EndpointSelectionConfig config;
+	private final Source source;
+	private final boolean discover;
+	private final CopyOnWriteArrayList<Endpoint> endpoints;
+	private final AtomicBoolean probing = new AtomicBoolean();
+	private volatile long lastProbe;
+
+	private final AtomicLong probes = new AtomicLong();
+	private final AtomicLong switches = new AtomicLong();
+	private final AtomicLong evictions = new AtomicLong();
+	private volatile Endpoint lastSelected;
+
+	EndpointSelector(EndpointSelectionConfig config, Source source){
+		this.config = config;
+		this.source = source;
+		this.endpoints = new CopyOnWriteArrayList<Endpoint>();
+		for(String url : config.getEndpoints())
+			this.endpoints.add(new Endpoint(url));
+		this.discover = this.endpoints.isEmpty();
+		this.lastProbe = System.currentTimeMillis();
+	}
+
+	String select(long remaining) throws IOException, StorageException, KeyManagementException, NoSuchAlgorithmException {
+		probeIfDue();
+		Endpoint best = best(true);
+		if(best == null && (discover || endpoints.isEmpty())){
+			add(source.resolve(remaining));
+			best = best(true);
+		}
+		//the configured servers are kept even when they all fail, the least bad one is used
+		if(best == null)
+			best = best(false);
+		if(best == null)
+			throw new IOException("No storage server available!");
+		if(lastSelected != best){
+			lastSelected = best;
+			switches.incrementAndGet();
+		}
+		return best.url;
+	}
+
+	void record(String url, long latency, boolean success){
+		Endpoint endpoint = find(url);
+		if(endpoint == null)
+			return;
+		endpoint.record(latency, success);
+		if(discover && !success && endpoint.errorRate() >= UNHEALTHY)
+			evict(endpoint);
+	}
+
+	//after a request to the server failed; true when the retry can go to another server
+	boolean invalidate(String url){
+		if(discover){
+			//the balancer forgot the server too, the next request goes to another known server or to a new balancer answer
+			Endpoint endpoint = find(url);
+			if(endpoint != null)
+				evict(endpoint);
+			return true;
+		}
+		return hasAlternative(url);
+	}
+
+	//the best server other than the given one, or the given one when it is the only server
+	String alternative(String url){
+		Endpoint best = null;
+		for(Endpoint endpoint : endpoints){
+			if(!endpoint.url.equals(url) && (best == null || endpoint.score() < best.score()))
+				best = endpoint;
+		}
+		return best == null ? url : best.url;
+	}
+
+	//true when another server can take the retry of a failed request
+	boolean hasAlternative(String url){
+		for(Endpoint endpoint : endpoints){
+			if(!endpoint.url.equals(url) && endpoint.errorRate() < UNHEALTHY)
+				return true;
+		}
+		return false;
+	}
+
+	void collectMetrics(Map<String, Long> metrics){
+		metrics.put("endpoints.count", (long) endpoints.size());
+		metrics.put("endpoints.probes", probes.get());
+		metrics.put("endpoints.switches", switches.get());
+		metrics.put("endpoints.evictions", evictions.get());
+		//keyed by server, the position of a server changes as others are evicted or discovered
+		for(Endpoint endpoint : endpoints){
+			metrics.put("endpoints." + endpoint.name + ".latency", endpoint.latency());
+			metrics.put("endpoints." + endpoint.name + ".errorPercent", Math.round(endpoint.errorRate() * 100));
+		}
+	}
+
+	//the server with the lowest score, among the healthy ones only if asked
+	private Endpoint best(boolean healthy){
+		Endpoint best = null;
+		double bestScore = 0;
+		for(Endpoint endpoint : endpoints){
+			if(healthy && endpoint.errorRate() >= UNHEALTHY)
+				continue;
+			double score = endpoint.score();
+			if(best == null || score < bestScore){
+				best = endpoint;
+				bestScore = score;
+			}
+		}
+		return best;
+	}
+
+	private void evict(Endpoint endpoint){
+		if(endpoints.remove(endpoint)){
+			evictions.incrementAndGet();
+			source.forget(endpoint.url);
+		}
+	}
+
+	private Endpoint find(String url){
+		for(Endpoint endpoint : endpoints){
+			if(endpoint.url.equals(url))
+				return endpoint;
+		}
+		return null;
+	}
+
+	private synchronized void add(String url){
+		if(url == null || find(url) != null)
+			return;
+		if(endpoints.size() >= config.getMaxEndpoints()){
+			//the new server takes the place of the worst one
+			Endpoint worst = null;
+			for(Endpoint endpoint : endpoints){
+				if(worst == null || endpoint.score() > worst.score())
+					worst = endpoint;
+			}
+			endpoints.remove(worst);
+		}
+		endpoints.add(new Endpoint(url));
+	}
+
+	private void probeIfDue(){
+		if(System.currentTimeMillis() - lastProbe < config.getProbeInterval() || !probing.compareAndSet(false, true))
+			return;
+		lastProbe = System.currentTimeMillis();
+		source.execute(new Runnable(){
+			@Override
+			public void run() {
+				try {
+					probe();
+				} finally {
+					probing.set(false);
+				}
+			}
+		}, new OnError(){
+			@Override
+			public void run(Integer code, String errorMessage) {
+				probing.set(false);
+			}
+		});
+	}
+
+	void probe(){
+		probes.incrementAndGet();
+		if(discover){
+			try {
+				add(source.lookup());
+			} catch (Exception e) {
+				//the known servers are still probed
+			}
+		}
+		for(Endpoint endpoint : endpoints){
+			long start = System.nanoTime();
+			boolean success = ping(endpoint.url);
+			record(endpoint.url, (System.nanoTime() - start) / 1000000, success);
+		}
+	}
+
+	//any http answer counts, only the time to reach the server matters
+	private boolean ping(String url){
+		try {
+			HttpURLConnection connection = source.open(url);
+			//a probe holds a worker, it never waits longer than a storage request would
+			connection.setConnectTimeout(Math.min(PROBE_TIMEOUT, connection.getConnectTimeout()));
+			connection.setReadTimeout(Math.min(PROBE_TIMEOUT, connection.getReadTimeout()));
+			connection.setRequestMethod("GET");
+			connection.getResponseCode();
+			InputStream body = connection.getErrorStream();
+			if(body == null){
+				try {
+					body = connection.getInputStream();
+				} catch (IOException e) {
+					body = null;
+				}
+			}
+			if(body != null){
+				while(body.read() != -1);
+				body.close();
+			}
+			return true;
+		} catch (Exception e) {
+			return false;
+		}
+	}
+
+	//where the servers come from and how they are reached, the storage context outside of the tests
+	interface Source {
+		//the balancer server in cluster mode, the url of the context otherwise
+		String resolve(long remaining) throws IOException, StorageException, KeyManagementException, NoSuchAlgorithmException;
+
+		//a new balancer answer even if one is cached, null without balancer
+		String lookup() throws IOException, StorageException, KeyManagementException, NoSuchAlgorithmException;
+
+		//the balancer must not give the evicted server again
+		void forget(String url);
+
+		//a connection with the TLS settings and the timeouts of the storage requests
+		HttpURLConnection open(String url) throws IOException, KeyManagementException, NoSuchAlgorithmException;
+
+		void execute(Runnable task, OnError onError);
+	}
+
+	private static class Endpoint {
+		final String url;
+		//host:port of the server
+		final String name;
+		private double latency = -1;
+		private double errors = 0;
+
+		Endpoint(String url){
+			this.url = url;
+			this.name = name(url);
+		}
+
+		private static String name(String url){
+			try {
+				URL parsed = new URL(url);
+				int port = parsed.getPort() != -1 ? parsed.getPort() : parsed.getDefaultPort();
+				return parsed.getHost() + ":" + port;
+			} catch (MalformedURLException e) {
+				return url;
+			}
+		}
+
+		synchronized void record(long elapsed, boolean success){
+			if(success)
+				latency = latency < 0 ? elapsed : ALPHA * elapsed + (1 - ALPHA) * latency;
+			errors = ALPHA * (success ? 0 : 1) + (1 - ALPHA) * errors;
+		}
+
+		//servers never measured come first, so every server gets a latency
+		synchronized double score(){
+			return (latency < 0 ? 0 : latency) * (1 + ERROR_PENALTY * errors) + ERROR_PENALTY * errors;
+		}
+
+		synchronized long latency(){
+			return Math.round(latency);
+		}
+
+		synchronized double errorRate(){
+			return errors;
+		}
+	}
+}
@@ -12,6 +12,7 @@ class Event {
 	OnItemSnapshot onItemSnapshot;
 	Boolean pushNotificationsEnabled;
 	Boolean isOnTable;
+	private String channelName;
 	/*
 	Event(StorageEvent type, String tableName, ItemAttribute primary, ItemAttribute secondary, Boolean isOnce, Boolean isOnTable, OnItemSnapshot onItemSnapshot){
 		this.type = type;
@@ -41,10 +42,15 @@ class Event {
 	}
 	
 	public String getChannelName(){
-		if(this.primary==null && this.secondary==null)
-			return String.format("rtcs_%s", this.tableName);
-		if(this.secondary==null)
-			return String.format("rtcs_%s:%s", this.tableName, this.primary.toString());
-		return String.format("rtcs_%s:%s_%s", this.tableName, this.primary.toString(), this.secondary.toString());
+		//the key of the event in the subscriptions, built once
+		if(this.channelName == null){
+			if(this.primary==null && this.secondary==null)
+				this.channelName = "rtcs_" + this.tableName;
+			else if(this.secondary==null)
+				this.channelName = "rtcs_" + this.tableName + ":" + this.primary.toString();
+			else
+				this.channelName = "rtcs_" + this.tableName + ":" + this.primary.toString() + "_" + this.secondary.toString();
+		}
+		return this.channelName;
 	}
 }
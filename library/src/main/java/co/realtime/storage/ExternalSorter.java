@@ -0,0 +1,216 @@
+package co.realtime.storage;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.PriorityQueue;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+//Sorts the items of an ordered scan within a memory budget. Items are buffered until the budget is
+//exceeded, then the buffer is sorted and spilled to a temporary file as a run. At the end the runs and
+//the last buffer are k-way merged while the items are handed out, so only one item per run is in memory.
+//Equal items come out in arrival order, as with a stable sort of the whole scan.
+class ExternalSorter {
+	interface ItemConsumer {
+		public void accept(LinkedHashMap<String, ItemAttribute> item);
+	}
+
+	private final Comparator<LinkedHashMap<String, ItemAttribute>> comparator;
+	private final long memoryBudget;
+	private final File tempDir;
+	private final ObjectMapper mapper;
+	private final RestResponseDecoder decoder;
+	private ArrayList<LinkedHashMap<String, ItemAttribute>> buffer;
+	private long bufferSize;
+	private final ArrayList<File> runs;
+
+	ExternalSorter(Comparator<LinkedHashMap<String, ItemAttribute>> comparator, long memoryBudget, File tempDir, ObjectMapper mapper, RestResponseDecoder decoder){
+		this.comparator = comparator;
+		this.memoryBudget = memoryBudget;
+		this.tempDir = tempDir;
+		this.mapper = mapper;
+		this.decoder = decoder;
+		this.buffer = new ArrayList<LinkedHashMap<String, ItemAttribute>>();
+		this.bufferSize = 0;
+		this.runs = new ArrayList<File>();
+	}
+
+	void add(Collection<LinkedHashMap<String, ItemAttribute>> items) throws IOException {
+		for(LinkedHashMap<String, ItemAttribute> item : items){
+			buffer.add(item);
+			bufferSize += estimateSize(item);
+			if(bufferSize > memoryBudget)
+				spill();
+		}
+	}
+
+	int getRunCount(){
+		return runs.size();
+	}
+
+	//hands out every item in order; the sorter must be closed afterwards
+	void drain(ItemConsumer consumer) throws IOException {
+		Collections.sort(buffer, comparator);
+		if(runs.isEmpty()){
+			for(LinkedHashMap<String, ItemAttribute> item : buffer)
+				consumer.accept(item);
+			return;
+		}
+
+		PriorityQueue<Run> heap = new PriorityQueue<Run>(runs.size() + 1, new Comparator<Run>(){
+			@Override
+			public int compare(Run r1, Run r2) {
+				int c = comparator.compare(r1.head, r2.head);
+				return c != 0 ? c : r1.index - r2.index;
+			}
+		});
+		ArrayList<Run> open = new ArrayList<Run>();
+		try {
+			for(int i = 0; i < runs.size(); i++){
+				Run run = new FileRun(i, runs.get(i));
+				open.add(run);
+				if(run.next())
+					heap.add(run);
+			}
+			//the buffer holds the latest items, so it merges as the last run
+			Run last = new BufferRun(runs.size(), buffer);
+			if(last.next())
+				heap.add(last);
+
+			while(!heap.isEmpty()){
+				Run run = heap.poll();
+				consumer.accept(run.head);
+				if(run.next())
+					heap.add(run);
+			}
+		} finally {
+			for(Run run : open)
+				run.close();
+		}
+	}
+
+	void close(){
+		for(File run : runs)
+			run.delete();
+		runs.clear();
+		buffer = new ArrayList<LinkedHashMap<String, ItemAttribute>>();
+		bufferSize = 0;
+	}
+
+	private void spill() throws IOException {
+		Collections.sort(buffer, comparator);
+		File file = File.createTempFile("rtcs-sort-", ".run", tempDir);
+		OutputStream out;
+		try {
+			out = new FileOutputStream(file);
+		} catch (IOException e) {
+			file.delete();
+			throw e;
+		}
+		boolean written = false;
+		try {
+			JsonGenerator generator = mapper.getFactory().createGenerator(new BufferedOutputStream(out));
+			try {
+				generator.writeStartArray();
+				for(LinkedHashMap<String, ItemAttribute> item : buffer)
+					generator.writeObject(item);
+				generator.writeEndArray();
+			} finally {
+				generator.close();
+			}
+			written = true;
+		} finally {
+			//the generator closes the stream, closing it again is harmless and covers a generator that was never created
+			out.close();
+			if(!written)
+				file.delete();
+		}
+		runs.add(file);
+		buffer = new ArrayList<LinkedHashMap<String, ItemAttribute>>();
+		bufferSize = 0;
+	}
+
+	//rough heap footprint of an item: map entry, key and value objects
+	static long estimateSize(LinkedHashMap<String, ItemAttribute> item){
+		long size = 64;
+		for(Map.Entry<String, ItemAttribute> entry : item.entrySet()){
+			size += 96 + 2 * entry.getKey().length();
+			ItemAttribute value = entry.getValue();
+			if(value != null && value.isString())
+				size += 40 + 2 * ((String) value.get()).length();
+			else
+				size += 24;
+		}
+		return size;
+	}
+
+	private abstract static class Run {
+		final int index;
+		LinkedHashMap<String, ItemAttribute> head;
+
+		Run(int index){
+			this.index = index;
+		}
+
+		abstract boolean next() throws IOException;
+
+		void close(){
+		}
+	}
+
+	private static class BufferRun extends Run {
+		private final ArrayList<LinkedHashMap<String, ItemAttribute>> items;
+		private int position;
+
+		BufferRun(int index, ArrayList<LinkedHashMap<String, ItemAttribute>> items){
+			super(index);
+			this.items = items;
+			this.position = 0;
+		}
+
+		@Override
+		boolean next() {
+			head = position < items.size() ? items.get(position++) : null;
+			return head != null;
+		}
+	}
+
+	private class FileRun extends Run {
+		private final JsonParser parser;
+
+		FileRun(int index, File file) throws IOException {
+			super(index);
+			this.parser = mapper.getFactory().createParser(new BufferedInputStream(new FileInputStream(file)));
+			this.parser.nextToken();
+		}
+
+		@Override
+		boolean next() throws IOException {
+			head = parser.nextToken() == JsonToken.START_OBJECT ? decoder.readItem(parser) : null;
+			return head != null;
+		}
+
+		@Override
+		void close() {
+			try {
+				parser.close();
+			} catch (IOException e) {
+				//the run file is deleted anyway
+			}
+		}
+	}
+}
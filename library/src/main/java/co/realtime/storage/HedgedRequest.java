@@ -0,0 +1,116 @@
+package co.realtime.storage;
+
+import java.net.URL;
+
+import co.realtime.storage.Rest.RestType;
+import co.realtime.storage.RestWebservice.RestCall;
+
+//A read sent to a storage server and, if it has not answered once the hedging delay has elapsed and the
+//budget allows it, sent again to the best alternate server (or the same one). The first response is
+//delivered and the other request is cancelled. An error only wins when no other request is still running.
+//Both requests belong to the handle of the storage call, which aborts them on cancellation or deadline.
+class HedgedRequest {
+	private final StorageContext context;
+	private final RequestHedger hedger;
+	private final RestType type;
+	private final String content;
+	private final OnRestResponse handler;
+	private final RequestHandle handle;
+
+	private RestCall primary;
+	private String primaryServer;
+	private RestCall hedge;
+	private int running;
+	private boolean done;
+
+	HedgedRequest(StorageContext context, RequestHedger hedger, RestType type, String content, RequestHandle handle, OnRestResponse handler){
+		this.context = context;
+		this.hedger = hedger;
+		this.type = type;
+		this.content = content;
+		this.handler = handler;
+		this.handle = handle;
+	}
+
+	//runs the primary request on the calling worker thread
+	void start(URL url, String serverUrl){
+		RestCall call = context.webservice.newCall(url, content, type, handle);
+		synchronized(this){
+			primary = call;
+			primaryServer = serverUrl;
+			running = 1;
+		}
+		hedger.onRequest();
+		context.schedule(new Runnable(){
+			@Override
+			public void run() {
+				sendHedge();
+			}
+		}, hedger.delayFor(type), null);
+		execute(call, serverUrl, false);
+	}
+
+	private void sendHedge(){
+		String sameServer;
+		synchronized(this){
+			if(done || handle.isCancelled() || handle.isExpired() || !hedger.tryHedge())
+				return;
+			sameServer = primaryServer;
+		}
+		String serverUrl;
+		URL url;
+		try {
+			serverUrl = context.alternateServerUrl(sameServer);
+			url = Rest.restUrl(serverUrl, type);
+		} catch (Exception e) {
+			return;
+		}
+		RestCall call = context.webservice.newCall(url, content, type, handle);
+		synchronized(this){
+			if(done)
+				return;
+			hedge = call;
+			running++;
+		}
+		execute(call, serverUrl, true);
+	}
+
+	private void execute(final RestCall call, final String serverUrl, final boolean isHedge){
+		final long started = System.nanoTime();
+		call.execute(new OnRestResponse(){
+			@Override
+			public void run(Exception error, RestResponse response) {
+				//the loser is ignored, the calls aborted through the handle still have to report
+				boolean aborted = handle.isCancelled() || handle.isExpired();
+				if(call.isCancelled() && !aborted)
+					return;
+				long latency = (System.nanoTime() - started) / 1000000;
+				boolean answered = !RetryPolicy.isServerFailure(error);
+				if(!aborted)
+					context.recordServerLatency(serverUrl, latency, answered);
+				if(error == null)
+					hedger.record(type, latency);
+				finish(call, isHedge, error, response);
+			}
+		});
+	}
+
+	private void finish(RestCall call, boolean isHedge, Exception error, RestResponse response){
+		RestCall other;
+		synchronized(this){
+			if(done)
+				return;
+			running--;
+			//a failure waits for the other request, which may still succeed
+			if(error != null && running > 0)
+				return;
+			done = true;
+			other = isHedge ? primary : hedge;
+		}
+		if(other != null && other != call)
+			other.cancel();
+		if(isHedge && error == null)
+			hedger.onHedgeWon();
+		handler.run(error, response);
+	}
+}
@@ -0,0 +1,48 @@
+package co.realtime.storage;
+
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+import co.realtime.storage.entities.ConnectionPoolConfig;
+
+//Reuse of the storage connections.
+//The sockets are pooled by HttpURLConnection (keyed by host, port and socket factory) as long as every
+//response is fully read and closed and the connection is never disconnected. The limits of that cache are
+//process wide system properties that belong to the application, so they are left alone; only the storage
+//requests stop asking for keep-alive when the reuse is disabled. A secure request reused a pooled connection
+//when it opened no socket through the TLS socket factory of the context, which is what hits and misses count.
+class HttpConnectionPool {
+	private volatile boolean keepAlive;
+
+	private final AtomicLong hits = new AtomicLong();
+	private final AtomicLong misses = new AtomicLong();
+	private final AtomicLong unobserved = new AtomicLong();
+
+	HttpConnectionPool(ConnectionPoolConfig config){
+		configure(config);
+	}
+
+	void configure(ConnectionPoolConfig config){
+		this.keepAlive = config.getKeepAlive() == null || config.getKeepAlive();
+	}
+
+	boolean isKeepAlive(){
+		return keepAlive;
+	}
+
+	//the reuse of a plain http connection can not be observed, HttpURLConnection opens its sockets itself
+	void record(boolean secure, boolean opened){
+		if(!secure)
+			unobserved.incrementAndGet();
+		else if(opened)
+			misses.incrementAndGet();
+		else
+			hits.incrementAndGet();
+	}
+
+	void collectMetrics(Map<String, Long> metrics){
+		metrics.put("connectionPool.hits", hits.get());
+		metrics.put("connectionPool.misses", misses.get());
+		metrics.put("connectionPool.unobserved", unobserved.get());
+	}
+}
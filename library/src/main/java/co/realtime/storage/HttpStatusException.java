@@ -0,0 +1,21 @@
+package co.realtime.storage;
+
+import java.io.IOException;
+
+//A storage response with a status other than 200, its message being the body of the response.
+//A 4xx status means the request itself was refused, for instance for a wrong key or token, by a healthy
+//server; only 5xx and 429 (too many requests) mean the server failed and the request may succeed again.
+class HttpStatusException extends IOException {
+	private static final long serialVersionUID = 1L;
+
+	final int status;
+
+	HttpStatusException(int status, String message){
+		super(message);
+		this.status = status;
+	}
+
+	boolean isServerFailure(){
+		return status >= 500 || status == 429;
+	}
+}
@@ -1,5 +1,8 @@
 package co.realtime.storage;
 
+import java.math.BigDecimal;
+import java.math.BigInteger;
+
 import com.fasterxml.jackson.annotation.JsonIgnore;
 import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
 import com.fasterxml.jackson.annotation.JsonValue;
@@ -9,8 +12,8 @@ import com.fasterxml.jackson.annotation.JsonValue;
  */
 @JsonIgnoreProperties(ignoreUnknown = true)
 public class ItemAttribute implements Comparable<ItemAttribute>{
-	Boolean isString;
-	Object value;
+	final Boolean isString;
+	final Object value;
 
 	public ItemAttribute(String str){
 		isString = true;
@@ -81,39 +84,127 @@ public class ItemAttribute implements Comparable<ItemAttribute>{
 			}
 		}*/		
 	}
-	/*
+	//the number hashCode and the comparisons with a number go through, computed once: a Long for the integral
+	//numbers within its range, a BigDecimal for the other numbers, either one for the strings that read as a number,
+	//the text otherwise
+	private Object canonical;
+	//the hash is cached, 0 until computed
+	private int hash;
+
+	/**
+	 * Returns the hash code of the value, consistent with equals
+	 * @return the hash code
+	 */
 	@Override
 	public int hashCode() {
-		final int prime = 31;
-		int result = 1;
-		result = prime * result + ((value == null) ? 0 : value.hashCode());
-		return result;
+		int h = hash;
+		if(h == 0){
+			Object c = canonical();
+			h = c == null ? 0 : c.hashCode();
+			hash = h;
+		}
+		return h;
 	}
 
+	/**
+	 * Checks if an object is an attribute with the same value. Two strings are equal when their texts are, so "007" does not equal "7", as with compareTo.
+	 * Numbers are equal by their exact decimal value, so 1 equals 1L and 1.0 but 9007199254740993L does not equal 9007199254740992L,
+	 * and a number equals a string that is its text, so 1 equals "1" and "1.0". Across strings and numbers equals is therefore not transitive;
+	 * a key of a table compares its attributes as the key type of the table, see ItemKey.
+	 * @param obj the object to compare
+	 * @return true if the values are equal
+	 */
 	@Override
 	public boolean equals(Object obj) {
-		if (this == obj)
+		if(this == obj)
 			return true;
-		if (obj == null){
+		if(!(obj instanceof ItemAttribute))
 			return false;
+		ItemAttribute other = (ItemAttribute) obj;
+		if(this.value == null || other.value == null)
+			return this.value == other.value;
+		if(this.isString && other.isString)
+			return this.value.equals(other.value);
+		return hashCode() == other.hashCode() && canonical().equals(other.canonical());
+	}
+
+	//the exact number of the value, or its text when it is a string that does not read as a number
+	Object numberValue(){
+		return canonical();
+	}
+
+	//a number and the string of its text have one form, so they are equal and hash alike
+	private Object canonical(){
+		Object c = canonical;
+		if(c == null && this.value != null){
+			c = this.isString ? canonical((String)this.value) : canonical((Number)this.value);
+			canonical = c;
 		}
-		if (obj instanceof ItemAttribute){
-			ItemAttribute other = (ItemAttribute) obj;
-			if (value == null) {
-				if (other.value != null) {
-					return false;
-				} else { 
-					return true;
-				}
+		return c;
+	}
+
+	//the integral types are exact, a float or a double is the decimal it is written as
+	private static Object canonical(Number num){
+		BigDecimal decimal;
+		if(num instanceof Long || num instanceof Integer || num instanceof Short || num instanceof Byte)
+			return Long.valueOf(num.longValue());
+		if(num instanceof BigInteger)
+			decimal = new BigDecimal((BigInteger)num);
+		else if(num instanceof BigDecimal)
+			decimal = (BigDecimal)num;
+		else
+			return canonical(num.toString());
+		return normalize(decimal);
+	}
+
+	//a string that reads as a number is that number, NaN and the infinities stay texts on both sides
+	private static Object canonical(String str){
+		if(isLongText(str))
+			return Long.valueOf(str);
+		if(isNumberText(str)){
+			try {
+				return normalize(new BigDecimal(str));
+			} catch (NumberFormatException e) {
+				//not a number after all
 			}
-			if (this.compareTo(other)!=0) {
-				return false;
-			} else {
-				return true;
+		}
+		return str;
+	}
+
+	//1, 1.0 and 1.00 have different scales, the trailing zeros are dropped so they are one value
+	private static Object normalize(BigDecimal decimal){
+		if(decimal.signum() == 0)
+			return Long.valueOf(0);
+		decimal = decimal.stripTrailingZeros();
+		if(decimal.scale() <= 0 && decimal.precision() - decimal.scale() <= 19){
+			try {
+				return Long.valueOf(decimal.longValueExact());
+			} catch (ArithmeticException e) {
+				//beyond the range of a long
 			}
-		}else{			
+		}
+		return decimal;
+	}
+
+	//the plain integers that surely fit in a long are read without a BigDecimal
+	private static boolean isLongText(String str){
+		int start = str.startsWith("-") ? 1 : 0;
+		int length = str.length() - start;
+		if(length == 0 || length > 18)
 			return false;
+		for(int i = start; i < str.length(); i++){
+			char c = str.charAt(i);
+			if(c < '0' || c > '9')
+				return false;
 		}
+		return true;
+	}
+
+	//only the strings that may be the text of a number are parsed
+	private static boolean isNumberText(String str){
+		if(str.length() == 0)
+			return false;
+		char c = str.charAt(0);
+		return (c >= '0' && c <= '9') || c == '-' || c == '.';
 	}
-	 */
 }
@@ -0,0 +1,69 @@
+package co.realtime.storage;
+
+import java.util.LinkedHashMap;
+
+import co.realtime.storage.StorageRef.StorageDataType;
+import co.realtime.storage.entities.TableMetadata;
+
+//The key of an item, its primary and optional secondary attribute, for hash based indexes of items.
+//Attributes are compared as the key type of the table: the text of a string key, so "007" and "7" are two keys,
+//and the exact value of a number key, so the same key built from different number types is one entry.
+class ItemKey {
+	final ItemAttribute primary;
+	final ItemAttribute secondary;
+	//the values the key is compared by
+	private final Object primaryValue;
+	private final Object secondaryValue;
+	private final int hash;
+
+	ItemKey(ItemAttribute primary, StorageDataType primaryType, ItemAttribute secondary, StorageDataType secondaryType){
+		this.primary = primary;
+		this.secondary = secondary;
+		this.primaryValue = value(primary, primaryType);
+		this.secondaryValue = value(secondary, secondaryType);
+		this.hash = 31 * hashCode(primaryValue) + hashCode(secondaryValue);
+	}
+
+	//the key of an item of the table, null when the item does not have the key attributes
+	static ItemKey of(TableMetadata tm, LinkedHashMap<String, ItemAttribute> item){
+		ItemAttribute primary = item.get(tm.getPrimaryKeyName());
+		ItemAttribute secondary = tm.getSecondaryKeyName() != null ? item.get(tm.getSecondaryKeyName()) : null;
+		if(primary == null || (tm.getSecondaryKeyName() != null && secondary == null))
+			return null;
+		return new ItemKey(primary, tm.getPrimaryKeyType(), secondary, tm.getSecondaryKeyType());
+	}
+
+	//without a known type the attribute compares by its own equality
+	private static Object value(ItemAttribute attribute, StorageDataType type){
+		if(attribute == null || attribute.get() == null)
+			return null;
+		if(type == StorageDataType.STRING)
+			return attribute.toString();
+		if(type == StorageDataType.NUMBER)
+			return attribute.numberValue();
+		return attribute;
+	}
+
+	private static int hashCode(Object value){
+		return value == null ? 0 : value.hashCode();
+	}
+
+	@Override
+	public int hashCode() {
+		return hash;
+	}
+
+	@Override
+	public boolean equals(Object obj) {
+		if(this == obj)
+			return true;
+		if(!(obj instanceof ItemKey))
+			return false;
+		ItemKey other = (ItemKey) obj;
+		return hash == other.hash && same(primaryValue, other.primaryValue) && same(secondaryValue, other.secondaryValue);
+	}
+
+	private static boolean same(Object v1, Object v2){
+		return v1 == null ? v2 == null : v1.equals(v2);
+	}
+}
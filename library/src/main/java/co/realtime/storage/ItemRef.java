@@ -33,7 +33,7 @@ public class ItemRef {
 		this.pushNotificationsEnabled = table.pushNotificationsEnabled;
 	}
 	
-	private void _del(OnItemSnapshot onItemSnapshot, OnError onError){
+	private void _del(OnItemSnapshot onItemSnapshot, OnError onError, RequestHandle handle){
 		TableMetadata tm = context.getTableMeta(this.table.name);
 		PostBodyBuilder pbb = new PostBodyBuilder(context);		
 		pbb.addObject("table", this.table.name);
@@ -43,6 +43,7 @@ public class ItemRef {
 			key.put("secondary", this.secondaryKeyValue);
 		pbb.addObject("key", key);
 		Rest r = new Rest(context, RestType.DELETEITEM, pbb, this.table);
+		r.handle = handle;
 		r.onError = onError;
 		r.onItemSnapshot = onItemSnapshot;
 		context.processRest(r);
@@ -82,21 +83,30 @@ public class ItemRef {
 	 * 		The callback to call if an exception occurred
 	 */
 	public void del(final OnItemSnapshot onItemSnapshot, final OnError onError){
-		TableMetadata tm = context.getTableMeta(this.table.name);
-		if(tm == null){
-			this.table.meta(new OnTableMetadata(){
-				@Override
-				public void run(TableMetadata tableMetadata) {
-					_del(onItemSnapshot, onError);
-				}				
-			}, onError);
-		} else {
-			this._del(onItemSnapshot, onError);
-		}
-		return;
+		del(onItemSnapshot, onError, new RequestHandle());
 	}
 	
-	void _get(OnItemSnapshot onItemSnapshot, OnError onError, boolean endWithNull){
+	/**
+	 * Deletes an item specified by this reference, under the control of a request handle.
+	 * 
+	 * @param onItemSnapshot
+	 * 		The callback to call with the snapshot of affected item as an argument, when the operation is completed.
+	 * @param onError
+	 * 		The callback to call if an exception occurred. Runs with the code 1015 if the deadline of the handle is exceeded.
+	 * @param handle
+	 * 		The handle that can cancel this call and sets its deadline.
+	 */
+	public void del(final OnItemSnapshot onItemSnapshot, final OnError onError, final RequestHandle handle){
+		handle.start(context);
+		context.withTableMeta(this.table, new OnTableMetadata(){
+			@Override
+			public void run(TableMetadata tableMetadata) {
+				_del(onItemSnapshot, onError, handle);
+			}
+		}, onError);
+	}
+	
+	void _get(OnItemSnapshot onItemSnapshot, OnError onError, boolean endWithNull, RequestHandle handle){
 		TableMetadata tm = context.getTableMeta(this.table.name);
 		PostBodyBuilder pbb = new PostBodyBuilder(context);	
 		pbb.addObject("table", this.table.name);
@@ -106,6 +116,7 @@ public class ItemRef {
 			key.put("secondary", this.secondaryKeyValue);
 		pbb.addObject("key", key);
 		Rest r = new Rest(context, RestType.GETITEM, pbb, this.table);
+		r.handle = handle;
 		r.onError = onError;
 		r.onItemSnapshot = onItemSnapshot;
 		r.endWithNull = endWithNull;
@@ -148,22 +159,43 @@ public class ItemRef {
 	 * 		Current item reference
 	 */
 	public ItemRef get(final OnItemSnapshot onItemSnapshot, final OnError onError){
-		TableMetadata tm = context.getTableMeta(this.table.name);
-		if(tm == null){
-			this.table.meta(new OnTableMetadata(){
-				@Override
-				public void run(TableMetadata tableMetadata) {
-					_get(onItemSnapshot, onError, false);
-				}				
-			}, onError);
-		} else {
-			this._get(onItemSnapshot, onError, false);
-		}
+		return get(onItemSnapshot, onError, new RequestHandle());
+	}
+	
+	/**
+	 * Gets an item snapshot specified by this item reference, under the control of a request handle.
+	 * 
+	 * <pre>
+	 * RequestHandle handle = new RequestHandle(2000);
+	 * 
+	 * itemRef.get(onItemSnapshot, onError, handle);
+	 * 
+	 * // the item is no longer needed
+	 * handle.cancel();
+	 * </pre>
+	 * 
+	 * @param onItemSnapshot
+	 * 		The callback to call with the snapshot of affected item as an argument, when the operation is completed.
+	 * @param onError
+	 * 		The callback to call if an exception occurred. Runs with the code 1015 if the deadline of the handle is exceeded.
+	 * @param handle
+	 * 		The handle that can cancel this call and sets its deadline.
+	 * @return
+	 * 		Current item reference
+	 */
+	public ItemRef get(final OnItemSnapshot onItemSnapshot, final OnError onError, final RequestHandle handle){
+		handle.start(context);
+		context.withTableMeta(this.table, new OnTableMetadata(){
+			@Override
+			public void run(TableMetadata tableMetadata) {
+				_get(onItemSnapshot, onError, false, handle);
+			}
+		}, onError);
 		return this;
 	}
 	
 	
-	void _set(LinkedHashMap<String, ItemAttribute> item, OnItemSnapshot onItemSnapshot, OnError onError){
+	void _set(LinkedHashMap<String, ItemAttribute> item, OnItemSnapshot onItemSnapshot, OnError onError, RequestHandle handle){
 		TableMetadata tm = context.getTableMeta(this.table.name);
 		String primaryKeyName = null;
 		String secondaryKeyName = null;
@@ -191,6 +223,7 @@ public class ItemRef {
 		*/	
 		pbb.addObject("item", itemToPut);
 		Rest r = new Rest(context, RestType.UPDATEITEM, pbb, this.table);
+		r.handle = handle;
 		r.onError = onError;
 		r.onItemSnapshot = onItemSnapshot;
 		context.processRest(r);
@@ -238,17 +271,31 @@ public class ItemRef {
 	 * 		Current item reference
 	 */
 	public ItemRef set(final LinkedHashMap<String, ItemAttribute> item, final OnItemSnapshot onItemSnapshot, final OnError onError){
-		TableMetadata tm = context.getTableMeta(this.table.name);
-		if(tm == null){
-			this.table.meta(new OnTableMetadata(){
-				@Override
-				public void run(TableMetadata tableMetadata) {
-					_set(item, onItemSnapshot, onError);
-				}				
-			}, onError);
-		} else {
-			this._set(item, onItemSnapshot, onError);
-		}
+		return set(item, onItemSnapshot, onError, new RequestHandle());
+	}
+	
+	/**
+	 * Updates the stored item specified by this item reference, under the control of a request handle. A cancelled update may still have been applied by the storage.
+	 * 
+	 * @param item
+	 * 		The new properties of item to be updated.
+	 * @param onItemSnapshot
+	 * 		The callback to call with the snapshot of affected item as an argument, when the operation is completed.
+	 * @param onError
+	 * 		The callback to call if an exception occurred. Runs with the code 1015 if the deadline of the handle is exceeded.
+	 * @param handle
+	 * 		The handle that can cancel this call and sets its deadline.
+	 * @return
+	 * 		Current item reference
+	 */
+	public ItemRef set(final LinkedHashMap<String, ItemAttribute> item, final OnItemSnapshot onItemSnapshot, final OnError onError, final RequestHandle handle){
+		handle.start(context);
+		context.withTableMeta(this.table, new OnTableMetadata(){
+			@Override
+			public void run(TableMetadata tableMetadata) {
+				_set(item, onItemSnapshot, onError, handle);
+			}
+		}, onError);
 		return this;
 	}
 	
@@ -518,17 +565,12 @@ public class ItemRef {
 	 * @return Current item reference
 	 */
 	public ItemRef incr(final String property, final Number value, final OnItemSnapshot onItemSnapshot, final OnError onError){
-		TableMetadata tm = context.getTableMeta(this.table.name);
-		if(tm == null){
-			this.table.meta(new OnTableMetadata(){
-				@Override
-				public void run(TableMetadata tableMetadata) {
-					_in_de_cr(property, value, true, onItemSnapshot, onError);
-				}				
-			}, onError);
-		} else {
-			this._in_de_cr(property, value, true, onItemSnapshot, onError);
-		}
+		context.withTableMeta(this.table, new OnTableMetadata(){
+			@Override
+			public void run(TableMetadata tableMetadata) {
+				_in_de_cr(property, value, true, onItemSnapshot, onError);
+			}
+		}, onError);
 		return this;		
 	}
 	
@@ -603,17 +645,12 @@ public class ItemRef {
 	 * @return Current item reference
 	 */
 	public ItemRef decr(final String property, final Number value, final OnItemSnapshot onItemSnapshot, final OnError onError){
-		TableMetadata tm = context.getTableMeta(this.table.name);
-		if(tm == null){
-			this.table.meta(new OnTableMetadata(){
-				@Override
-				public void run(TableMetadata tableMetadata) {
-					_in_de_cr(property, value, false, onItemSnapshot, onError);
-				}				
-			}, onError);
-		} else {
-			this._in_de_cr(property, value, false, onItemSnapshot, onError);
-		}
+		context.withTableMeta(this.table, new OnTableMetadata(){
+			@Override
+			public void run(TableMetadata tableMetadata) {
+				_in_de_cr(property, value, false, onItemSnapshot, onError);
+			}
+		}, onError);
 		return this;		
 	}
 	
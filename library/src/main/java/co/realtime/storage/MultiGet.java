@@ -0,0 +1,191 @@
+package co.realtime.storage;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+
+import co.realtime.storage.Rest.RestType;
+import co.realtime.storage.entities.TableMetadata;
+import co.realtime.storage.ext.OnError;
+import co.realtime.storage.ext.OnItemSnapshot;
+import co.realtime.storage.ext.OnMissingKeys;
+
+//Gets the items of a set of keys with a bounded number of getItem requests in flight. The keys are
+//de-duplicated first. The items found are streamed to one callback, one at a time, as they arrive; the keys
+//not found are reported together before the final null. The first error ends the whole request and cancels
+//its handle, which stops the other requests in flight. The callbacks are queued under the monitor of the
+//request and run outside of it by one thread at a time, so a slow callback never blocks the getItem callbacks.
+class MultiGet {
+	private final TableRef table;
+	private final int parallelism;
+	private final OnItemSnapshot onItemSnapshot;
+	private final OnMissingKeys onMissingKeys;
+	private final OnError onError;
+	private final RequestHandle handle;
+
+	private Iterator<LinkedHashMap<String, ItemAttribute>> pending;
+	private final ArrayList<LinkedHashMap<String, ItemAttribute>> missing = new ArrayList<LinkedHashMap<String, ItemAttribute>>();
+	private int inFlight;
+	private boolean finished;
+	//the callbacks not run yet, in order, and whether a thread is running them
+	private final ArrayDeque<Runnable> deliveries = new ArrayDeque<Runnable>();
+	private boolean delivering;
+
+	MultiGet(TableRef table, int parallelism, OnItemSnapshot onItemSnapshot, OnMissingKeys onMissingKeys, OnError onError, RequestHandle handle){
+		this.table = table;
+		this.parallelism = parallelism;
+		this.onItemSnapshot = onItemSnapshot;
+		this.onMissingKeys = onMissingKeys;
+		this.onError = onError;
+		this.handle = handle;
+	}
+
+	void start(Collection<LinkedHashMap<String, ItemAttribute>> keys){
+		TableMetadata tm = table.context.getTableMeta(table.name);
+		LinkedHashMap<ItemKey, LinkedHashMap<String, ItemAttribute>> unique = new LinkedHashMap<ItemKey, LinkedHashMap<String, ItemAttribute>>();
+		for(LinkedHashMap<String, ItemAttribute> key : keys){
+			ItemKey id = ItemKey.of(tm, key);
+			if(id == null){
+				if(onError != null)
+					onError.run(1001, "A key does not have the key attributes of the table");
+				return;
+			}
+			if(!unique.containsKey(id))
+				unique.put(id, key);
+		}
+		synchronized(this){
+			pending = unique.values().iterator();
+		}
+		for(int i = 0; i < parallelism; i++)
+			next();
+	}
+
+	private void next(){
+		LinkedHashMap<String, ItemAttribute> key = null;
+		boolean complete = false;
+		synchronized(this){
+			if(finished)
+				return;
+			if(pending.hasNext()){
+				key = pending.next();
+				inFlight++;
+			} else if(inFlight == 0){
+				finished = true;
+				complete = true;
+			}
+		}
+		if(key != null)
+			fetch(key);
+		else if(complete)
+			complete();
+	}
+
+	private void fetch(final LinkedHashMap<String, ItemAttribute> key){
+		TableMetadata tm = table.context.getTableMeta(table.name);
+		PostBodyBuilder pbb = new PostBodyBuilder(table.context);
+		pbb.addObject("table", table.name);
+		LinkedHashMap<String, Object> restKey = new LinkedHashMap<String, Object>();
+		restKey.put("primary", key.get(tm.getPrimaryKeyName()));
+		if(tm.getSecondaryKeyName() != null)
+			restKey.put("secondary", key.get(tm.getSecondaryKeyName()));
+		pbb.addObject("key", restKey);
+		Rest r = new Rest(table.context, RestType.GETITEM, pbb, table);
+		r.handle = handle;
+		r.onItemSnapshot = new OnItemSnapshot(){
+			@Override
+			public void run(ItemSnapshot itemSnapshot) {
+				found(key, itemSnapshot);
+			}
+		};
+		r.onError = new OnError(){
+			@Override
+			public void run(Integer code, String errorMessage) {
+				failed(code, errorMessage);
+			}
+		};
+		table.context.processRest(r);
+	}
+
+	private void found(LinkedHashMap<String, ItemAttribute> key, final ItemSnapshot itemSnapshot){
+		boolean deliver = false;
+		synchronized(this){
+			if(finished)
+				return;
+			inFlight--;
+			if(itemSnapshot == null)
+				missing.add(key);
+			else if(onItemSnapshot != null)
+				deliver = enqueue(new Runnable(){
+					@Override
+					public void run() {
+						onItemSnapshot.run(itemSnapshot);
+					}
+				});
+		}
+		if(deliver)
+			deliver();
+		next();
+	}
+
+	private void failed(final Integer code, final String errorMessage){
+		boolean deliver = false;
+		synchronized(this){
+			if(finished)
+				return;
+			finished = true;
+			if(onError != null)
+				deliver = enqueue(new Runnable(){
+					@Override
+					public void run() {
+						onError.run(code, errorMessage);
+					}
+				});
+		}
+		handle.cancel();
+		if(deliver)
+			deliver();
+	}
+
+	private void complete(){
+		boolean deliver;
+		synchronized(this){
+			deliver = enqueue(new Runnable(){
+				@Override
+				public void run() {
+					if(onMissingKeys != null && !missing.isEmpty())
+						onMissingKeys.run(missing);
+					if(onItemSnapshot != null)
+						onItemSnapshot.run(null);
+				}
+			});
+		}
+		if(deliver)
+			deliver();
+	}
+
+	//called holding the monitor; true when the calling thread has to run the callbacks
+	private boolean enqueue(Runnable delivery){
+		deliveries.add(delivery);
+		if(delivering)
+			return false;
+		delivering = true;
+		return true;
+	}
+
+	//runs the queued callbacks outside of the monitor, including the ones queued meanwhile by other threads
+	private void deliver(){
+		while(true){
+			Runnable delivery;
+			synchronized(this){
+				delivery = deliveries.poll();
+				if(delivery == null){
+					delivering = false;
+					return;
+				}
+			}
+			delivery.run();
+		}
+	}
+}
@@ -0,0 +1,132 @@
+package co.realtime.storage;
+
+import java.util.LinkedList;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import co.realtime.storage.NotificationDecoder.Notification;
+import co.realtime.storage.entities.NotificationBufferConfig;
+import co.realtime.storage.entities.NotificationBufferConfig.OverflowPolicy;
+import co.realtime.storage.entities.TableMetadata;
+import co.realtime.storage.ext.OnError;
+import co.realtime.storage.ext.OnTableMetadata;
+
+//Holds the notifications of a table whose metadata is not loaded. The first one starts the load, the next
+//ones queue behind it, and the queue is delivered in arrival order when the metadata arrives. The queue
+//stays in place while it is drained, so a notification received meanwhile can not overtake the queued ones.
+class NotificationBuffer {
+	private final StorageContext context;
+	private volatile NotificationBufferConfig config;
+	private final ConcurrentHashMap<String, Pending> tables = new ConcurrentHashMap<String, Pending>();
+
+	private final AtomicLong buffered = new AtomicLong();
+	private final AtomicLong dropped = new AtomicLong();
+
+	NotificationBuffer(StorageContext context, NotificationBufferConfig config){
+		this.context = context;
+		this.config = config;
+	}
+
+	void configure(NotificationBufferConfig config){
+		this.config = config;
+	}
+
+	void deliver(Notification notification){
+		while(true){
+			Pending pending = tables.get(notification.table);
+			if(pending == null){
+				if(context.getTableMeta(notification.table) != null){
+					context.parseNotificationMessage(notification);
+					return;
+				}
+				Pending created = new Pending();
+				pending = tables.putIfAbsent(notification.table, created);
+				if(pending == null){
+					created.offer(notification, config);
+					load(notification.table, created);
+					return;
+				}
+			}
+			if(pending.offer(notification, config))
+				return;
+			//the queue was closed meanwhile, the metadata is there or failed to load
+		}
+	}
+
+	void collectMetrics(Map<String, Long> metrics){
+		long pending = 0;
+		for(Pending queue : tables.values())
+			pending += queue.size();
+		metrics.put("notifications.buffered", buffered.get());
+		metrics.put("notifications.pending", pending);
+		metrics.put("notifications.dropped", dropped.get());
+	}
+
+	private void load(final String table, final Pending pending){
+		context.withTableMeta(context.notifications.table(table), new OnTableMetadata(){
+			@Override
+			public void run(TableMetadata tableMetadata) {
+				drain(table, pending);
+			}
+		}, new OnError(){
+			@Override
+			public void run(Integer code, String errorMessage) {
+				//without metadata the notifications can not be delivered, the next one tries again
+				dropped.addAndGet(pending.close());
+				tables.remove(table, pending);
+			}
+		});
+	}
+
+	private void drain(String table, Pending pending){
+		while(true){
+			Notification next = pending.poll();
+			if(next == null){
+				tables.remove(table, pending);
+				return;
+			}
+			context.parseNotificationMessage(next);
+		}
+	}
+
+	//guarded by its own monitor
+	private class Pending {
+		private final LinkedList<Notification> queue = new LinkedList<Notification>();
+		private boolean closed;
+
+		//false when the queue is closed; a notification dropped by the overflow policy is still taken
+		synchronized boolean offer(Notification notification, NotificationBufferConfig config){
+			if(closed)
+				return false;
+			if(queue.size() >= config.getMaxPending()){
+				dropped.incrementAndGet();
+				if(config.getOverflowPolicy() != OverflowPolicy.DROP_OLDEST)
+					return true;
+				queue.poll();
+			}
+			queue.add(notification);
+			buffered.incrementAndGet();
+			return true;
+		}
+
+		//the next notification, or null after closing the queue when it is empty
+		synchronized Notification poll(){
+			Notification next = queue.poll();
+			if(next == null)
+				closed = true;
+			return next;
+		}
+
+		synchronized int close(){
+			closed = true;
+			int discarded = queue.size();
+			queue.clear();
+			return discarded;
+		}
+
+		synchronized int size(){
+			return queue.size();
+		}
+	}
+}
@@ -0,0 +1,112 @@
+package co.realtime.storage;
+
+import java.io.IOException;
+import java.util.LinkedHashMap;
+import java.util.concurrent.ConcurrentHashMap;
+
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import co.realtime.storage.StorageRef.StorageEvent;
+
+//Decodes the notifications received on the storage channels. The table comes from the channel name without
+//a regex, the message is read token by token straight into an ItemAttribute map, and the item is skipped
+//without being decoded when no listener of the channel waits for the event type.
+class NotificationDecoder {
+	static final String CHANNEL_PREFIX = "rtcs_";
+
+	private final StorageContext context;
+	private final SubscriptionRegistry subscriptions;
+	private final ObjectMapper mapper;
+	private final RestResponseDecoder decoder;
+	//the table reference of the snapshots of each table, the notifications do not need one of their own
+	private final ConcurrentHashMap<String, TableRef> tables = new ConcurrentHashMap<String, TableRef>();
+
+	NotificationDecoder(StorageContext context){
+		this(context, context.subscriptions, context.mapper, context.decoder);
+	}
+
+	//the context only gives the snapshots their table reference, the tests decode without one
+	NotificationDecoder(StorageContext context, SubscriptionRegistry subscriptions, ObjectMapper mapper, RestResponseDecoder decoder){
+		this.context = context;
+		this.subscriptions = subscriptions;
+		this.mapper = mapper;
+		this.decoder = decoder;
+	}
+
+	//the table of a channel named rtcs_<table> or rtcs_<table>:<key>, null for any other channel
+	static String tableName(String channel){
+		if(channel == null || !channel.startsWith(CHANNEL_PREFIX))
+			return null;
+		int end = channel.indexOf(':', CHANNEL_PREFIX.length());
+		if(end < 0)
+			end = channel.length();
+		return end > CHANNEL_PREFIX.length() ? channel.substring(CHANNEL_PREFIX.length(), end) : null;
+	}
+
+	TableRef table(String name){
+		TableRef table = tables.get(name);
+		if(table == null){
+			TableRef created = new TableRef(context, name);
+			table = tables.putIfAbsent(name, created);
+			if(table == null)
+				table = created;
+		}
+		return table;
+	}
+
+	//null when the channel is not a storage channel
+	Notification decode(String channel, String messageJson) throws IOException {
+		String tableName = tableName(channel);
+		if(tableName == null)
+			return null;
+		Notification notification = new Notification(tableName, channel);
+		//a channel nobody listens to any more is not parsed at all
+		if(subscriptions.isEmpty(channel))
+			return notification;
+		boolean typeRead = false;
+		boolean skipped = false;
+		JsonParser parser = mapper.getFactory().createParser(messageJson);
+		try {
+			if(parser.nextToken() != JsonToken.START_OBJECT)
+				throw new IOException("The notification is not a json object");
+			while(parser.nextToken() == JsonToken.FIELD_NAME){
+				String field = parser.getCurrentName();
+				JsonToken token = parser.nextToken();
+				if(field.equals("type")){
+					notification.type = token == JsonToken.VALUE_STRING ? StorageEvent.fromString(parser.getText()) : null;
+					typeRead = true;
+				} else if(field.equals("data") && token == JsonToken.START_OBJECT){
+					if(!typeRead || subscriptions.hasListeners(channel, notification.type)){
+						notification.item = decoder.readItem(parser);
+					} else {
+						parser.skipChildren();
+						skipped = true;
+					}
+				} else {
+					parser.skipChildren();
+				}
+			}
+		} finally {
+			parser.close();
+		}
+		//a listener added after the item was skipped does not get this notification
+		notification.hasListeners = !skipped && subscriptions.hasListeners(channel, notification.type);
+		return notification;
+	}
+
+	static class Notification {
+		final String table;
+		final String channel;
+		StorageEvent type;
+		//null when the message has no item, or it was not decoded since nobody listens
+		LinkedHashMap<String, ItemAttribute> item;
+		boolean hasListeners;
+
+		Notification(String table, String channel){
+			this.table = table;
+			this.channel = channel;
+		}
+	}
+}
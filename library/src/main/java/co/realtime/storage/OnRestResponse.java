@@ -0,0 +1,5 @@
+package co.realtime.storage;
+
+interface OnRestResponse {
+	public void run(Exception error, RestResponse response);
+}
@@ -5,14 +5,13 @@ import com.google.gson.Gson;
 
 import org.json.JSONObject;
 
+import java.io.IOException;
 import java.util.ArrayList;
-import java.util.Collections;
 import java.util.LinkedHashMap;
 import java.util.Map;
 import java.util.Map.Entry;
 
 import co.realtime.storage.StorageRef.StorageDataType;
-import co.realtime.storage.StorageRef.StorageOrder;
 import co.realtime.storage.StorageRef.StorageProvisionLoad;
 import co.realtime.storage.StorageRef.StorageProvisionType;
 import co.realtime.storage.entities.TableMetadata;
@@ -29,15 +28,15 @@ import co.realtime.storage.ext.OnTableSnapshot;
 
 
 class ProcessRestResponse {
-	public static void processIsAuthenticated(Map<String, Object> response, OnBooleanResponse onBooleanResponse){
+	public static void processIsAuthenticated(Object data, OnBooleanResponse onBooleanResponse){
 		if(onBooleanResponse == null) return;
-		onBooleanResponse.run((Boolean)response.get("data"));
+		onBooleanResponse.run((Boolean)data);
 	}
 	
 	@SuppressWarnings("unchecked")
-	public static void processListTables(Map<String, Object> response, StorageContext context,  OnTableSnapshot onTableSnapshot){		
+	public static void processListTables(Object data, StorageContext context,  OnTableSnapshot onTableSnapshot){		
 		if(onTableSnapshot == null) return;
-		LinkedHashMap<String, Object> linkedHashMap = (LinkedHashMap<String, Object>)response.get("data");
+		LinkedHashMap<String, Object> linkedHashMap = (LinkedHashMap<String, Object>)data;
 		ArrayList<String> tables = (ArrayList<String>) linkedHashMap.get("tables");
 		for(String tabName : tables){
 			onTableSnapshot.run(new TableSnapshot(context, tabName));
@@ -46,9 +45,9 @@ class ProcessRestResponse {
 	}
 	
 	@SuppressWarnings("unchecked")
-	public static void processCreateTable(Map<String, Object> response, OnTableCreation onTableCreation){
+	public static void processCreateTable(Object data, OnTableCreation onTableCreation){
 		if(onTableCreation == null) return;
-		LinkedHashMap<String, Object> linkedHashMap = (LinkedHashMap<String, Object>)response.get("data");
+		LinkedHashMap<String, Object> linkedHashMap = (LinkedHashMap<String, Object>)data;
 		String tableName = (String) linkedHashMap.get("table");
 		Double creationDate = (Double) linkedHashMap.get("creationDate");
 		String status = (String) linkedHashMap.get("status");
@@ -56,9 +55,9 @@ class ProcessRestResponse {
 	}
 	
 	@SuppressWarnings("unchecked")
-	public static void processDeleteTable(Map<String, Object> response, OnBooleanResponse onBooleanResponse){
+	public static void processDeleteTable(Object data, OnBooleanResponse onBooleanResponse){
 		if(onBooleanResponse == null) return;
-		LinkedHashMap<String, Object> linkedHashMap = (LinkedHashMap<String, Object>)response.get("data");
+		LinkedHashMap<String, Object> linkedHashMap = (LinkedHashMap<String, Object>)data;
 		String status = (String)linkedHashMap.get("status");
 		if(status.equals("deleting")){
 			onBooleanResponse.run(true);
@@ -68,8 +67,8 @@ class ProcessRestResponse {
 	}
 	
 	@SuppressWarnings("unchecked")
-	public static void processDescribeTable(Map<String, Object> response, StorageContext context, OnTableMetadata onTableMetadata){		
-		LinkedHashMap<String, Object> linkedHashMap = (LinkedHashMap<String, Object>)response.get("data");
+	public static void processDescribeTable(Object data, StorageContext context, OnTableMetadata onTableMetadata){		
+		LinkedHashMap<String, Object> linkedHashMap = (LinkedHashMap<String, Object>)data;
 		TableMetadata tm = new TableMetadata();
 		tm.setApplicationKey((String) linkedHashMap.get("applicationKey"));
 		tm.setName((String) linkedHashMap.get("name"));
@@ -115,114 +114,87 @@ class ProcessRestResponse {
 	}
 	
 	private static void fireItemSnapshotCallback(final OnItemSnapshot onItemSnapshot, final TableRef tableRef, final LinkedHashMap<String, ItemAttribute> item){
-		TableMetadata tm = tableRef.context.getTableMeta(tableRef.name);
-		if(tm==null){
-			tableRef.meta(new OnTableMetadata(){
-				@Override
-				public void run(TableMetadata tableMetadata) {
-					_fireItemSnapshotCallback(onItemSnapshot, tableRef, item);
-				}}, null);
-		} else {
-			_fireItemSnapshotCallback(onItemSnapshot, tableRef, item);
-		}
+		tableRef.context.withTableMeta(tableRef, new OnTableMetadata(){
+			@Override
+			public void run(TableMetadata tableMetadata) {
+				_fireItemSnapshotCallback(onItemSnapshot, tableRef, item);
+			}}, null);
 	}
 	
-	@SuppressWarnings("unchecked")
-	public static void processPutItem(Map<String, Object> response, TableRef tableRef, OnItemSnapshot onItemSnapshot){
+	public static void processPutItem(LinkedHashMap<String, ItemAttribute> item, TableRef tableRef, OnItemSnapshot onItemSnapshot){
 		if(onItemSnapshot==null) return;
-		LinkedHashMap<String, Object> linkedHashMap = (LinkedHashMap<String, Object>)response.get("data");
-		LinkedHashMap<String, ItemAttribute> item = convertItemMap(linkedHashMap);
 		fireItemSnapshotCallback(onItemSnapshot, tableRef, item);
 		//ItemSnapshot item = new ItemSnapshot(tableRef, itemMap);		
 		//onItemSnapshot.run(item);
 	}	
 	
 	@SuppressWarnings("unchecked")
-	public static void processUpdateTable(Map<String, Object> response, OnTableUpdate onTableUpdate){
+	public static void processUpdateTable(Object data, OnTableUpdate onTableUpdate){
 		if(onTableUpdate==null) return;
-		LinkedHashMap<String, Object> linkedHashMap = (LinkedHashMap<String, Object>)response.get("data");
+		LinkedHashMap<String, Object> linkedHashMap = (LinkedHashMap<String, Object>)data;
 		String tableName = (String) linkedHashMap.get("table");
 		String status = (String) linkedHashMap.get("status");
 		onTableUpdate.run(tableName, status);
 	}
 
-	public static void processListItems(ArrayList<LinkedHashMap<String, Object>> allItems, TableRef tableRef, OnItemSnapshot onItemSnapshot, StorageOrder order, String sortKey, Long limit){
+	public static void processSortedItems(ArrayList<LinkedHashMap<String, ItemAttribute>> items, TableRef tableRef, OnItemSnapshot onItemSnapshot){
 		if(onItemSnapshot==null) return;
-		ArrayList<LinkedHashMap<String, ItemAttribute>> items = new ArrayList<LinkedHashMap<String, ItemAttribute>>();
-		for(LinkedHashMap<String, Object> item : allItems){
-			items.add(convertItemMap(item));
-			//onItemSnapshot.run(new ItemSnapshot(tableRef, convertItemMap(item)));
-		}
-		if(order == StorageOrder.ASC){
-			Collections.sort(items, new LHMItemsComparator(sortKey));
-		}
-		if(order == StorageOrder.DESC){
-			Collections.sort(items, Collections.reverseOrder(new LHMItemsComparator(sortKey)));
-		}
-		/*
-		for(LinkedHashMap<String, StorageItem> item : items){			
-			onItemSnapshot.run(new ItemSnapshot(tableRef, item));
-		}*/
-		Long itemsToDeliver = (limit == null) ? items.size() : (limit > items.size() ? items.size() : limit );
-		for(int l = 0; l < itemsToDeliver; l++){
-			//onItemSnapshot.run(new ItemSnapshot(tableRef, items.get(l)));
-			fireItemSnapshotCallback(onItemSnapshot, tableRef, items.get(l));
+		for(LinkedHashMap<String, ItemAttribute> item : items){
+			fireItemSnapshotCallback(onItemSnapshot, tableRef, item);
 		}
 		onItemSnapshot.run(null);
 	}
 	
-	public static void processQueryItems(ArrayList<LinkedHashMap<String, Object>> allItems, TableRef tableRef, OnItemSnapshot onItemSnapshot){
+	public static void processSortedItems(ExternalSorter sorter, final TableRef tableRef, final OnItemSnapshot onItemSnapshot) throws IOException {
 		if(onItemSnapshot==null) return;
-		for(LinkedHashMap<String, Object> item : allItems){		
-			//onItemSnapshot.run(new ItemSnapshot(tableRef, convertItemMap(item)));
-			LinkedHashMap<String, ItemAttribute> itemMap = convertItemMap(item);
-			fireItemSnapshotCallback(onItemSnapshot, tableRef, itemMap);
-		}
+		sorter.drain(new ExternalSorter.ItemConsumer(){
+			@Override
+			public void accept(LinkedHashMap<String, ItemAttribute> item) {
+				fireItemSnapshotCallback(onItemSnapshot, tableRef, item);
+			}
+		});
 		onItemSnapshot.run(null);
+	}
+	
+	//delivers the items of one listItems/queryItems page, up to maxItems when not null, and returns how many were delivered
+	public static int processItemsPage(ArrayList<LinkedHashMap<String, ItemAttribute>> page, TableRef tableRef, OnItemSnapshot onItemSnapshot, Long maxItems){
+		int delivered = 0;
+		for(LinkedHashMap<String, ItemAttribute> item : page){
+			if(maxItems != null && delivered >= maxItems) break;
+			if(onItemSnapshot != null)
+				fireItemSnapshotCallback(onItemSnapshot, tableRef, item);
+			delivered++;
+		}
+		return delivered;
 	}	
 	
-	@SuppressWarnings("unchecked")
-	public static void processDelItem(Map<String, Object> response, TableRef tableRef, OnItemSnapshot onItemSnapshot){
+	public static void processDelItem(LinkedHashMap<String, ItemAttribute> item, TableRef tableRef, OnItemSnapshot onItemSnapshot){
 		if(onItemSnapshot==null) return;
-		LinkedHashMap<String, Object> linkedHashMap = (LinkedHashMap<String, Object>)response.get("data");
-		if(linkedHashMap == null || linkedHashMap.size()==0){
+		if(item == null || item.size()==0){
 			onItemSnapshot.run(null);
 			return;
 		}
-		//ItemSnapshot item = new ItemSnapshot(tableRef, convertItemMap(linkedHashMap));		
-		//onItemSnapshot.run(item);
-		LinkedHashMap<String, ItemAttribute> item = convertItemMap(linkedHashMap);
 		fireItemSnapshotCallback(onItemSnapshot, tableRef, item);
 	}	
 	
-	@SuppressWarnings("unchecked")
-	public static void processGetItem(Map<String, Object> response, TableRef tableRef, OnItemSnapshot onItemSnapshot, boolean endWithNull){
+	public static void processGetItem(LinkedHashMap<String, ItemAttribute> item, TableRef tableRef, OnItemSnapshot onItemSnapshot, boolean endWithNull){
 		if(onItemSnapshot==null) return;
-		LinkedHashMap<String, Object> linkedHashMap = (LinkedHashMap<String, Object>)response.get("data");
-		if(linkedHashMap == null || linkedHashMap.size()==0){
+		if(item == null || item.size()==0){
 			onItemSnapshot.run(null);
 			return;
 		}
-		//ItemSnapshot item = new ItemSnapshot(tableRef, convertItemMap(linkedHashMap));		
-		//onItemSnapshot.run(item);
-		LinkedHashMap<String, ItemAttribute> item = convertItemMap(linkedHashMap);
 		fireItemSnapshotCallback(onItemSnapshot, tableRef, item);
 		if(endWithNull){
 			onItemSnapshot.run(null);
 		}
 	}		
 	
-	@SuppressWarnings("unchecked")
-	public static void processUpdateItem(Map<String, Object> response, TableRef tableRef, OnItemSnapshot onItemSnapshot){
+	public static void processUpdateItem(LinkedHashMap<String, ItemAttribute> item, TableRef tableRef, OnItemSnapshot onItemSnapshot){
 		if(onItemSnapshot==null) return;
-		LinkedHashMap<String, Object> linkedHashMap = (LinkedHashMap<String, Object>)response.get("data");
-		if(linkedHashMap == null || linkedHashMap.size()==0){
+		if(item == null || item.size()==0){
 			onItemSnapshot.run(null);
 			return;
 		}
-		//ItemSnapshot item = new ItemSnapshot(tableRef, convertItemMap(linkedHashMap));		
-		//onItemSnapshot.run(item);
-		LinkedHashMap<String, ItemAttribute> item = convertItemMap(linkedHashMap);
 		fireItemSnapshotCallback(onItemSnapshot, tableRef, item);
 	}		
 	
@@ -242,11 +214,8 @@ class ProcessRestResponse {
 		return ret;
 	}
 	
-	@SuppressWarnings("unchecked")
-	public static void processInDeCrResponse(Map<String, Object> response, TableRef tableRef, OnItemSnapshot onItemSnapshot){
+	public static void processInDeCrResponse(LinkedHashMap<String, ItemAttribute> item, TableRef tableRef, OnItemSnapshot onItemSnapshot){
 		if(onItemSnapshot==null) return;
-		LinkedHashMap<String, Object> linkedHashMap = (LinkedHashMap<String, Object>)response.get("data");
-		LinkedHashMap<String, ItemAttribute> item = convertItemMap(linkedHashMap);
 		fireItemSnapshotCallback(onItemSnapshot, tableRef, item);
 	}
 }
@@ -0,0 +1,185 @@
+package co.realtime.storage;
+
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import co.realtime.storage.Rest.RestType;
+import co.realtime.storage.entities.RateLimitConfig;
+import co.realtime.storage.entities.TableMetadata;
+
+//Paces the requests of each table to the throughput provisioned for it, so the storage does not throttle them.
+//Reads and writes draw from separate token buckets refilled at the provisioned units per second. A request
+//reserves its units, possibly driving the bucket below zero, and waits until the bucket has recovered from
+//the reservations made before it, so the requests keep their order and the throughput stays flat.
+//The size of a read is only known from its response, so a read reserves one unit and is charged the rest later.
+class RateLimiter {
+	private final RateLimitConfig config;
+	private final ConcurrentHashMap<String, TableBuckets> tables = new ConcurrentHashMap<String, TableBuckets>();
+
+	private final AtomicLong delayed = new AtomicLong();
+	private final AtomicLong waited = new AtomicLong();
+
+	RateLimiter(RateLimitConfig config){
+		this.config = config;
+	}
+
+	//the time (milliseconds) the request has to wait before it is sent
+	long reserve(StorageContext context, String table, RestType type, PostBodyBuilder body){
+		boolean write;
+		switch(type){
+		case GETITEM:
+		case QUERYITEMS:
+		case LISTITEMS:
+			write = false;
+			break;
+		case PUTITEM:
+		case UPDATEITEM:
+		case DELETEITEM:
+		case INCR:
+		case DECR:
+			write = true;
+			break;
+		default:
+			return 0;
+		}
+		TableBuckets buckets = buckets(context, table);
+		if(buckets == null)
+			return 0;
+		TokenBucket bucket = write ? buckets.write : buckets.read;
+		if(bucket == null)
+			return 0;
+		long units = 1;
+		if(write){
+			@SuppressWarnings("unchecked")
+			LinkedHashMap<String, ItemAttribute> item = (LinkedHashMap<String, ItemAttribute>) body.getObject("item");
+			if(item != null)
+				units = units(item, config.getWriteUnitSize());
+		}
+		long wait = bucket.reserve(units, System.currentTimeMillis());
+		if(wait > 0){
+			delayed.incrementAndGet();
+			waited.addAndGet(wait);
+		}
+		return wait;
+	}
+
+	//charges a read for the items it returned, beyond the unit reserved when it was sent
+	void chargeRead(String table, Collection<LinkedHashMap<String, ItemAttribute>> items){
+		TableBuckets buckets = tables.get(table);
+		if(buckets == null || buckets.read == null || items == null)
+			return;
+		long size = 0;
+		for(LinkedHashMap<String, ItemAttribute> item : items)
+			size += itemSize(item);
+		long units = (size + config.getReadUnitSize() - 1) / config.getReadUnitSize();
+		if(units > 1)
+			buckets.read.charge(units - 1, System.currentTimeMillis());
+	}
+
+	//called with every metadata received, the throughput may have changed after an update of the table
+	void update(TableMetadata tm){
+		if(tm == null || tm.getName() == null)
+			return;
+		TableBuckets buckets = tables.get(tm.getName());
+		if(buckets != null)
+			buckets.configure(tm, config.getBurst());
+	}
+
+	void collectMetrics(Map<String, Long> metrics){
+		metrics.put("rateLimit.delayed", delayed.get());
+		metrics.put("rateLimit.waitedMs", waited.get());
+	}
+
+	private TableBuckets buckets(StorageContext context, String table){
+		TableBuckets buckets = tables.get(table);
+		if(buckets == null){
+			TableMetadata tm = context.getTableMeta(table);
+			if(tm == null)
+				return null;
+			TableBuckets created = new TableBuckets();
+			created.configure(tm, config.getBurst());
+			buckets = tables.putIfAbsent(table, created);
+			if(buckets == null)
+				buckets = created;
+		}
+		return buckets;
+	}
+
+	private static long units(LinkedHashMap<String, ItemAttribute> item, int unitSize){
+		return Math.max(1, (itemSize(item) + unitSize - 1) / unitSize);
+	}
+
+	//the size of the item as the storage accounts it: the attribute names and values
+	static long itemSize(LinkedHashMap<String, ItemAttribute> item){
+		long size = 0;
+		for(Map.Entry<String, ItemAttribute> entry : item.entrySet()){
+			size += entry.getKey().length();
+			ItemAttribute value = entry.getValue();
+			if(value != null && value.isString())
+				size += ((String) value.get()).length();
+			else
+				size += 8;
+		}
+		return size;
+	}
+
+	private static class TableBuckets {
+		//null when the table has no throughput of that kind to respect
+		volatile TokenBucket read;
+		volatile TokenBucket write;
+
+		synchronized void configure(TableMetadata tm, int burst){
+			read = reconfigure(read, tm.getThroughputRead(), burst);
+			write = reconfigure(write, tm.getThroughputWrite(), burst);
+		}
+
+		private static TokenBucket reconfigure(TokenBucket bucket, Integer unitsPerSecond, int burst){
+			if(unitsPerSecond == null || unitsPerSecond <= 0)
+				return null;
+			if(bucket == null)
+				bucket = new TokenBucket();
+			bucket.configure(unitsPerSecond, burst, System.currentTimeMillis());
+			return bucket;
+		}
+	}
+
+	private static class TokenBucket {
+		private double rate;
+		private double capacity;
+		private double tokens;
+		private long updatedAt;
+
+		//the tokens, or the debt, are kept when the rate changes
+		synchronized void configure(int unitsPerSecond, int burst, long now){
+			if(rate > 0)
+				refill(now);
+			else
+				tokens = unitsPerSecond * burst;
+			rate = unitsPerSecond / 1000.0;
+			capacity = unitsPerSecond * burst;
+			tokens = Math.min(tokens, capacity);
+			updatedAt = now;
+		}
+
+		synchronized long reserve(long units, long now){
+			refill(now);
+			tokens -= units;
+			return tokens >= 0 ? 0 : (long) Math.ceil(-tokens / rate);
+		}
+
+		synchronized void charge(long units, long now){
+			refill(now);
+			tokens -= units;
+		}
+
+		private void refill(long now){
+			if(now > updatedAt){
+				tokens = Math.min(capacity, tokens + (now - updatedAt) * rate);
+				updatedAt = now;
+			}
+		}
+	}
+}
@@ -0,0 +1,151 @@
+package co.realtime.storage;
+
+import java.util.ArrayList;
+import java.util.concurrent.ScheduledFuture;
+
+import co.realtime.storage.RestWebservice.RestCall;
+import co.realtime.storage.ext.StorageException;
+
+/**
+ * Controls a storage call in progress. Passing a handle to a call such as getItems or get allows to cancel it and to give it its own deadline.
+ * A cancelled call stops at once: the running request is aborted, no further page is requested and no more callbacks are run.
+ * A call that exceeds its deadline is aborted the same way and its error callback is run with the code 1015.
+ * A handle controls a single call and can not be reused. A call made of several requests, such as getItems over a list of keys, shares the handle between them:
+ * the deadline applies to the whole call and cancelling the handle, or the failure of one of the requests, stops all of them.
+ *
+ * <pre>
+ * RequestHandle handle = new RequestHandle(5000);
+ *
+ * tableRef.getItems(onItemSnapshot, onError, handle);
+ *
+ * // the user left the screen
+ * handle.cancel();
+ * </pre>
+ *
+ * @author RTCS Development Team
+ *
+ */
+public class RequestHandle {
+	private final long deadline;
+	private long expiresAt;
+	private volatile boolean cancelled;
+	private volatile boolean expired;
+	private final ArrayList<RestCall> calls = new ArrayList<RestCall>();
+	private StorageContext context;
+	//aborts the running requests at the deadline, pending only while a request is running
+	ScheduledFuture<?> timer;
+
+	/**
+	 * Creates a handle for a call that uses the default deadline of the storage reference.
+	 */
+	public RequestHandle() {
+		this.deadline = -1;
+	}
+
+	/**
+	 * Creates a handle for a call with its own deadline.
+	 *
+	 * @param deadline
+	 * 		The time (milliseconds) the call may take, from the moment it is made. 0 for no deadline.
+	 * @throws StorageException
+	 * 		Exception thrown if the deadline is negative.
+	 */
+	public RequestHandle(long deadline) throws StorageException {
+		if(deadline < 0)
+			throw new StorageException("Parameter 'deadline' must be greater than or equal to 0.");
+		this.deadline = deadline;
+	}
+
+	/**
+	 * Cancels the call. The request in progress is aborted and neither the success nor the error callback is run afterwards.
+	 */
+	public void cancel() {
+		cancelled = true;
+		abort();
+	}
+
+	/**
+	 * Checks if the call was cancelled.
+	 *
+	 * @return True if the call was cancelled, false otherwise.
+	 */
+	public boolean isCancelled() {
+		return cancelled;
+	}
+
+	//starts the deadline clock, only the first time
+	synchronized void start(StorageContext context){
+		if(expiresAt != 0)
+			return;
+		this.context = context;
+		long timeout = deadline >= 0 ? deadline : context.timeouts.getDeadline();
+		expiresAt = timeout == 0 ? Long.MAX_VALUE : System.currentTimeMillis() + timeout;
+	}
+
+	boolean isExpired(){
+		if(expired)
+			return true;
+		synchronized(this){
+			return expiresAt != 0 && System.currentTimeMillis() >= expiresAt;
+		}
+	}
+
+	//the time left before the deadline, Long.MAX_VALUE without deadline
+	synchronized long remaining(){
+		if(expiresAt == 0 || expiresAt == Long.MAX_VALUE)
+			return Long.MAX_VALUE;
+		return Math.max(0, expiresAt - System.currentTimeMillis());
+	}
+
+	//false when the call must not be sent
+	boolean attach(RestCall call){
+		synchronized(calls){
+			if(cancelled || isExpired())
+				return false;
+			calls.add(call);
+			//the read timeout alone would let a slow response run past the deadline
+			long left = remaining();
+			if(timer == null && left != Long.MAX_VALUE){
+				timer = context.scheduleOnTimer(new Runnable(){
+					@Override
+					public void run() {
+						expire();
+					}
+				}, left);
+			}
+			return true;
+		}
+	}
+
+	void detach(RestCall call){
+		synchronized(calls){
+			calls.remove(call);
+			if(calls.isEmpty())
+				disarm();
+		}
+	}
+
+	//a finished call leaves no task behind on the timer
+	private void disarm(){
+		if(timer != null){
+			context.cancelOnTimer(timer);
+			timer = null;
+		}
+	}
+
+	private void expire(){
+		expired = true;
+		abort();
+	}
+
+	private void abort(){
+		ArrayList<RestCall> running;
+		synchronized(calls){
+			running = new ArrayList<RestCall>(calls);
+			calls.clear();
+			disarm();
+		}
+		for(RestCall call : running)
+			call.cancel();
+	}
+}
@@ -0,0 +1,108 @@
+package co.realtime.storage;
+
+import java.util.Arrays;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+import co.realtime.storage.Rest.RestType;
+import co.realtime.storage.entities.HedgingConfig;
+
+//Decides when a read is hedged. The delay before the duplicate request is the configured percentile of
+//the recent latencies of the same request type. Every request earns a fraction of a hedge, so the
+//duplicates never exceed the configured share of the requests, plus a small burst.
+class RequestHedger {
+	private static final int WINDOW = 256;
+	private static final int MIN_SAMPLES = 20;
+	private static final long DEFAULT_DELAY = 100;
+	private static final long MIN_DELAY = 5;
+	private static final double MAX_TOKENS = 10;
+
+	private final HedgingConfig config;
+	private final EnumMap<RestType, LatencyWindow> windows;
+	private double tokens;
+
+	private final AtomicLong requests = new AtomicLong();
+	private final AtomicLong sent = new AtomicLong();
+	private final AtomicLong won = new AtomicLong();
+	private final AtomicLong denied = new AtomicLong();
+
+	RequestHedger(HedgingConfig config){
+		this.config = config;
+		this.windows = new EnumMap<RestType, LatencyWindow>(RestType.class);
+		for(RestType type : RestType.values()){
+			if(isHedgeable(type))
+				this.windows.put(type, new LatencyWindow());
+		}
+	}
+
+	//only requests without side effects can be sent twice
+	static boolean isHedgeable(RestType type){
+		return type == RestType.GETITEM || type == RestType.QUERYITEMS || type == RestType.LISTITEMS || type == RestType.DESCRIBETABLE;
+	}
+
+	long delayFor(RestType type){
+		return windows.get(type).percentile(config.getPercentile());
+	}
+
+	void record(RestType type, long latency){
+		windows.get(type).add(latency);
+	}
+
+	synchronized void onRequest(){
+		requests.incrementAndGet();
+		tokens = Math.min(MAX_TOKENS, tokens + config.getMaxExtraLoad() / 100.0);
+	}
+
+	synchronized boolean tryHedge(){
+		if(tokens < 1){
+			denied.incrementAndGet();
+			return false;
+		}
+		tokens -= 1;
+		sent.incrementAndGet();
+		return true;
+	}
+
+	void onHedgeWon(){
+		won.incrementAndGet();
+	}
+
+	void collectMetrics(Map<String, Long> metrics){
+		metrics.put("hedging.requests", requests.get());
+		metrics.put("hedging.sent", sent.get());
+		metrics.put("hedging.won", won.get());
+		metrics.put("hedging.denied", denied.get());
+	}
+
+	private static class LatencyWindow {
+		private final long[] samples = new long[WINDOW];
+		private int count;
+		private int next;
+		private int percentile = -1;
+		private long cached = DEFAULT_DELAY;
+		private int sinceSort;
+
+		synchronized void add(long latency){
+			samples[next] = latency;
+			next = (next + 1) % WINDOW;
+			if(count < WINDOW)
+				count++;
+			sinceSort++;
+		}
+
+		//sorting the window is cheap, it is still only done every few samples
+		synchronized long percentile(int p){
+			if(count < MIN_SAMPLES)
+				return DEFAULT_DELAY;
+			if(p != percentile || sinceSort >= 16){
+				long[] sorted = Arrays.copyOf(samples, count);
+				Arrays.sort(sorted);
+				cached = Math.max(MIN_DELAY, sorted[Math.min(count - 1, count * p / 100)]);
+				percentile = p;
+				sinceSort = 0;
+			}
+			return cached;
+		}
+	}
+}
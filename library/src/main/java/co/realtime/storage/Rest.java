@@ -1,34 +1,18 @@
 package co.realtime.storage;
 
-import ibt.ortc.api.OnRestWebserviceResponse;
-import ibt.ortc.api.SecureWebConnections;
-
-import java.io.BufferedReader;
-import java.io.BufferedWriter;
-import java.io.DataOutputStream;
 import java.io.IOException;
-import java.io.InputStreamReader;
-import java.io.OutputStream;
-import java.io.OutputStreamWriter;
-import java.net.HttpURLConnection;
+import java.net.MalformedURLException;
+import java.net.SocketTimeoutException;
 import java.net.URL;
-import java.net.UnknownHostException;
 import java.security.KeyManagementException;
 import java.security.NoSuchAlgorithmException;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
 import java.util.LinkedHashMap;
-import java.util.Map;
-
-import javax.net.ssl.HttpsURLConnection;
-import javax.net.ssl.SSLContext;
-import javax.net.ssl.SSLSocket;
-import javax.net.ssl.SSLSocketFactory;
-
-import org.json.simple.JSONObject;
-import org.json.simple.JSONValue;
+import java.util.Locale;
 
 import com.fasterxml.jackson.core.JsonProcessingException;
-import com.fasterxml.jackson.databind.ObjectMapper;
 
 import co.realtime.storage.StorageRef.StorageOrder;
 import co.realtime.storage.entities.TableMetadata;
@@ -63,10 +47,17 @@ class Rest {
 	RestType type;
 	TableRef table;
 	URL requestUrl;
+	String serverUrl;
 	PostBodyBuilder bodyBuilder;
+	RequestHandle handle;
 	private LinkedHashMap<String, Object> lastStopKey;
     private String lastStopTable;
-	private ArrayList<LinkedHashMap<String, Object>> allItems;
+	private ExternalSorter sorter;
+	private long itemsReceived;
+	private long itemsDelivered;
+	private TopKSelector topK;
+	private int attempts;
+	private boolean paced;
 
 	public OnError onError = null;
 	public OnTableSnapshot onTableSnapshot = null;
@@ -86,38 +77,78 @@ class Rest {
 		this.type  = type;
 		this.bodyBuilder = bodyBuilder;
 		this.table = table;
+		this.handle = new RequestHandle();
 		this.requestUrl = null;
 		this.lastStopKey = null;
         this.lastStopTable = null;
-		this.allItems = new ArrayList<LinkedHashMap<String, Object>>();
+		this.itemsReceived = 0;
+		this.itemsDelivered = 0;
 		this.limit = (Long) bodyBuilder.getObject("limit");
 	}
 
 	void process(){
 		final Rest that = this;
-		new Thread(new Runnable() {
+		handle.start(context);
+		context.restExecutor.execute(new Runnable() {
 			@Override
 			public void run() {
+				//checked before every page, the deadline covers the whole call
+				if(that.handle.isCancelled() || that.handle.isExpired()){
+					if(onRestCompleted != null)
+						onRestCompleted.run();
+					stop();
+					return;
+				}
+				if(throttle())
+					return;
 
 				try {
 					resolveUrl();
 				} catch (Exception e) {
+					//the deadline may have cut the balancer request short
+					if(that.handle.isCancelled() || that.handle.isExpired()){
+						if(onRestCompleted != null)
+							onRestCompleted.run();
+						stop();
+						return;
+					}
 					if(that.onError!=null)
 						that.onError.run(1002, e.getMessage());
 					return;
 				}
+				//waiting for the balancer may have taken the rest of the deadline, or the call was cancelled meanwhile
+				if(that.handle.isCancelled() || that.handle.isExpired()){
+					if(onRestCompleted != null)
+						onRestCompleted.run();
+					stop();
+					return;
+				}
 
 
 
 
 				if(that.requestUrl==null){
-					that.context.lastBalancerResponse = null;
+					that.context.invalidateServerUrl(that.serverUrl);
 					if(that.onError!=null)
 						that.onError.run(1003, "Can not get response from balancer!");
 					return;
 				}
-				if(lastStopKey!=null)
+
+				//fail fast while the server keeps failing, unless another server can take the request
+				if(!that.context.retryPolicy.allowRequest(that.serverUrl)){
+					if(that.context.invalidateServerUrl(that.serverUrl) && retry(null))
+						return;
+					closeSorter();
+					if(that.onError!=null)
+						that.onError.run(1016, "The storage server is temporarily unavailable!");
+					return;
+				}
+				if(lastStopKey!=null){
 					bodyBuilder.addObject("startKey", lastStopKey);
+					//the following pages of a limited scan only ask for the items still missing
+					if(that.type == RestType.LISTITEMS && that.order == StorageOrder.NULL && that.limit != null)
+						bodyBuilder.addObject("limit", that.limit - that.itemsDelivered);
+				}
 
                 if(lastStopTable!=null){
                     bodyBuilder.addObject("startTable", lastStopTable);
@@ -138,48 +169,91 @@ class Rest {
 				
 				//System.out.println("[-] request: ("+that.type.toString()+") " + rBody);
 				
-				RestWebservice.postAsync(that.requestUrl, rBody, new OnRestWebserviceResponse(){
+				final OnRestResponse handler = new OnRestResponse(){
 					@SuppressWarnings("unchecked")
 					@Override
-					public void run(Exception e, String r) {
+					public void run(Exception e, RestResponse response) {
 						if(onRestCompleted != null)
 							onRestCompleted.run();
-						if(e!=null){
-							if(context.isCluster && context.lastBalancerResponse!=null){
-								context.lastBalancerResponse = null;
-								process();
-							} else {
-								if(onError != null)
+						if(handle.isCancelled() || (e != null && handle.isExpired())){
+							stop();
+							return;
+						}
+						if(e instanceof JsonProcessingException){
+							closeSorter();
+							if(onError != null)
+								onError.run(1006, e.getMessage());
+						} else if(e!=null){
+							//the balancer forgets the failed server, so the retry may go to another one; a refused request fails at once
+							if(RetryPolicy.isServerFailure(e)){
+								context.invalidateServerUrl(serverUrl);
+								if(retry(e))
+									return;
+							}
+							closeSorter();
+							if(onError != null){
+								if(e instanceof SocketTimeoutException)
+									onError.run(1015, "The request timed out!");
+								else
 									onError.run(1005, e.getMessage());
 							}
 						} else {
-							
-							//System.out.println(String.format("[-] response %s", r));
-							
-							ObjectMapper mapper = new ObjectMapper();						
-
-							Map<String, Object> data;
-							try {
-								data = mapper.readValue(r, Map.class);
-							} catch (Exception ex) {					
-								if(onError != null){
-									//System.out.println(String.format("::response %s", r));
-									onError.run(1006, ex.getMessage());
-								}
-								return;
-							}
-							LinkedHashMap<String, Object> error = (LinkedHashMap<String, Object>)data.get("error");
+							attempts = 0;
+							chargeRead(response);
+							LinkedHashMap<String, Object> error = response.error;
 							if(error != null){
+								closeSorter();
+								//the metadata may be outdated, for instance restored from disk after the table changed
+								if(table != null)
+									context.metadata.expire(table.name());
+								//the server no longer describes the table, its saved key schema must not be served again
+								else if(type==RestType.DESCRIBETABLE)
+									context.metadata.invalidate((String) bodyBuilder.getObject("table"));
 								if(onError!=null)
 									onError.run((Integer)error.get("code"), (String)error.get("message"));
 							}else{
 								if(type==RestType.LISTITEMS || type==RestType.QUERYITEMS){
-									LinkedHashMap<String, Object> rdata = (LinkedHashMap<String, Object>)data.get("data");
-									LinkedHashMap<String, Object> stopKey = (LinkedHashMap<String, Object>)rdata.get("stopKey");
-									ArrayList<LinkedHashMap<String, Object>> items = (ArrayList<LinkedHashMap<String, Object>>)rdata.get("items");
-									allItems.addAll(items);
+									LinkedHashMap<String, Object> stopKey = response.stopKey;
+									itemsReceived += response.items.size();
+									boolean hasMorePages = (type!=RestType.QUERYITEMS || (limit!=null && limit>itemsReceived)) && stopKey!=null;
+
+									if(deliversPages()){
+										//the page is handed to the callback before the next one is requested, so only one page is held at a time
+										Long pageLimit = (type==RestType.LISTITEMS && limit!=null) ? limit - itemsDelivered : null;
+										itemsDelivered += ProcessRestResponse.processItemsPage(response.items, table, onItemSnapshot, pageLimit);
+										//an unordered scan is done as soon as the limit is reached
+										if(pageLimit != null && itemsDelivered >= limit)
+											hasMorePages = false;
+										if(hasMorePages){
+											lastStopKey = stopKey;
+											process();
+										} else if(onItemSnapshot != null){
+											onItemSnapshot.run(null);
+										}
+										return;
+									}
 
-									if((type!=RestType.QUERYITEMS || (limit!=null && limit>allItems.size())) && stopKey!=null ){
+									if(type==RestType.LISTITEMS && limit!=null){
+										//ordered and limited scan, only the best items seen so far are kept
+										if(topK == null)
+											topK = new TopKSelector(limit, order, sortKey());
+										topK.offer(response.items);
+									} else {
+										//ordered scan of the whole table, sorted within the memory budget
+										if(sorter == null)
+											sorter = new ExternalSorter(itemsComparator(), context.sortMemoryBudget, context.getCacheDir(), context.mapper, context.decoder);
+										try {
+											int runs = sorter.getRunCount();
+											sorter.add(response.items);
+											context.sortSpilledRuns.addAndGet(sorter.getRunCount() - runs);
+										} catch (IOException ex) {
+											closeSorter();
+											if(onError != null)
+												onError.run(1014, "Can not sort the items: " + ex.getMessage());
+											return;
+										}
+									}
+									if(hasMorePages){
 										lastStopKey = stopKey;
 										process();
 										return;									
@@ -187,7 +261,7 @@ class Rest {
 								}
 
                                 if(type == RestType.LISTTABLES){
-                                    LinkedHashMap<String, Object> rData = (LinkedHashMap<String, Object>)data.get("data");
+                                    LinkedHashMap<String, Object> rData = (LinkedHashMap<String, Object>)response.data;
                                     String stopTable = (String) rData.get("stopTable");
                                     ArrayList<String> tables = (ArrayList<String>) rData.get("tables");
                                     if(!stopTable.isEmpty() && tables.isEmpty()){
@@ -199,148 +273,201 @@ class Rest {
 
 								switch(type){
 								case LISTITEMS:
-									String sortKey = null;
-									if(order != StorageOrder.NULL){
-										TableMetadata tm = context.getTableMeta(table.name());
-										sortKey = tm.getSecondaryKeyName();
-										if(sortKey == null)
-											sortKey = tm.getPrimaryKeyName();
+									if(sorter != null){
+										try {
+											ProcessRestResponse.processSortedItems(sorter, table, onItemSnapshot);
+										} catch (IOException ex) {
+											if(onError != null)
+												onError.run(1014, "Can not sort the items: " + ex.getMessage());
+										} finally {
+											closeSorter();
+										}
+									} else {
+										ProcessRestResponse.processSortedItems(topK != null ? topK.result() : new ArrayList<LinkedHashMap<String, ItemAttribute>>(), table, onItemSnapshot);
 									}
-									ProcessRestResponse.processListItems(allItems, table, onItemSnapshot, order, sortKey, limit);
 									break;
-								case ISAUTHENTICATED: ProcessRestResponse.processIsAuthenticated(data, onBooleanResponse); break;								
-								case QUERYITEMS: ProcessRestResponse.processQueryItems(allItems, table, onItemSnapshot); break;									
-								case GETITEM: ProcessRestResponse.processGetItem(data, table, onItemSnapshot, endWithNull); break;
-								case PUTITEM: ProcessRestResponse.processPutItem(data, table, onItemSnapshot); break;
-								case UPDATEITEM: ProcessRestResponse.processUpdateItem(data, table, onItemSnapshot);break;
-								case DELETEITEM: ProcessRestResponse.processDelItem(data, table, onItemSnapshot); break;
-								case CREATETABLE: ProcessRestResponse.processCreateTable(data, onTableCreation); break;									
-								case UPDATETABLE: ProcessRestResponse.processUpdateTable(data, onTableUpdate);	break;
-								case DELETETABLE: ProcessRestResponse.processDeleteTable(data, onBooleanResponse); break;
-								case LISTTABLES: ProcessRestResponse.processListTables(data, context, onTableSnapshot); break;
-								case DESCRIBETABLE: ProcessRestResponse.processDescribeTable(data, context, onTableMetadata); break;
+								case ISAUTHENTICATED: ProcessRestResponse.processIsAuthenticated(response.data, onBooleanResponse); break;								
+								case GETITEM: ProcessRestResponse.processGetItem(response.item, table, onItemSnapshot, endWithNull); break;
+								case PUTITEM: ProcessRestResponse.processPutItem(response.item, table, onItemSnapshot); break;
+								case UPDATEITEM: ProcessRestResponse.processUpdateItem(response.item, table, onItemSnapshot);break;
+								case DELETEITEM: ProcessRestResponse.processDelItem(response.item, table, onItemSnapshot); break;
+								case CREATETABLE:
+									//a table recreated under the same name may have another key
+									context.metadata.invalidate((String) bodyBuilder.getObject("table"));
+									ProcessRestResponse.processCreateTable(response.data, onTableCreation);
+									break;									
+								case UPDATETABLE:
+									//the throughput changed, the rate limit follows once the metadata is reloaded
+									context.metadata.expire(table.name());
+									ProcessRestResponse.processUpdateTable(response.data, onTableUpdate);
+									break;
+								case DELETETABLE:
+									context.metadata.invalidate((String) bodyBuilder.getObject("table"));
+									ProcessRestResponse.processDeleteTable(response.data, onBooleanResponse);
+									break;
+								case LISTTABLES: ProcessRestResponse.processListTables(response.data, context, onTableSnapshot); break;
+								case DESCRIBETABLE: ProcessRestResponse.processDescribeTable(response.data, context, onTableMetadata); break;
 								case INCR:
-								case DECR: ProcessRestResponse.processInDeCrResponse(data, table, onItemSnapshot); break;
+								case DECR: ProcessRestResponse.processInDeCrResponse(response.item, table, onItemSnapshot); break;
 								}
 							}
 						}
 					}
-				});
+				};
 
-			}}).start();
+				//above the concurrency limit of the table the request waits in its queue, without holding a worker
+				final String body = rBody;
+				final ConcurrencyLimiter limiter = that.table != null ? that.context.concurrencyLimiter : null;
+				if(limiter != null && !limiter.acquire(that.table.name(), new Runnable(){
+					@Override
+					public void run() {
+						send(body, limiter, handler);
+					}
+				}, that.onError))
+					return;
+				send(body, limiter, handler);
+
+			}}, this.onError);
 
 	}
 
-	//will put the server url with rest path to this.requestUrl
-	void resolveUrl() throws IOException, StorageException, KeyManagementException, NoSuchAlgorithmException{
-		String tempUrl;
-		if(context.isCluster){
-			if(this.context.lastBalancerResponse!=null){
-				tempUrl = this.context.lastBalancerResponse;				
-			} else {
-				//System.out.println("[-] Balancer resolve! " + this.context);
-				String urlString = context.url + "?appkey=" + context.applicationKey;
-				URL url = new URL(urlString);
-				String balancerResponse = urlString.startsWith("https:") ? secureBalancerRequest(url) : unsecureBalancerRequest(url);
-				if(balancerResponse == null){
-					throw new StorageException("Cannot get response from balancer!");
-				}
-				JSONObject obj = (JSONObject) JSONValue.parse(balancerResponse);
-				tempUrl = (String)obj.get("url");
-				this.context.lastBalancerResponse = tempUrl;
+	//the limiter, when given, has granted the request a place that the response gives back
+	private void send(String body, final ConcurrencyLimiter limiter, final OnRestResponse handler){
+		final long started = System.nanoTime();
+		OnRestResponse measured = limiter == null ? handler : new OnRestResponse(){
+			@Override
+			public void run(Exception e, RestResponse response) {
+				long latency = handle.isCancelled() || handle.isExpired() ? -1 : (System.nanoTime() - started) / 1000000;
+				limiter.release(table.name(), latency, isOverload(e, response));
+				handler.run(e, response);
 			}
+		};
+		RequestHedger hedger = context.hedger;
+		if(hedger != null && RequestHedger.isHedgeable(type)){
+			new HedgedRequest(context, hedger, type, body, handle, measured).start(requestUrl, serverUrl);
 		} else {
-			tempUrl = context.url;
+			final OnRestResponse callback = measured;
+			context.webservice.post(requestUrl, body, type, handle, new OnRestResponse(){
+				@Override
+				public void run(Exception e, RestResponse response) {
+					//a response the client can not decode or a refused request still came from a healthy server, an aborted one says nothing about it
+					if(!handle.isCancelled() && !handle.isExpired())
+						context.recordServerLatency(serverUrl, (System.nanoTime() - started) / 1000000, !RetryPolicy.isServerFailure(e));
+					callback.run(e, response);
+				}
+			});
 		}
-		//tempUrl = "https://storage-ssl-prd-useast1-s0002.realtime.co:443/";
-		//this.requestUrl += this.requestUrl.substring(this.requestUrl.length() - 1).equals("/") ? this.type.toString() : "/"+this.type.toString();
-		tempUrl += tempUrl.substring(tempUrl.length() - 1).equals("/") ? this.type.toString() : "/"+this.type.toString();
-		//path += path.substring(path.length(), 1).equals("/") ? this.type.toString() : "/"+this.type.toString();
-		this.requestUrl = new URL(tempUrl);
-		//System.out.println(String.format("Rest url: %s",this.requestUrl));
 	}
 
+	//failures and throttling errors mean the storage has more requests than it can take
+	private static boolean isOverload(Exception e, RestResponse response){
+		if(e != null)
+			return RetryPolicy.isServerFailure(e);
+		if(response == null || response.error == null)
+			return false;
+		Object message = response.error.get("message");
+		if(message == null)
+			return false;
+		String text = message.toString().toLowerCase(Locale.ENGLISH);
+		return text.contains("throughput") || text.contains("throttl");
+	}
+
+	//queryItems pages already arrive in order and unordered scans need no sort, so their items are delivered page by page
+	boolean deliversPages(){
+		return type == RestType.QUERYITEMS || (type == RestType.LISTITEMS && order == StorageOrder.NULL);
+	}
+
+	Comparator<LinkedHashMap<String, ItemAttribute>> itemsComparator(){
+		Comparator<LinkedHashMap<String, ItemAttribute>> comparator = new LHMItemsComparator(sortKey());
+		return order == StorageOrder.DESC ? Collections.reverseOrder(comparator) : comparator;
+	}
 
-	private String unsecureBalancerRequest(URL url) throws IOException {
-		HttpURLConnection connection = (HttpURLConnection) url.openConnection();
-		connection.setRequestProperty("user-agent", "storage-java-client");
-		BufferedReader rd = new BufferedReader(new InputStreamReader(connection.getInputStream()));
-		String result = "";
-		String line;
-		while ((line = rd.readLine()) != null) {
-			result += line;
+	//true when the request has to wait for its share of the table throughput; it is processed again after the wait, without holding a worker
+	private boolean throttle(){
+		RateLimiter limiter = context.rateLimiter;
+		if(limiter == null || table == null || paced){
+			paced = false;
+			return false;
+		}
+		long wait = limiter.reserve(context, table.name(), type, bodyBuilder);
+		if(wait <= 0)
+			return false;
+		if(wait >= handle.remaining()){
+			stop();
+			return true;
 		}
-		rd.close();
-		return result;
+		paced = true;
+		context.scheduleOnTimer(new Runnable(){
+			@Override
+			public void run() {
+				process();
+			}
+		}, wait);
+		return true;
 	}
 
-	private String secureBalancerRequest(URL url) throws UnknownHostException, IOException, NoSuchAlgorithmException, KeyManagementException {		
-		int port = url.getPort() == -1 ? 443 : url.getPort();
+	private void chargeRead(RestResponse response){
+		RateLimiter limiter = context.rateLimiter;
+		if(limiter == null || table == null)
+			return;
+		if(response.items != null)
+			limiter.chargeRead(table.name(), response.items);
+		else if(type == RestType.GETITEM && response.item != null)
+			limiter.chargeRead(table.name(), Collections.singletonList(response.item));
+	}
 
+	//sends the request again after the backoff, unless the policy or the deadline does not allow it
+	private boolean retry(Exception e){
+		RetryPolicy policy = context.retryPolicy;
+		if(!policy.shouldRetry(type, e, ++attempts))
+			return false;
+		long delay = policy.backoff(attempts);
+		if(delay >= handle.remaining())
+			return false;
+		context.scheduleOnTimer(new Runnable(){
+			@Override
+			public void run() {
+				process();
+			}
+		}, delay);
+		return true;
+	}
 
-		HttpsURLConnection conn = (HttpsURLConnection) url.openConnection();
+	//a cancelled call ends silently, a call past its deadline ends with a timeout error
+	private void stop(){
+		closeSorter();
+		if(!handle.isCancelled() && onError != null)
+			onError.run(1015, "The request timed out!");
+	}
 
-		SSLContext sc;
-		sc = SSLContext.getInstance("TLS");	
-		sc.init(null, null, new java.security.SecureRandom());
+	//removes the spilled runs of a scan that will not complete
+	private void closeSorter(){
+		if(sorter != null){
+			sorter.close();
+			sorter = null;
+		}
+	}
 
-		conn.setSSLSocketFactory(sc.getSocketFactory());
-		conn.setRequestMethod("GET");
-		conn.setDoInput(true);
+	String sortKey(){
+		TableMetadata tm = context.getTableMeta(table.name());
+		String sortKey = tm.getSecondaryKeyName();
+		if(sortKey == null)
+			sortKey = tm.getPrimaryKeyName();
+		return sortKey;
+	}
 
-		conn.connect();
-		BufferedReader stdInBr = new BufferedReader(new InputStreamReader(conn.getInputStream()));
+	//will put the server url with rest path to this.requestUrl
+	void resolveUrl() throws IOException, StorageException, KeyManagementException, NoSuchAlgorithmException{
+		this.serverUrl = context.resolveServerUrl(handle.remaining());
+		//tempUrl = "https://storage-ssl-prd-useast1-s0002.realtime.co:443/";
+		this.requestUrl = restUrl(this.serverUrl, this.type);
+		//System.out.println(String.format("Rest url: %s",this.requestUrl));
+	}
 
-		StringBuffer response = new StringBuffer();
-		String iline;
-		while ((iline = stdInBr.readLine()) != null) {
-			response.append(iline);
-		}
-		stdInBr.close();
-		
-		
-		return response.toString();
-		
-		
-		
-		
-		
-		
-		
-		/*
-		SSLSocketFactory sslsocketfactory = SecureWebConnections.getFullTrustSSLFactory();			
-		SSLSocket sslsocket = (SSLSocket) sslsocketfactory.createSocket(url.getHost(), port);		
-		String[] protocols = { "SSLv3" };
-		sslsocket.setEnabledProtocols(protocols);
-
-		OutputStream outputstream = sslsocket.getOutputStream();
-		OutputStreamWriter outputstreamwriter = new OutputStreamWriter(outputstream);
-		BufferedWriter bufferedwriter = new BufferedWriter(outputstreamwriter);
-
-		BufferedReader stdIn = new BufferedReader(new InputStreamReader(sslsocket.getInputStream()));
-
-		String request = String.format("GET %s HTTP/1.1\r\n",url.getFile()) + 
-				"User-Agent: storage-java-client\r\n" + 
-				"Connection: keep-alive\r\n" + 
-				"Accept: * / *\r\n" +
-				"host: " + url.getHost() + "\r\n" + 
-				"Accept-Encoding: gzip,deflate\r\n" + 
-				"Accept-Language: en-us\r\n\r\n";
-
-		bufferedwriter.write(request);
-		bufferedwriter.flush();
-
-		String server = null;
-		String line;
-		while (server == null && (line = stdIn.readLine()) != null) {
-			if(line.startsWith("{\"url\":")){
-				server = line;
-			}
-		}
-		outputstream.close();
-		stdIn.close();
-		sslsocket.close();
-		return server;
-		*/
-	}	
+	//the url of the rest path of the type on the server
+	static URL restUrl(String serverUrl, RestType type) throws MalformedURLException{
+		String tempUrl = serverUrl;
+		tempUrl += tempUrl.substring(tempUrl.length() - 1).equals("/") ? type.toString() : "/"+type.toString();
+		return new URL(tempUrl);
+	}
 }
@@ -0,0 +1,122 @@
+package co.realtime.storage;
+
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.RejectedExecutionHandler;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import android.os.Looper;
+
+import co.realtime.storage.entities.ExecutionConfig;
+import co.realtime.storage.entities.ExecutionConfig.RejectionPolicy;
+import co.realtime.storage.ext.OnError;
+
+//runs the rest requests of a storage context, either on its own bounded pool or on an user supplied executor
+class RestExecutor {
+	private static final long KEEP_ALIVE_SECONDS = 30;
+	private static final AtomicInteger poolNumber = new AtomicInteger(1);
+
+	private final Executor executor;
+	private final ThreadPoolExecutor pool;
+
+	RestExecutor(ExecutionConfig config){
+		final int number = poolNumber.getAndIncrement();
+		ThreadFactory factory = new ThreadFactory(){
+			private final AtomicInteger threadNumber = new AtomicInteger(1);
+			@Override
+			public Thread newThread(Runnable r) {
+				Thread t = new Thread(r, "storage-" + number + "-rest-" + threadNumber.getAndIncrement());
+				t.setDaemon(true);
+				return t;
+			}
+		};
+		this.pool = new ThreadPoolExecutor(config.getPoolSize(), config.getPoolSize(), KEEP_ALIVE_SECONDS, TimeUnit.SECONDS,
+				new LinkedBlockingQueue<Runnable>(config.getMaxQueueDepth()), factory, rejectionHandler(config.getRejectionPolicy()));
+		this.pool.allowCoreThreadTimeOut(true);
+		this.executor = this.pool;
+	}
+
+	RestExecutor(Executor executor){
+		this.pool = null;
+		this.executor = executor;
+	}
+
+	void execute(Runnable task, OnError onError){
+		try {
+			executor.execute(new RestTask(task, onError));
+		} catch (RejectedExecutionException e) {
+			if(onError != null)
+				onError.run(1013, "The request queue is full!");
+		}
+	}
+
+	int getQueueDepth(){
+		return pool == null ? 0 : pool.getQueue().size();
+	}
+
+	//lets the queued requests finish; used when the executor is replaced
+	void shutdown(){
+		if(pool != null)
+			pool.shutdown();
+	}
+
+	private static RejectedExecutionHandler rejectionHandler(RejectionPolicy policy){
+		if(policy == RejectionPolicy.CALLER_RUNS){
+			return new RejectedExecutionHandler(){
+				private final RejectedExecutionHandler callerRuns = new ThreadPoolExecutor.CallerRunsPolicy();
+				@Override
+				public void rejectedExecution(Runnable r, ThreadPoolExecutor e) {
+					//the request does blocking network I/O, the main thread would freeze or throw NetworkOnMainThreadException
+					if(isMainThread())
+						throw new RejectedExecutionException();
+					callerRuns.rejectedExecution(r, e);
+				}
+			};
+		}
+		if(policy == RejectionPolicy.DISCARD_OLDEST){
+			return new RejectedExecutionHandler(){
+				@Override
+				public void rejectedExecution(Runnable r, ThreadPoolExecutor e) {
+					if(e.isShutdown())
+						throw new RejectedExecutionException();
+					BlockingQueue<Runnable> queue = e.getQueue();
+					Runnable oldest = queue.poll();
+					if(oldest instanceof RestTask)
+						((RestTask) oldest).reject();
+					e.execute(r);
+				}
+			};
+		}
+		return new ThreadPoolExecutor.AbortPolicy();
+	}
+
+	private static boolean isMainThread(){
+		Looper main = Looper.getMainLooper();
+		return main != null && main.getThread() == Thread.currentThread();
+	}
+
+	private static class RestTask implements Runnable {
+		private final Runnable task;
+		private final OnError onError;
+
+		RestTask(Runnable task, OnError onError){
+			this.task = task;
+			this.onError = onError;
+		}
+
+		@Override
+		public void run() {
+			task.run();
+		}
+
+		void reject(){
+			if(onError != null)
+				onError.run(1013, "The request was discarded from a full request queue!");
+		}
+	}
+}
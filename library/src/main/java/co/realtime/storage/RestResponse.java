@@ -0,0 +1,16 @@
+package co.realtime.storage;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+
+//decoded body of a rest response; which fields are filled depends on the rest type
+class RestResponse {
+	LinkedHashMap<String, Object> error;
+	//data of the responses without items (tables, metadata, authentication)
+	Object data;
+	//data of getItem, putItem, updateItem, deleteItem, incr and decr
+	LinkedHashMap<String, ItemAttribute> item;
+	//data of listItems and queryItems
+	ArrayList<LinkedHashMap<String, ItemAttribute>> items;
+	LinkedHashMap<String, Object> stopKey;
+}
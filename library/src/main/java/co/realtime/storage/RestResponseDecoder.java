@@ -0,0 +1,119 @@
+package co.realtime.storage;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+
+import com.fasterxml.jackson.core.JsonParseException;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.google.gson.Gson;
+
+import co.realtime.storage.Rest.RestType;
+
+//Decodes the rest responses token by token, straight from the connection stream.
+//Items are built as ItemAttribute maps without going through a response String or a Map<String, Object>.
+class RestResponseDecoder {
+	private static final Gson gson = new Gson();
+	private final ObjectMapper mapper;
+
+	RestResponseDecoder(ObjectMapper mapper){
+		this.mapper = mapper;
+	}
+
+	RestResponse decode(InputStream in, RestType type) throws IOException {
+		JsonParser parser = mapper.getFactory().createParser(in);
+		//the caller owns the connection stream
+		parser.disable(JsonParser.Feature.AUTO_CLOSE_SOURCE);
+		try {
+			return decode(parser, type);
+		} finally {
+			parser.close();
+		}
+	}
+
+	@SuppressWarnings("unchecked")
+	private RestResponse decode(JsonParser parser, RestType type) throws IOException {
+		RestResponse response = new RestResponse();
+		expect(parser, parser.nextToken(), JsonToken.START_OBJECT);
+		while(parser.nextToken() == JsonToken.FIELD_NAME){
+			String field = parser.getCurrentName();
+			JsonToken token = parser.nextToken();
+			if(field.equals("error")){
+				response.error = token == JsonToken.VALUE_NULL ? null : mapper.readValue(parser, LinkedHashMap.class);
+			} else if(field.equals("data")){
+				decodeData(parser, token, type, response);
+			} else {
+				parser.skipChildren();
+			}
+		}
+		return response;
+	}
+
+	@SuppressWarnings("unchecked")
+	private void decodeData(JsonParser parser, JsonToken token, RestType type, RestResponse response) throws IOException {
+		switch(type){
+		case GETITEM:
+		case PUTITEM:
+		case UPDATEITEM:
+		case DELETEITEM:
+		case INCR:
+		case DECR:
+			response.item = token == JsonToken.START_OBJECT ? readItem(parser) : null;
+			break;
+		case LISTITEMS:
+		case QUERYITEMS:
+			expect(parser, token, JsonToken.START_OBJECT);
+			response.items = new ArrayList<LinkedHashMap<String, ItemAttribute>>();
+			while(parser.nextToken() == JsonToken.FIELD_NAME){
+				String field = parser.getCurrentName();
+				JsonToken value = parser.nextToken();
+				if(field.equals("items") && value == JsonToken.START_ARRAY){
+					while(parser.nextToken() == JsonToken.START_OBJECT){
+						response.items.add(readItem(parser));
+					}
+				} else if(field.equals("stopKey") && value == JsonToken.START_OBJECT){
+					response.stopKey = mapper.readValue(parser, LinkedHashMap.class);
+				} else {
+					parser.skipChildren();
+				}
+			}
+			break;
+		default:
+			response.data = mapper.readValue(parser, Object.class);
+		}
+	}
+
+	//expects the parser on the START_OBJECT of the item and leaves it on its END_OBJECT
+	LinkedHashMap<String, ItemAttribute> readItem(JsonParser parser) throws IOException {
+		LinkedHashMap<String, ItemAttribute> item = new LinkedHashMap<String, ItemAttribute>();
+		while(parser.nextToken() == JsonToken.FIELD_NAME){
+			String name = parser.getCurrentName();
+			JsonToken token = parser.nextToken();
+			switch(token){
+			case VALUE_NUMBER_INT:
+			case VALUE_NUMBER_FLOAT:
+				item.put(name, new ItemAttribute(parser.getNumberValue()));
+				break;
+			case VALUE_STRING:
+				item.put(name, new ItemAttribute(parser.getText()));
+				break;
+			case START_OBJECT:
+				//nested documents are kept as json strings, as the item map conversion always did
+				item.put(name, new ItemAttribute(gson.toJson(mapper.readValue(parser, LinkedHashMap.class))));
+				break;
+			default:
+				//arrays, booleans and nulls are not item attributes
+				parser.skipChildren();
+			}
+		}
+		return item;
+	}
+
+	private static void expect(JsonParser parser, JsonToken token, JsonToken expected) throws IOException {
+		if(token != expected)
+			throw new JsonParseException("Unexpected token " + token + ", expected " + expected, parser.getCurrentLocation());
+	}
+}
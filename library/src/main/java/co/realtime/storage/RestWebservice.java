@@ -1,251 +1,172 @@
 package co.realtime.storage;
 
 
-import ibt.ortc.api.OnRestWebserviceResponse;
-import ibt.ortc.api.Strings;
-
 import java.io.BufferedReader;
-import java.io.BufferedWriter;
-import java.io.DataOutputStream;
+import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
 import java.io.OutputStream;
-import java.io.OutputStreamWriter;
 import java.net.HttpURLConnection;
 import java.net.URL;
 
 import javax.net.ssl.HttpsURLConnection;
-import javax.net.ssl.SSLContext;
-import javax.net.ssl.SSLSocket;
-import javax.net.ssl.SSLSocketFactory;
+
+import co.realtime.storage.Rest.RestType;
+import co.realtime.storage.entities.TimeoutConfig;
 
 class RestWebservice {
-	
-	protected static void getAsync(URL url,OnRestWebserviceResponse callback){
-		requestAsync(url,"GET", null, callback);
+	private final HttpConnectionPool connectionPool;
+	private final TlsContext tls;
+	private final RestResponseDecoder decoder;
+	private volatile TimeoutConfig timeouts;
+
+	RestWebservice(HttpConnectionPool connectionPool, TlsContext tls, RestResponseDecoder decoder, TimeoutConfig timeouts){
+		this.connectionPool = connectionPool;
+		this.tls = tls;
+		this.decoder = decoder;
+		this.timeouts = timeouts;
 	}
-	
-	protected static void postAsync(URL url,String content,OnRestWebserviceResponse callback){
-		requestAsync(url,"POST", content, callback);
+
+	void configure(TimeoutConfig timeouts){
+		this.timeouts = timeouts;
 	}
-	
-	private static void requestAsync(final URL url,final String method, final String content,final OnRestWebserviceResponse callback){
-		Runnable task = new Runnable() {
-			
-			@Override
-			public void run() {
-				if(method.equals("GET")){
-					try {
-						String result = "https".equals(url.getProtocol()) ? secureGetRequest(url) : unsecureGetRequest(url);
-						
-						callback.run(null, result);
-					} catch (Exception error) {
-						
-						callback.run(error, null);						
-					}
-				}else if(method.equals("POST")){
-					String result = null;
-					try {
-						result = "https".equals(url.getProtocol()) ? securePostRequest(url,content) : unsecurePostRequest(url,content);
-					} catch (Exception e) {
-						callback.run(e, null);
-					}
-					if(result != null)
-						callback.run(null, result);
-				}else{					
-					callback.run(new Exception("Invalid request method - " + method), null);
-				}
-			}
-		};
-		
-		new Thread(task).start();		
+
+	//the request runs on the calling thread, which is expected to be a worker of the context RestExecutor
+	void post(URL url, String content, RestType type, RequestHandle handle, OnRestResponse callback){
+		newCall(url, content, type, handle).execute(callback);
 	}
-	
-	private static String unsecureGetRequest(URL url) throws Exception {
-		HttpURLConnection connection = (HttpURLConnection) url.openConnection();		
-		
-		//connection.setDoOutput(true);
-
-		String result = "";
-		
-		InputStream responseBody = null;
-		if(connection.getResponseCode() != 200 && connection.getResponseCode() != -1){			
-			responseBody = connection.getErrorStream();			
-			
-			result = readResponseBody(responseBody);
-			
-			throw new Exception(result);
-		}else{
-			responseBody = connection.getInputStream();
-			if(responseBody == null){
-				responseBody = connection.getErrorStream();				
-				
-				result = readResponseBody(responseBody);
-				
-				throw new Exception(result);
-			}else{
-				result = readResponseBody(responseBody);
-			}
-		}
 
-		return result;
+	//a request that another thread can cancel while it runs, also through the handle of its storage call
+	RestCall newCall(URL url, String content, RestType type, RequestHandle handle){
+		return new RestCall(url, content, type, handle);
 	}
-	
-	private static String secureGetRequest(URL url) throws Exception {
-		HttpsURLConnection connection = (HttpsURLConnection) url.openConnection();
-		
-		//connection.setDoOutput(true);
-
-		String result = "";
-		
-		if(connection.getResponseCode() != 200){
-			BufferedReader rd = new BufferedReader(new InputStreamReader(connection.getErrorStream()));
-			String line;
-			while ((line = rd.readLine()) != null) {
-				result += line;
-			}
-			rd.close();
-			
-			throw new Exception(result);
-		}else{
-			BufferedReader rd = new BufferedReader(new InputStreamReader(connection.getInputStream()));
-			String line;
-			while ((line = rd.readLine()) != null) {
-				result += line;
+
+	class RestCall {
+		private final URL url;
+		private final String content;
+		private final RestType type;
+		private final RequestHandle handle;
+		private volatile HttpURLConnection connection;
+		private volatile boolean cancelled;
+
+		private RestCall(URL url, String content, RestType type, RequestHandle handle){
+			this.url = url;
+			this.content = content;
+			this.type = type;
+			this.handle = handle;
+		}
+
+		void execute(OnRestResponse callback){
+			RestResponse response = null;
+			Exception error = null;
+			if(handle != null && !handle.attach(this))
+				cancelled = true;
+			try {
+				response = RestWebservice.this.execute(this);
+			} catch (Exception e) {
+				error = e;
 			}
-			rd.close();
+			if(handle != null)
+				handle.detach(this);
+			if(error != null)
+				callback.run(error, null);
+			else if(response != null)
+				callback.run(null, response);
 		}
 
-		return result;
-	}	
+		//closes the connection of a running request; it will not go back to the keep-alive cache
+		void cancel(){
+			cancelled = true;
+			HttpURLConnection current = connection;
+			if(current != null)
+				current.disconnect();
+		}
 
-	private static String unsecurePostRequest(URL url, String postBody) throws Exception {
-		HttpURLConnection connection = (HttpURLConnection) url.openConnection();		
+		boolean isCancelled(){
+			return cancelled;
+		}
+	}
+
+	private RestResponse execute(RestCall call) throws Exception {
+		URL url = call.url;
+		String content = call.content;
+		RestType type = call.type;
+		if(call.cancelled)
+			throw new IOException("The request was cancelled!");
+		HttpURLConnection connection = (HttpURLConnection) url.openConnection();
+		call.connection = connection;
+		if(call.cancelled){
+			connection.disconnect();
+			throw new IOException("The request was cancelled!");
+		}
+		boolean secure = connection instanceof HttpsURLConnection;
+		if(secure){
+			//the same factory must be used by every request, otherwise the keep-alive cache can not reuse the connection
+			((HttpsURLConnection) connection).setSSLSocketFactory(tls.getSocketFactory());
+			tls.takeOpened();
+		}
+		//the timeouts never let a request outlive the deadline of its storage call
+		TimeoutConfig current = timeouts;
+		long remaining = call.handle != null ? call.handle.remaining() : Long.MAX_VALUE;
+		connection.setConnectTimeout(timeout(current.getConnectTimeout(), remaining));
+		connection.setReadTimeout(timeout(current.getReadTimeout(), remaining));
 		connection.setRequestMethod("POST");
+		connection.setRequestProperty("Connection", connectionPool.isKeepAlive() ? "keep-alive" : "close");
 		connection.setRequestProperty("Content-Type", "application/json");
 		connection.setRequestProperty("Accept", "application/json");
+		connection.setDoInput(true);
 		connection.setDoOutput(true);
-		OutputStreamWriter wr = new OutputStreamWriter(connection.getOutputStream());
-
-		wr.write(postBody);
-
-		wr.flush();
-		
-		String result = "";
-		
-		if(connection.getResponseCode() != 200){
-			BufferedReader rd = new BufferedReader(new InputStreamReader(connection.getErrorStream()));
-			String line;
-			while ((line = rd.readLine()) != null) {
-				result += line;
-			}
-			rd.close();
-			
-			throw new Exception(result);
-		}else{
-			BufferedReader rd = new BufferedReader(new InputStreamReader(connection.getInputStream()));
-			String line;
-			while ((line = rd.readLine()) != null) {
-				result += line;
-			}
-			rd.close();
+		OutputStream wr = connection.getOutputStream();
+		try {
+			wr.write(content.getBytes("UTF-8"));
+			wr.flush();
+		} finally {
+			wr.close();
 		}
-		wr.close();
 
-		return result;
-	}
-	
-	private static String securePostRequest(URL url, String postBody) throws Exception {		
-		
-		//URL url = new URL("https://ortc-mobilepush.realtime.co/mp/topicdevices/YOUR_CHANNEL");
-		//String postBody = "{\"applicationKey\": \"YOUR_APP_KEY\", \"privateKey\": \"YOUR_PRV_KEY\"}";
-		
-		HttpsURLConnection conn = (HttpsURLConnection) url.openConnection();
-
-		SSLContext sc;
-		sc = SSLContext.getInstance("TLS");	
-		sc.init(null, null, new java.security.SecureRandom());
-
-		conn.setSSLSocketFactory(sc.getSocketFactory());
-		conn.setRequestMethod("POST");
-		conn.setDoInput(true);
-		conn.setRequestProperty("Content-Type", "application/json");
-
-		DataOutputStream wr = new DataOutputStream(conn.getOutputStream());
-		wr.writeBytes(postBody);
-		wr.flush();
-		wr.close();
-
-		conn.connect();
-		BufferedReader stdIn = new BufferedReader(new InputStreamReader(conn.getInputStream()));
-
-		StringBuffer response = new StringBuffer();
-		String line;
-		while ((line = stdIn.readLine()) != null) {
-			response.append(line);
+		int responseCode = connection.getResponseCode();
+		connectionPool.record(secure, secure && tls.takeOpened());
+		boolean failed = responseCode != 200 && responseCode != -1;
+		InputStream responseBody = failed ? connection.getErrorStream() : connection.getInputStream();
+		if(responseBody == null){
+			responseBody = connection.getErrorStream();
+			failed = true;
 		}
-		stdIn.close();
-		return response.toString();
-		
-		/*
-		SSLSocketFactory sslsocketfactory =  (SSLSocketFactory) SSLSocketFactory.getDefault();			
-		SSLSocket sslsocket = (SSLSocket) sslsocketfactory.createSocket(url.getHost(), url.getPort());				
-		sslsocket.setEnabledProtocols(new String[] {"SSLv3"});
-		
-		OutputStream outputstream = sslsocket.getOutputStream();
-		OutputStreamWriter outputstreamwriter = new OutputStreamWriter(outputstream);
-		BufferedWriter bufferedwriter = new BufferedWriter(outputstreamwriter);
-
-		BufferedReader stdIn = new BufferedReader(new InputStreamReader(sslsocket.getInputStream()));
-		
-		String request = String.format("POST %s HTTP/1.1\r\n",url.getFile()) + 
-						"Content-Type: application/json\r\n" +
-						"Content-Length: "+String.valueOf(postBody.length())+"\r\n\r\n" + postBody;
-		
-		bufferedwriter.write(request);
-		bufferedwriter.flush();
-		
-		String response = "";
-		String line;
-		int responseLenght = 0;
-		while ((line = stdIn.readLine()) != null) {
-			if(line.startsWith("Content-Length")){
-				String l = line.replaceAll("Content-Length: ", "");
-				responseLenght = Integer.parseInt(l);
-			}
-			if(Strings.isNullOrEmpty(line)) break;//headerEnded = true;
+
+		if(failed){
+			String result = readResponseBody(responseBody);
+			throw new HttpStatusException(responseCode, result);
 		}
-		if(responseLenght >0){
-			char[] buffer = new char[responseLenght];
-			stdIn.read(buffer, 0, responseLenght);
-			response = new String(buffer);			
+
+		//the body is decoded while it arrives; reading it to the end and closing it hands the socket back to the keep-alive cache
+		RestResponse response;
+		try {
+			response = decoder.decode(responseBody, type);
+			while(responseBody.read() != -1);
+		} finally {
+			responseBody.close();
 		}
-		outputstream.close();
-		stdIn.close();
-		sslsocket.close();
-		bufferedwriter.close();
-		
 		return response;
-		*/
 	}
-	
-	
-	private static String readResponseBody(InputStream responseBody){
-		String result = "";
-		
-		if(responseBody != null){
-			BufferedReader rd = new BufferedReader(new InputStreamReader(responseBody));
+
+	//0 would mean no timeout at all
+	private static int timeout(int configured, long remaining){
+		return (int) Math.max(1, Math.min(configured, remaining));
+	}
+
+	private static String readResponseBody(InputStream responseBody) throws IOException {
+		if(responseBody == null)
+			return "";
+		StringBuilder result = new StringBuilder();
+		BufferedReader rd = new BufferedReader(new InputStreamReader(responseBody, "UTF-8"));
+		try {
 			String line;
-			try {
-				while ((line = rd.readLine()) != null) {
-					result += line;
-				}
-				rd.close();
-			} catch (Exception e) { 
-				result = e.getMessage();
-			} 
+			while ((line = rd.readLine()) != null) {
+				result.append(line);
+			}
+		} finally {
+			rd.close();
 		}
-		
-		return result;
+		return result.toString();
 	}
 }
@@ -0,0 +1,166 @@
+package co.realtime.storage;
+
+import java.net.ConnectException;
+import java.net.UnknownHostException;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+
+import co.realtime.storage.Rest.RestType;
+import co.realtime.storage.entities.RetryConfig;
+
+//Decides whether a failed request is sent again and after which delay. The delay bound doubles with each
+//attempt and the delay is drawn at random below it, so the clients of a failed server do not come back all
+//at once. Only the I/O errors and the 5xx and 429 responses are retried and count against the server; a request
+//the server refused fails at once. Each server has a circuit breaker: after a run of failures the requests to it fail fast until the
+//open period ends, then a single request probes the server and closes the breaker if it succeeds.
+class RetryPolicy {
+	private final RetryConfig config;
+	private final ConcurrentHashMap<String, Breaker> breakers = new ConcurrentHashMap<String, Breaker>();
+	private final Random random = new Random();
+
+	private final AtomicLong retries = new AtomicLong();
+	private final AtomicLong exhausted = new AtomicLong();
+	private final AtomicLong opened = new AtomicLong();
+	private final AtomicLong rejected = new AtomicLong();
+
+	RetryPolicy(RetryConfig config){
+		this.config = config;
+	}
+
+	//sending these twice has the same effect as sending them once
+	static boolean isIdempotent(RestType type){
+		switch(type){
+		case ISAUTHENTICATED:
+		case LISTITEMS:
+		case QUERYITEMS:
+		case GETITEM:
+		case PUTITEM:
+		case UPDATEITEM:
+		case DELETEITEM:
+		case LISTTABLES:
+		case DESCRIBETABLE:
+			return true;
+		default:
+			return false;
+		}
+	}
+
+	//true when the error says the server failed, rather than the response could not be decoded or the request was refused
+	static boolean isServerFailure(Exception error){
+		if(error instanceof HttpStatusException)
+			return ((HttpStatusException) error).isServerFailure();
+		return error != null && !(error instanceof JsonProcessingException);
+	}
+
+	//a null error stands for a request that was not sent because the breaker of its server is open;
+	//a request the server refused, such as a 4xx for a wrong key or token, fails the same way if sent again
+	boolean shouldRetry(RestType type, Exception error, int attempt){
+		if(error != null && !isServerFailure(error))
+			return false;
+		boolean notSent = error == null || error instanceof ConnectException || error instanceof UnknownHostException;
+		if(!notSent && !isIdempotent(type))
+			return false;
+		if(attempt >= config.getMaxAttempts()){
+			exhausted.incrementAndGet();
+			return false;
+		}
+		retries.incrementAndGet();
+		return true;
+	}
+
+	//the delay before the given retry, the first retry being 1
+	long backoff(int retry){
+		long bound = config.getBaseDelay() << Math.min(retry - 1, 20);
+		bound = Math.min(bound, config.getMaxDelay());
+		synchronized(random){
+			return (long) (random.nextDouble() * bound);
+		}
+	}
+
+	boolean allowRequest(String serverUrl){
+		Breaker breaker = serverUrl == null ? null : breakers.get(serverUrl);
+		if(breaker == null || breaker.allow(System.currentTimeMillis(), config.getOpenDuration()))
+			return true;
+		rejected.incrementAndGet();
+		return false;
+	}
+
+	void record(String serverUrl, boolean success){
+		if(serverUrl == null)
+			return;
+		Breaker breaker = breakers.get(serverUrl);
+		if(breaker == null){
+			//healthy servers need no breaker
+			if(success)
+				return;
+			Breaker created = new Breaker();
+			breaker = breakers.putIfAbsent(serverUrl, created);
+			if(breaker == null)
+				breaker = created;
+		}
+		if(breaker.record(success, System.currentTimeMillis(), config.getFailureThreshold()))
+			opened.incrementAndGet();
+	}
+
+	void collectMetrics(Map<String, Long> metrics){
+		long open = 0;
+		for(Breaker breaker : breakers.values()){
+			if(breaker.isOpen())
+				open++;
+		}
+		metrics.put("retry.retries", retries.get());
+		metrics.put("retry.exhausted", exhausted.get());
+		metrics.put("breaker.opened", opened.get());
+		metrics.put("breaker.rejected", rejected.get());
+		metrics.put("breaker.open", open);
+	}
+
+	private static class Breaker {
+		private int failures;
+		private boolean open;
+		private long openedAt;
+		private boolean probing;
+		private long probeStartedAt;
+
+		synchronized boolean allow(long now, long openDuration){
+			if(!open)
+				return true;
+			if(now - openedAt < openDuration)
+				return false;
+			//a probe that never reported, for instance cancelled, does not keep the breaker half open
+			if(probing && now - probeStartedAt < openDuration)
+				return false;
+			probing = true;
+			probeStartedAt = now;
+			return true;
+		}
+
+		//true when the breaker opens
+		synchronized boolean record(boolean success, long now, int threshold){
+			if(success){
+				failures = 0;
+				open = false;
+				probing = false;
+				return false;
+			}
+			failures++;
+			if(open || failures >= threshold){
+				//a failed probe opens the breaker for another period
+				boolean opening = !open || probing;
+				open = true;
+				openedAt = now;
+				probing = false;
+				return opening;
+			}
+			return false;
+		}
+
+		synchronized boolean isOpen(){
+			return open;
+		}
+	}
+}
@@ -1,22 +1,47 @@
 package co.realtime.storage;
 
+import java.io.File;
+import java.io.IOException;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.security.KeyManagementException;
+import java.security.NoSuchAlgorithmException;
 import java.util.ArrayList;
-import java.util.HashMap;
-import java.util.HashSet;
+import java.util.Collections;
 import java.util.LinkedHashMap;
 import java.util.Map;
 import java.util.Set;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.net.ssl.HttpsURLConnection;
 
 import android.content.Context;
 
 import com.fasterxml.jackson.databind.ObjectMapper;
 
+import co.realtime.storage.NotificationDecoder.Notification;
 import co.realtime.storage.Rest.RestType;
 import co.realtime.storage.StorageRef.StorageEvent;
+import co.realtime.storage.entities.BalancerConfig;
+import co.realtime.storage.entities.ConcurrencyLimitConfig;
+import co.realtime.storage.entities.ConnectionPoolConfig;
+import co.realtime.storage.entities.DispatchConfig;
+import co.realtime.storage.entities.EndpointSelectionConfig;
+import co.realtime.storage.entities.ExecutionConfig;
 import co.realtime.storage.entities.Heartbeat;
+import co.realtime.storage.entities.HedgingConfig;
+import co.realtime.storage.entities.NotificationBufferConfig;
+import co.realtime.storage.entities.RateLimitConfig;
+import co.realtime.storage.entities.RetryConfig;
 import co.realtime.storage.entities.TableMetadata;
+import co.realtime.storage.entities.TimeoutConfig;
+import co.realtime.storage.entities.TlsConfig;
 import co.realtime.storage.ext.OnError;
 import co.realtime.storage.ext.OnPresence;
 import co.realtime.storage.ext.OnTableMetadata;
@@ -44,31 +69,48 @@ class StorageContext {
 	String authenticationToken;
 	boolean isCluster;
 	boolean isSecure;
-	String lastBalancerResponse;
+	volatile BalancerResolver balancer;
+	volatile EndpointSelector endpointSelector;
+	volatile RequestHedger hedger;
+	volatile RetryPolicy retryPolicy;
+	volatile RateLimiter rateLimiter;
+	volatile ConcurrencyLimiter concurrencyLimiter;
 	String url;
 	String ortcUrl;
 	public ObjectMapper mapper;
 
 	public boolean bufferIsActive;
 	private OrtcClient ortcClient;
-	private HashMap<String, TableMetadata> metas;
-	EventCollection evCollection;
+	TableMetadataCache metadata;
+	final SubscriptionRegistry subscriptions = new SubscriptionRegistry();
 	OnMessage onMessage;
 	Map<String, Boolean> toSubscribe;
 	Set<String> subscribeWithoutNotifications;
 	Set<String> unsubscribing;
 	ArrayList<Rest> offlineBuffer;
 	boolean isOffline;
+	volatile RestExecutor restExecutor;
+	private ScheduledThreadPoolExecutor scheduler;
+	private final AtomicLong cancelledTimers = new AtomicLong();
+	private boolean closed;
+	HttpConnectionPool connectionPool;
+	TlsContext tls;
+	RestWebservice webservice;
+	RestResponseDecoder decoder;
+	NotificationDecoder notifications;
+	NotificationBuffer notificationBuffer;
+	volatile CallbackDispatcher dispatcher;
+	volatile TimeoutConfig timeouts;
+	volatile long sortMemoryBudget;
+	final AtomicLong sortSpilledRuns = new AtomicLong();
 
 	private String googleProjectId;
 	private Context androidApplicationContext;	
 
-	private static String CHANNEL_REGEX_STRING = "rtcs_(.[^:]+)(:*)(.*)$";
-	private static Pattern CHANNEL_PATTERN;
-
-	static {
-		CHANNEL_PATTERN = Pattern.compile(CHANNEL_REGEX_STRING);
-	}
+	//ordered scans spill to disk above this estimated size
+	static final long DEFAULT_SORT_MEMORY_BUDGET = 16 * 1024 * 1024;
+	//cancelled timer tasks between two purges of the timer queue
+	private static final int PURGE_INTERVAL = 100;
 
     co.realtime.storage.ext.OnConnected onStorageConnected = null;
 	co.realtime.storage.ext.OnReconnected onStorageReconnected = null;
@@ -85,7 +127,20 @@ class StorageContext {
 			Heartbeat heartbeat,
 			String googleProjectId, 
 			Context androidApplicationContext) throws StorageException {
+		this(applicationKey, privateKey, authenticationToken, isCluster, isSecure, url, androidApplicationContext);
 		this.storage = storage;
+		this.googleProjectId = googleProjectId;
+		connect(heartbeat);
+	}
+
+	//sends the requests without a messaging client, so the notifications are not received; the tests use it alone
+	StorageContext(String applicationKey,
+			String privateKey,
+			String authenticationToken,
+			boolean isCluster,
+			boolean isSecure,
+			String url,
+			Context androidApplicationContext) {
 		this.applicationKey = applicationKey;
 
 		this.privateKey = privateKey == null ? null : Strings.isNullOrEmpty(privateKey) ? null : privateKey;
@@ -105,21 +160,35 @@ class StorageContext {
 			this.url = url;
 			this.ortcUrl = "http://ortc-storage.realtime.co/server/2.1";
 		}
-		this.metas = new HashMap<String, TableMetadata>();
-		this.lastBalancerResponse = null;
-		this.evCollection = new EventCollection();
-		this.toSubscribe = new HashMap<String,Boolean>();
-		this.unsubscribing = new HashSet<String>();
+		this.metadata = new TableMetadataCache(TableMetadataCache.DEFAULT_TTL);
+		this.balancer = new BalancerResolver(this.url, applicationKey, new BalancerConfig());
+		this.retryPolicy = new RetryPolicy(new RetryConfig());
+		//changed by the calling threads, the messaging callbacks and the workers that deliver the notifications
+		this.toSubscribe = new ConcurrentHashMap<String,Boolean>();
+		this.unsubscribing = Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>());
 		this.isOffline = false;
 		this.offlineBuffer = new ArrayList<Rest>();
-		this.subscribeWithoutNotifications = new HashSet<String>();
+		this.subscribeWithoutNotifications = Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>());
 
-		this.googleProjectId = googleProjectId;
 		this.androidApplicationContext = androidApplicationContext;
 
 		bufferIsActive = true;
 		mapper = new ObjectMapper();
+		restExecutor = new RestExecutor(new ExecutionConfig());
+		connectionPool = new HttpConnectionPool(new ConnectionPoolConfig());
+		tls = new TlsContext(new TlsConfig());
+		decoder = new RestResponseDecoder(mapper);
+		notifications = new NotificationDecoder(this);
+		notificationBuffer = new NotificationBuffer(this, new NotificationBufferConfig());
+		dispatcher = new CallbackDispatcher(new DispatchConfig(), null, listenerErrors());
+		timeouts = new TimeoutConfig();
+		webservice = new RestWebservice(connectionPool, tls, decoder, timeouts);
+		sortMemoryBudget = DEFAULT_SORT_MEMORY_BUDGET;
+		if(applicationKey != null)
+			metadata.restore(new TableMetadataStore(getCacheDir(), applicationKey), this);
+	}
 
+	private void connect(Heartbeat heartbeat) throws StorageException {
 		try {
 			Ortc ortc = new Ortc();
 			OrtcFactory factory = ortc.loadOrtcFactory("IbtRealtimeSJ");
@@ -189,9 +258,9 @@ class StorageContext {
                     if(onStorageConnected != null){
                         onStorageConnected.run(storage);
                     }
-                    for(String channel : toSubscribe.keySet()){
-                        Boolean withNotification = toSubscribe.get(channel);
-                        if(withNotification){
+                    for(Map.Entry<String, Boolean> entry : toSubscribe.entrySet()){
+                        String channel = entry.getKey();
+                        if(entry.getValue()){
                             //System.out.println("=> sub with notif: " + channel);
                             ortcClient.subscribeWithNotifications(channel, true, onMessage);
                         }else{
@@ -228,8 +297,8 @@ class StorageContext {
 				public void run(OrtcClient client, String channel) {
 					//System.out.println(String.format(":: unsubscribed from %s", channel));
 					unsubscribing.remove(channel);
-					if(toSubscribe.containsKey(channel)){
-						Boolean withNotification = toSubscribe.get(channel);
+					Boolean withNotification = toSubscribe.get(channel);
+					if(withNotification != null){
 						if(withNotification){
 							//System.out.println("=> sub with notif: " + channel);
 							ortcClient.subscribeWithNotifications(channel, true, onMessage);
@@ -249,36 +318,24 @@ class StorageContext {
 				@Override
 				public void run(OrtcClient client, final String channel, String messageJson) {
 					//System.out.println(String.format(":: mess (%s): %s", channel, messageJson));
-					Matcher matchResult = CHANNEL_PATTERN.matcher(channel);
-					if(matchResult.matches()){
-						final String tableName = matchResult.group(1);
-
-						Map<String, Object> message;
-						try {
-							message = mapper.readValue(messageJson, Map.class);
-						} catch (Exception e) {						
-							e.printStackTrace();
-							return;
-						}
-						final String type = (String) message.get("type");
-						final LinkedHashMap<String, Object> item = (LinkedHashMap<String, Object>) message.get("data");
-						//TableMetadata tm = getTableMeta(tableName);
-
-						if(metas.containsKey(tableName)){
-							parseNotificationMessage(tableName, type, item, channel);
-						} else {
-							storage.table(tableName).meta(new OnTableMetadata(){
-								@Override
-								public void run(TableMetadata tableMetadata) {
-									parseNotificationMessage(tableName, type, item, channel);
-								}}, new OnError(){
-									@Override
-									public void run(Integer code, String errorMessage) {
-										//System.out.println("Error#: " + errorMessage);
-									}});
-						}
+					final Notification notification;
+					try {
+						notification = notifications.decode(channel, messageJson);
+					} catch (Exception e) {
+						e.printStackTrace();
+						return;
 					}
-				}				
+					if(notification == null)
+						return;
+					if(!notification.hasListeners){
+						//nobody waits for this event, the channel is dropped once nobody waits for any
+						if(subscriptions.isEmpty(channel))
+							unsubscribeChannel(channel);
+						return;
+					}
+					//waits for the metadata of the table if it is not loaded yet
+					notificationBuffer.deliver(notification);
+				}
 			};
 
 			if(heartbeat != null) {
@@ -292,30 +349,30 @@ class StorageContext {
 		}	
 	}
 
-	void parseNotificationMessage(String tableName, String type, LinkedHashMap<String, Object> item, String channelName){
-		TableMetadata tm = getTableMeta(tableName);
-		LinkedHashMap<String, ItemAttribute> itemMap = null;
+	void parseNotificationMessage(Notification notification){
+		TableRef table = notifications.table(notification.table);
+		LinkedHashMap<String, ItemAttribute> itemMap = notification.item;
 		ItemSnapshot itemSnapshot = null;
-		if(item!=null) {
-			itemMap = ProcessRestResponse.convertItemMap(item);
+		if(itemMap!=null) {
+			TableMetadata tm = getTableMeta(notification.table);
 			ItemAttribute primary = itemMap.get(tm.getPrimaryKeyName());
 			String secondaryKeyName = tm.getSecondaryKeyName();
 			ItemAttribute secondary = null;
 			if(secondaryKeyName != null)
 				secondary = itemMap.get(secondaryKeyName);
-			itemSnapshot = new ItemSnapshot(storage.table(tableName), itemMap, primary, secondary);
+			itemSnapshot = new ItemSnapshot(table, itemMap, primary, secondary);
 		} else {
-			itemSnapshot = new ItemSnapshot(storage.table(tableName), null, null, null);
-		}
-		//Boolean unsubscribe = evCollection.fireEvents(tableName, StorageEvent.fromString(type), primary, secondary, is);
-		Boolean unsubscribe = evCollection.fireEvents(channelName, StorageEvent.fromString(type), itemSnapshot);
-		if(unsubscribe){
-			//String channelName = String.format("rtcs_%s", tableName);
-			if(!this.unsubscribing.contains(channelName)){
-				ortcClient.unsubscribe(channelName);
-				this.unsubscribing.add(channelName);
-			}
+			itemSnapshot = new ItemSnapshot(table, null, null, null);
 		}
+		Boolean unsubscribe = subscriptions.fire(notification.channel, notification.type, itemSnapshot, dispatcher);
+		if(unsubscribe)
+			unsubscribeChannel(notification.channel);
+	}
+
+	private void unsubscribeChannel(String channelName){
+		//added first, so only one thread unsubscribes and onUnsubscribed always finds the channel
+		if(this.unsubscribing.add(channelName))
+			ortcClient.unsubscribe(channelName);
 	}
 
     void setOnConnected(co.realtime.storage.ext.OnConnected callback, StorageRef storage){
@@ -347,13 +404,260 @@ class StorageContext {
 		}
 	}
 
+	void setExecutionConfig(ExecutionConfig config){
+		setRestExecutor(new RestExecutor(config));
+	}
+
+	void setExecutor(Executor executor){
+		setRestExecutor(new RestExecutor(executor));
+	}
+
+	private void setRestExecutor(RestExecutor executor){
+		RestExecutor previous = this.restExecutor;
+		this.restExecutor = executor;
+		previous.shutdown();
+	}
+
+	//runs the task on the rest executor once the delay (milliseconds) has elapsed
+	void schedule(final Runnable task, long delay, final OnError onError){
+		timer().schedule(new Runnable(){
+			@Override
+			public void run() {
+				restExecutor.execute(task, onError);
+			}
+		}, delay, TimeUnit.MILLISECONDS);
+	}
+
+	//runs a short task on the timer thread itself, when it must not wait for a free worker
+	ScheduledFuture<?> scheduleOnTimer(Runnable task, long delay){
+		return timer().schedule(task, delay, TimeUnit.MILLISECONDS);
+	}
+
+	//a cancelled task stays in the timer queue until its delay elapses, so the queue is purged once in a while
+	void cancelOnTimer(ScheduledFuture<?> task){
+		task.cancel(false);
+		if(cancelledTimers.incrementAndGet() % PURGE_INTERVAL == 0)
+			timer().purge();
+	}
+
+	private synchronized ScheduledThreadPoolExecutor timer(){
+		if(scheduler == null){
+			scheduler = new ScheduledThreadPoolExecutor(1, new ThreadFactory(){
+				@Override
+				public Thread newThread(Runnable r) {
+					Thread t = new Thread(r, "storage-timer");
+					t.setDaemon(true);
+					return t;
+				}
+			});
+		}
+		return scheduler;
+	}
+
+	void setTimeoutConfig(TimeoutConfig config){
+		this.timeouts = config;
+		webservice.configure(config);
+	}
+
+	void setConnectionPoolConfig(ConnectionPoolConfig config){
+		connectionPool.configure(config);
+	}
+
+	void setTlsConfig(TlsConfig config){
+		tls.configure(config);
+	}
+
+	void setBalancerConfig(BalancerConfig config){
+		boolean shared = config.getShared() != null && config.getShared();
+		BalancerResolver previous = balancer;
+		balancer = shared ? BalancerResolver.shared(url, applicationKey, config) : new BalancerResolver(url, applicationKey, config);
+		previous.release();
+	}
+
+	//a closed context sends no more requests and no longer holds its shared balancer
+	void close(){
+		synchronized(this){
+			if(closed)
+				return;
+			closed = true;
+		}
+		if(ortcClient != null)
+			ortcClient.disconnect();
+		balancer.release();
+		restExecutor.shutdown();
+		synchronized(this){
+			if(scheduler != null)
+				scheduler.shutdown();
+		}
+	}
+
+	void setEndpointSelectionConfig(EndpointSelectionConfig config){
+		endpointSelector = config == null ? null : new EndpointSelector(config, endpointSource());
+	}
+
+	private EndpointSelector.Source endpointSource(){
+		return new EndpointSelector.Source(){
+			@Override
+			public String resolve(long remaining) throws IOException, StorageException, KeyManagementException, NoSuchAlgorithmException {
+				return isCluster ? balancer.resolve(StorageContext.this, remaining) : url;
+			}
+
+			@Override
+			public String lookup() throws IOException, StorageException, KeyManagementException, NoSuchAlgorithmException {
+				return isCluster ? balancer.lookup(StorageContext.this) : null;
+			}
+
+			@Override
+			public void forget(String serverUrl) {
+				if(isCluster)
+					balancer.invalidate(serverUrl);
+			}
+
+			@Override
+			public HttpURLConnection open(String serverUrl) throws IOException, KeyManagementException, NoSuchAlgorithmException {
+				HttpURLConnection connection = (HttpURLConnection) new URL(serverUrl).openConnection();
+				if(connection instanceof HttpsURLConnection)
+					((HttpsURLConnection) connection).setSSLSocketFactory(tls.getSocketFactory());
+				connection.setConnectTimeout(timeouts.getConnectTimeout());
+				connection.setReadTimeout(timeouts.getReadTimeout());
+				return connection;
+			}
+
+			@Override
+			public void execute(Runnable task, OnError onError) {
+				restExecutor.execute(task, onError);
+			}
+		};
+	}
+
+	//the storage server, given by the balancer in cluster mode or chosen among several servers by latency
+	String resolveServerUrl() throws IOException, StorageException, KeyManagementException, NoSuchAlgorithmException {
+		return resolveServerUrl(Long.MAX_VALUE);
+	}
+
+	//the balancer is given no more than the time remaining, in milliseconds, to the deadline of the call
+	String resolveServerUrl(long remaining) throws IOException, StorageException, KeyManagementException, NoSuchAlgorithmException {
+		EndpointSelector selector = endpointSelector;
+		if(selector != null)
+			return selector.select(remaining);
+		return isCluster ? balancer.resolve(this, remaining) : url;
+	}
+
+	//true when the failed request should be retried on another server
+	boolean invalidateServerUrl(String serverUrl){
+		EndpointSelector selector = endpointSelector;
+		boolean invalidated = isCluster && balancer.invalidate(serverUrl);
+		if(selector != null)
+			return selector.invalidate(serverUrl);
+		return invalidated;
+	}
+
+	//a server for the duplicate of a hedged request: the best other server if there is one, else the same
+	String alternateServerUrl(String serverUrl){
+		EndpointSelector selector = endpointSelector;
+		return selector != null ? selector.alternative(serverUrl) : serverUrl;
+	}
+
+	void setHedgingConfig(HedgingConfig config){
+		hedger = config == null ? null : new RequestHedger(config);
+	}
+
+	void setRetryConfig(RetryConfig config){
+		retryPolicy = new RetryPolicy(config);
+	}
+
+	void setRateLimitConfig(RateLimitConfig config){
+		rateLimiter = config == null ? null : new RateLimiter(config);
+	}
+
+	void setConcurrencyLimitConfig(ConcurrencyLimitConfig config){
+		concurrencyLimiter = config == null ? null : new ConcurrencyLimiter(this, config);
+	}
+
+	void setNotificationBufferConfig(NotificationBufferConfig config){
+		notificationBuffer.configure(config == null ? new NotificationBufferConfig() : config);
+	}
+
+	void setDispatchConfig(DispatchConfig config){
+		this.dispatcher = new CallbackDispatcher(config == null ? new DispatchConfig() : config, this.dispatcher, listenerErrors());
+	}
+
+	//a listener run by the dispatcher threads fails like the messaging client does, through its exception handler
+	private Thread.UncaughtExceptionHandler listenerErrors(){
+		return new Thread.UncaughtExceptionHandler(){
+			@Override
+			public void uncaughtException(Thread thread, Throwable e) {
+				OrtcClient client = ortcClient;
+				if(client != null && client.onException != null)
+					client.onException.run(client, e instanceof Exception ? (Exception) e : new RuntimeException(e));
+			}
+		};
+	}
+
+	void recordServerLatency(String serverUrl, long latency, boolean success){
+		retryPolicy.record(serverUrl, success);
+		EndpointSelector selector = endpointSelector;
+		if(selector != null)
+			selector.record(serverUrl, latency, success);
+	}
+
+	LinkedHashMap<String, Long> collectMetrics(){
+		LinkedHashMap<String, Long> metrics = new LinkedHashMap<String, Long>();
+		metrics.put("executor.queueDepth", (long) restExecutor.getQueueDepth());
+		connectionPool.collectMetrics(metrics);
+		tls.collectMetrics(metrics);
+		balancer.collectMetrics(metrics);
+		EndpointSelector selector = endpointSelector;
+		if(selector != null)
+			selector.collectMetrics(metrics);
+		RequestHedger currentHedger = hedger;
+		if(currentHedger != null)
+			currentHedger.collectMetrics(metrics);
+		retryPolicy.collectMetrics(metrics);
+		RateLimiter limiter = rateLimiter;
+		if(limiter != null)
+			limiter.collectMetrics(metrics);
+		ConcurrencyLimiter currentLimiter = concurrencyLimiter;
+		if(currentLimiter != null)
+			currentLimiter.collectMetrics(metrics);
+		notificationBuffer.collectMetrics(metrics);
+		dispatcher.collectMetrics(metrics);
+		metadata.collectMetrics(metrics);
+		metrics.put("sort.spilledRuns", sortSpilledRuns.get());
+		return metrics;
+	}
+
+	void setSortMemoryBudget(long bytes){
+		this.sortMemoryBudget = bytes;
+	}
+
+	//the temporary files of the storage go to the application cache on Android
+	File getCacheDir(){
+		File dir = androidApplicationContext != null ? androidApplicationContext.getCacheDir() : null;
+		return dir != null ? dir : new File(System.getProperty("java.io.tmpdir"));
+	}
+
 	void addTableMeta(TableMetadata tm){
-		String name = tm.getName();
-		metas.put(name, tm);
+		metadata.put(tm);
+		RateLimiter limiter = rateLimiter;
+		if(limiter != null)
+			limiter.update(tm);
 	}
 
 	TableMetadata getTableMeta(String name){
-		return metas.get(name);
+		return metadata.get(name);
+	}
+
+	void withTableMeta(TableRef table, OnTableMetadata onTableMetadata, OnError onError){
+		metadata.withTableMeta(table, onTableMetadata, onError);
+	}
+
+	void loadTableMeta(TableRef table, OnTableMetadata onTableMetadata, OnError onError){
+		metadata.load(table, onTableMetadata, onError);
+	}
+
+	void setTableMetadataTtl(long millis){
+		metadata.setTtl(millis);
 	}
 	
 	public void presence(String channel, final OnPresence onPresence, final OnError onError) {		
@@ -404,7 +708,7 @@ class StorageContext {
 	
 	public void addEvent(Event ev) {
 		if(ev.onItemSnapshot == null) return;
-		Boolean doSubscription = evCollection.add(ev);
+		Boolean doSubscription = subscriptions.add(ev);
 		if(doSubscription){
 			//String channelName = String.format("rtcs_%s", ev.tableName);
 			String channelName = ev.getChannelName();
@@ -417,21 +721,15 @@ class StorageContext {
 					ortcClient.subscribe(channelName, true, this.onMessage);
 				}
 			} else {
-                this.toSubscribe.put(channelName, ev.pushNotificationsEnabled);
+                this.toSubscribe.put(channelName, Boolean.TRUE.equals(ev.pushNotificationsEnabled));
 			}
 		}
 	}
 
 	public void removeEvent(Event ev) {
-		Boolean unsubscribe = evCollection.remove(ev);
-		if(unsubscribe){
-			//String channelName = String.format("rtcs_%s", ev.tableName);
-			String channelName = ev.getChannelName();
-			if(!this.unsubscribing.contains(channelName)){
-				ortcClient.unsubscribe(channelName);
-				this.unsubscribing.add(channelName);
-			}
-		}
+		Boolean unsubscribe = subscriptions.remove(ev);
+		if(unsubscribe)
+			unsubscribeChannel(ev.getChannelName());
 	}
 
 	private void unsubscribeAllNotifications(String channelName){
@@ -448,7 +746,7 @@ class StorageContext {
 	}
 
     public void disablePushNotificationsForChannels(String tableName) {
-        ArrayList<String> channels = evCollection.getChannelNames(tableName, true);
+        ArrayList<String> channels = subscriptions.getChannelNames(tableName, true);
         disablePushNotificationsForChannels(channels);
     }
 }
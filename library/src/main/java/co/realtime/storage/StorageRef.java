@@ -1,9 +1,24 @@
 package co.realtime.storage;
 
 
+import java.util.Map;
+import java.util.concurrent.Executor;
+
 import android.content.Context;
 import co.realtime.storage.Rest.RestType;
+import co.realtime.storage.entities.BalancerConfig;
+import co.realtime.storage.entities.ConcurrencyLimitConfig;
+import co.realtime.storage.entities.ConnectionPoolConfig;
+import co.realtime.storage.entities.DispatchConfig;
+import co.realtime.storage.entities.EndpointSelectionConfig;
+import co.realtime.storage.entities.ExecutionConfig;
 import co.realtime.storage.entities.Heartbeat;
+import co.realtime.storage.entities.HedgingConfig;
+import co.realtime.storage.entities.NotificationBufferConfig;
+import co.realtime.storage.entities.RateLimitConfig;
+import co.realtime.storage.entities.RetryConfig;
+import co.realtime.storage.entities.TimeoutConfig;
+import co.realtime.storage.entities.TlsConfig;
 import co.realtime.storage.ext.OnBooleanResponse;
 import co.realtime.storage.ext.OnConnected;
 import co.realtime.storage.ext.OnError;
@@ -342,6 +357,271 @@ public class StorageRef {
 		return this;
 	}
 	
+	/**
+	 * Releases the resources of the storage reference: the messaging connection is closed, the worker threads of the requests are stopped and a shared balancer response is no longer held for it.
+	 * The storage reference can not be used afterwards.
+	 */
+	public void close() {
+		context.close();
+	}
+	
+	/**
+	 * Replaces the worker pool that runs the storage requests. Requests already queued on the previous pool still complete.
+	 * 
+	 * <pre>
+	 * StorageRef storage = new StorageRef("your_app_key", "your_token");
+	 * 
+	 * storage.setExecutionConfig(new ExecutionConfig(8, 512, RejectionPolicy.DISCARD_OLDEST));
+	 * </pre>
+	 * 
+	 * @param config
+	 * 		The pool size, maximum queue depth and rejection policy.
+	 * @return Current storage reference
+	 * @throws StorageException
+	 * 		If the configuration is null
+	 */
+	public StorageRef setExecutionConfig(ExecutionConfig config) throws StorageException {
+		if(config == null)
+			throw new StorageException("Parameter 'config' can not be null.");
+		context.setExecutionConfig(config);
+		return this;
+	}
+	
+	/**
+	 * Runs the storage requests on the given executor instead of the internal worker pool. Requests rejected by the executor fail with the error callback.
+	 * 
+	 * @param executor
+	 * 		The executor that will run the storage requests.
+	 * @return Current storage reference
+	 * @throws StorageException
+	 * 		If the executor is null
+	 */
+	public StorageRef setExecutor(Executor executor) throws StorageException {
+		if(executor == null)
+			throw new StorageException("Parameter 'executor' can not be null.");
+		context.setExecutor(executor);
+		return this;
+	}
+	
+	/**
+	 * Configures the reuse of the keep-alive connections used by the storage requests. The idle connections are held by the process wide HttpURLConnection keep-alive cache, whose limits the storage leaves to the application.
+	 * 
+	 * @param config
+	 * 		Whether the connections are kept alive.
+	 * @return Current storage reference
+	 */
+	public StorageRef setConnectionPoolConfig(ConnectionPoolConfig config) {
+		context.setConnectionPoolConfig(config);
+		return this;
+	}
+	
+	/**
+	 * Configures the timeouts of the storage requests. A storage call that exceeds its deadline, or a request that exceeds its connect or read timeout, runs the error callback with the code 1015.
+	 * 
+	 * @param config
+	 * 		The connect and read timeouts of each request and the default deadline of each call.
+	 * @return Current storage reference
+	 */
+	public StorageRef setTimeoutConfig(TimeoutConfig config) {
+		context.setTimeoutConfig(config);
+		return this;
+	}
+	
+	/**
+	 * Configures the TLS session cache used by the secure storage requests. Resumed sessions skip the full TLS handshake when a new connection is opened to a known storage node.
+	 * 
+	 * @param config
+	 * 		The session cache size and session timeout.
+	 * @return Current storage reference
+	 */
+	public StorageRef setTlsConfig(TlsConfig config) {
+		context.setTlsConfig(config);
+		return this;
+	}
+	
+	/**
+	 * Configures how the storage server given by the balancer is cached in cluster mode. When shared, the storage references with the same application key and cluster url use a single balancer response.
+	 * 
+	 * @param config
+	 * 		The time to live of the balancer response, how long before expiring it is refreshed and whether it is shared.
+	 * @return Current storage reference
+	 */
+	public StorageRef setBalancerConfig(BalancerConfig config) {
+		context.setBalancerConfig(config);
+		return this;
+	}
+	
+	/**
+	 * Spreads the storage requests over several storage servers, sending each request to the server with the lowest recent latency and error rate. The servers are either listed in the configuration or, in cluster mode, discovered from the balancer answers. Passing null goes back to a single server.
+	 * 
+	 * @param config
+	 * 		The storage servers to choose from, how many to discover and how often to probe them.
+	 * @return Current storage reference
+	 */
+	public StorageRef setEndpointSelectionConfig(EndpointSelectionConfig config) {
+		context.setEndpointSelectionConfig(config);
+		return this;
+	}
+	
+	/**
+	 * Enables request hedging for the reads (getItem, queryItems, listItems and describeTable requests). When a read takes longer than the configured percentile of the recent reads of the same kind, a duplicate request is sent, to another storage server when endpoint selection is enabled, and the first response is used. Passing null disables the hedging.
+	 * 
+	 * @param config
+	 * 		The latency percentile that triggers the duplicate request and the maximum extra load it may add.
+	 * @return Current storage reference
+	 */
+	public StorageRef setHedgingConfig(HedgingConfig config) {
+		context.setHedgingConfig(config);
+		return this;
+	}
+	
+	/**
+	 * Configures how failed requests are retried. A failed request is sent again after an exponential backoff with random jitter, up to the configured number of attempts, and to another storage server when one is known. After a run of failures the requests to a storage server fail fast with the code 1016 until a probe request succeeds again.
+	 * 
+	 * @param config
+	 * 		The maximum number of attempts, the backoff bounds and the circuit breaker thresholds.
+	 * @return Current storage reference
+	 */
+	public StorageRef setRetryConfig(RetryConfig config) {
+		context.setRetryConfig(config);
+		return this;
+	}
+	
+	/**
+	 * Enables the client side rate limit. The reads and the writes of each table are paced to the read and write throughput of its metadata, so the requests wait in the client instead of being throttled by the storage. The limit follows the throughput when the metadata is refreshed, for instance after an update of the table. Passing null disables the rate limit.
+	 * 
+	 * @param config
+	 * 		The size of a unit of read and write throughput and the burst allowed.
+	 * @return Current storage reference
+	 */
+	public StorageRef setRateLimitConfig(RateLimitConfig config) {
+		context.setRateLimitConfig(config);
+		return this;
+	}
+	
+	/**
+	 * Enables the adaptive concurrency limit. The number of requests in flight to each table grows while the latency stays flat and is cut when the latency inflates or the storage throttles or fails the requests. The requests above the limit wait in a queue, and are rejected with the code 1013 when the queue is full. Passing null disables the limit.
+	 * 
+	 * @param config
+	 * 		The initial and maximum number of requests in flight per table and the maximum number of queued requests per table.
+	 * @return Current storage reference
+	 */
+	public StorageRef setConcurrencyLimitConfig(ConcurrencyLimitConfig config) {
+		context.setConcurrencyLimitConfig(config);
+		return this;
+	}
+	
+	/**
+	 * Configures the queue where the notifications of a table wait while its metadata is loaded. A single request loads the metadata and the queued notifications are then delivered in the order they arrived. By default up to 1000 notifications wait per table and the oldest is dropped when the queue is full. Passing null restores the default configuration.
+	 * 
+	 * @param config
+	 * 		The maximum number of pending notifications per table and the policy applied when the queue is full.
+	 * @return Current storage reference
+	 */
+	public StorageRef setNotificationBufferConfig(NotificationBufferConfig config) {
+		context.setNotificationBufferConfig(config);
+		return this;
+	}
+	
+	/**
+	 * Configures where the listeners of the notifications run: inline on the thread that receives them, on a single storage thread, on a pool of storage threads where the channels are spread over partitions, or on the given executor, for instance to hand them to the main thread. The notifications of a channel always reach its listeners in the order they arrived, so a slow listener only delays its own partition; after a change of configuration the new one takes over once the listeners queued by the previous one have run. A listener that throws an exception does not stop the ones queued behind it, the exception is reported like the exceptions of the messaging connection. The metrics report the listeners queued and the time spent running them. Passing null restores the default, inline, configuration.
+	 * 
+	 * <pre>
+	 * StorageRef storage = new StorageRef("your_app_key", "your_token");
+	 * 
+	 * storage.setDispatchConfig(new DispatchConfig(DispatchMode.PARTITIONED, 4));
+	 * </pre>
+	 * 
+	 * @param config
+	 * 		The dispatch mode, the number of partitions and the executor.
+	 * @return Current storage reference
+	 */
+	public StorageRef setDispatchConfig(DispatchConfig config) {
+		context.setDispatchConfig(config);
+		return this;
+	}
+	
+	/**
+	 * Sets how much memory an ordered getItems without a limit may use to sort the items of the table. When the items received exceed the budget, sorted runs are written to temporary files in the application cache directory and merged while the items are delivered. The default budget is 16 MB.
+	 *
+	 * @param bytes
+	 * 		The estimated size in bytes of the items kept in memory while sorting.
+	 * @return Current storage reference
+	 * @throws StorageException
+	 * 		If the budget is not a positive number
+	 */
+	public StorageRef setSortMemoryBudget(long bytes) throws StorageException {
+		if(bytes <= 0)
+			throw new StorageException("Parameter 'bytes' must be greater than 0.");
+		context.setSortMemoryBudget(bytes);
+		return this;
+	}
+
+	/**
+	 * Sets how long the cached metadata of a table is used before it is refreshed. Expired metadata is still used while a single request refreshes it in the background. The default is 10 minutes.
+	 *
+	 * @param millis
+	 * 		The time to live of the cached table metadata, in milliseconds.
+	 * @return Current storage reference
+	 * @throws StorageException
+	 * 		If the time to live is not a positive number
+	 */
+	public StorageRef setTableMetadataTtl(long millis) throws StorageException {
+		if(millis <= 0)
+			throw new StorageException("Parameter 'millis' must be greater than 0.");
+		context.setTableMetadataTtl(millis);
+		return this;
+	}
+
+	/**
+	 * Retrieves the internal counters of this storage reference, such as the number of secure requests that reused a pooled connection ("connectionPool.hits") or had to open a new one ("connectionPool.misses"), the plain http requests whose reuse can not be observed ("connectionPool.unobserved"), and the number of full and resumed TLS handshakes ("tls.fullHandshakes", "tls.resumedHandshakes").
+	 * 
+	 * <pre>
+	 * StorageRef storage = new StorageRef("your_app_key", "your_token");
+	 * 
+	 * for(Map.Entry&lt;String, Long&gt; metric : storage.getMetrics().entrySet()) {
+	 *     Log.d("StorageRef", metric.getKey() + ": " + metric.getValue());
+	 * }
+	 * </pre>
+	 * 
+	 * @return A snapshot of the counters, by name
+	 */
+	public Map<String, Long> getMetrics() {
+		return context.collectMetrics();
+	}
+	
+	/**
+	 * Loads the metadata of the given tables ahead of their first use. The storage server is resolved once and the metadata of all the tables is requested in parallel, so the first operation on each of these tables does not wait for an extra round trip.
+	 * 
+	 * <pre>
+	 * StorageRef storage = new StorageRef("your_app_key", "your_token");
+	 * 
+	 * storage.preload(new OnBooleanResponse() {
+     *       &#064;Override
+     *       public void run(Boolean aBoolean) {
+     *           Log.d("StorageRef", "Tables ready: " + aBoolean);
+     *       }
+     *   },new OnError() {
+     *       &#064;Override
+     *       public void run(Integer integer, String errorMessage) {
+     *           Log.e("StorageRef","Error preloading tables: " + errorMessage);
+     *       }
+     *   }, "your_table", "your_other_table");
+     * 
+     * </pre>
+	 * @param onBooleanResponse
+	 * 		The callback to call with true once the metadata of every table is available.
+	 * @param onError
+	 * 		The callback to call if an exception occurred. It is called once, with the first error, after every table was requested.
+	 * @param tables
+	 * 		The names of the tables to load.
+	 * @return Current storage reference
+	 */
+	public StorageRef preload(OnBooleanResponse onBooleanResponse, OnError onError, String... tables){
+		new TablePreloader(context, tables, onBooleanResponse, onError).start();
+		return this;
+	}
+	
 	/**
 	 * Retrieves a list of the names of all tables created by the user's subscription.
 	 * 
@@ -0,0 +1,242 @@
+package co.realtime.storage;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.LinkedHashMap;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import co.realtime.storage.StorageRef.StorageEvent;
+import co.realtime.storage.ext.OnItemSnapshot;
+
+//The listeners of the notifications, indexed by table, channel and event type. The channel of an event
+//already holds its table and key, so finding the listeners of a message is one lookup. Each channel has its
+//own lock, held only to change its listeners; the listeners are dispatched outside of it, from a snapshot
+//rebuilt after a change, so listeners can be added and removed from any thread while messages arrive.
+class SubscriptionRegistry {
+	private final ConcurrentHashMap<String, Channel> channels = new ConcurrentHashMap<String, Channel>();
+	//the channels of each table that have listeners
+	private final ConcurrentHashMap<String, Set<Channel>> tables = new ConcurrentHashMap<String, Set<Channel>>();
+
+	//true when the event is the first listener of its channel, which has to be subscribed
+	boolean add(Event ev){
+		String channelName = ev.getChannelName();
+		while(true){
+			Channel channel = channels.get(channelName);
+			if(channel == null){
+				Channel created = new Channel(channelName, ev.tableName);
+				channel = channels.putIfAbsent(channelName, created);
+				if(channel == null)
+					channel = created;
+			}
+			synchronized(channel){
+				//a channel emptied meanwhile has left the map, the event goes to its successor
+				if(channel.removed)
+					continue;
+				if(channel.count == 0)
+					tableChannels(channel.table).add(channel);
+				channel.add(ev);
+				return channel.count == 1;
+			}
+		}
+	}
+
+	//true when the channel has no listeners left, and can be unsubscribed
+	boolean remove(Event ev){
+		String channelName = ev.getChannelName();
+		Channel channel = channels.get(channelName);
+		if(channel == null)
+			return true;
+		synchronized(channel){
+			channel.remove(ev.type, ev.onItemSnapshot);
+			return release(channel);
+		}
+	}
+
+	//hands the listeners of the channel for the event type to the dispatcher; true when the channel has no listeners left
+	boolean fire(String channelName, StorageEvent type, ItemSnapshot itemSnapshot, CallbackDispatcher dispatcher){
+		Channel channel = channels.get(channelName);
+		if(channel == null)
+			return true;
+		Event[] events;
+		synchronized(channel){
+			events = channel.snapshot(type);
+		}
+		boolean removed = false;
+		for(Event ev : events){
+			if(ev.isOnce){
+				//taken out before it runs, so a concurrent message does not run it a second time
+				synchronized(channel){
+					if(!channel.remove(ev))
+						continue;
+				}
+				removed = true;
+			}
+			dispatcher.dispatch(channelName, ev, itemSnapshot);
+		}
+		if(!removed)
+			return channel.count == 0;
+		synchronized(channel){
+			return release(channel);
+		}
+	}
+
+	boolean hasListeners(String channelName, StorageEvent type){
+		Channel channel = channels.get(channelName);
+		if(channel == null)
+			return false;
+		synchronized(channel){
+			return channel.snapshot(type).length > 0;
+		}
+	}
+
+	boolean isEmpty(String channelName){
+		Channel channel = channels.get(channelName);
+		return channel == null || channel.count == 0;
+	}
+
+	ArrayList<String> getChannelNames(String tableName, Boolean isOnTableRef){
+		ArrayList<String> ret = new ArrayList<String>();
+		Set<Channel> set = tables.get(tableName);
+		if(set == null)
+			return ret;
+		for(Channel channel : set){
+			synchronized(channel){
+				if((isOnTableRef ? channel.onTable : channel.count - channel.onTable) > 0)
+					ret.add(channel.name);
+			}
+		}
+		return ret;
+	}
+
+	private Set<Channel> tableChannels(String table){
+		Set<Channel> set = tables.get(table);
+		if(set == null){
+			Set<Channel> created = Collections.newSetFromMap(new ConcurrentHashMap<Channel, Boolean>());
+			set = tables.putIfAbsent(table, created);
+			if(set == null)
+				set = created;
+		}
+		return set;
+	}
+
+	//called holding the lock of the channel
+	private boolean release(Channel channel){
+		if(channel.count > 0)
+			return false;
+		if(!channel.removed){
+			channel.removed = true;
+			channels.remove(channel.name, channel);
+			tableChannels(channel.table).remove(channel);
+		}
+		return true;
+	}
+
+	//guarded by its own monitor, except count, which is read without it to skip the lock after a message
+	private static class Channel {
+		final String name;
+		final String table;
+		final EnumMap<StorageEvent, Listeners> types = new EnumMap<StorageEvent, Listeners>(StorageEvent.class);
+		volatile int count;
+		int onTable;
+		boolean removed;
+
+		Channel(String name, String table){
+			this.name = name;
+			this.table = table;
+		}
+
+		void add(Event ev){
+			Listeners listeners = types.get(ev.type);
+			if(listeners == null){
+				listeners = new Listeners();
+				types.put(ev.type, listeners);
+			}
+			listeners.add(ev);
+			changed(ev, 1);
+		}
+
+		//removes every registration of the listener for the event type
+		void remove(StorageEvent type, OnItemSnapshot onItemSnapshot){
+			Listeners listeners = types.get(type);
+			if(listeners == null)
+				return;
+			ArrayList<Event> removed = listeners.remove(onItemSnapshot);
+			if(removed != null)
+				for(Event ev : removed)
+					changed(ev, -1);
+		}
+
+		boolean remove(Event ev){
+			Listeners listeners = types.get(ev.type);
+			if(listeners == null || !listeners.remove(ev))
+				return false;
+			changed(ev, -1);
+			return true;
+		}
+
+		Event[] snapshot(StorageEvent type){
+			Listeners listeners = types.get(type);
+			return listeners == null ? Listeners.NONE : listeners.snapshot();
+		}
+
+		private void changed(Event ev, int delta){
+			count += delta;
+			if(ev.isOnTable)
+				onTable += delta;
+		}
+	}
+
+	//the registrations of one event type on one channel, grouped by listener so removing one is a lookup
+	private static class Listeners {
+		static final Event[] NONE = new Event[0];
+
+		private final LinkedHashMap<OnItemSnapshot, ArrayList<Event>> byListener = new LinkedHashMap<OnItemSnapshot, ArrayList<Event>>();
+		//what the messages iterate, null when it has to be rebuilt after a change
+		private Event[] snapshot = NONE;
+
+		void add(Event ev){
+			ArrayList<Event> events = byListener.get(ev.onItemSnapshot);
+			if(events == null){
+				events = new ArrayList<Event>(1);
+				byListener.put(ev.onItemSnapshot, events);
+			}
+			events.add(ev);
+			snapshot = null;
+		}
+
+		ArrayList<Event> remove(OnItemSnapshot onItemSnapshot){
+			ArrayList<Event> events = byListener.remove(onItemSnapshot);
+			if(events != null)
+				snapshot = null;
+			return events;
+		}
+
+		boolean remove(Event ev){
+			ArrayList<Event> events = byListener.get(ev.onItemSnapshot);
+			if(events == null)
+				return false;
+			for(int i = 0; i < events.size(); i++){
+				if(events.get(i) == ev){
+					events.remove(i);
+					if(events.isEmpty())
+						byListener.remove(ev.onItemSnapshot);
+					snapshot = null;
+					return true;
+				}
+			}
+			return false;
+		}
+
+		Event[] snapshot(){
+			if(snapshot == null){
+				ArrayList<Event> all = new ArrayList<Event>();
+				for(ArrayList<Event> events : byListener.values())
+					all.addAll(events);
+				snapshot = all.toArray(new Event[all.size()]);
+			}
+			return snapshot;
+		}
+	}
+}
@@ -0,0 +1,207 @@
+package co.realtime.storage;
+
+import java.util.ArrayList;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+import co.realtime.storage.entities.TableMetadata;
+import co.realtime.storage.ext.OnError;
+import co.realtime.storage.ext.OnTableMetadata;
+
+//Table metadata shared by every callback thread of a storage context. A miss starts one describeTable
+//per table and every concurrent miss for that table waits on it instead of sending its own request.
+//Entries older than the ttl are still served, and refreshed in the background by a single request.
+//With a store, the entries are saved shortly after they change, off the calling thread, and restored as
+//expired when the context starts. A deleted or recreated table is dropped, so its old key schema is not saved.
+class TableMetadataCache {
+	static final long DEFAULT_TTL = 10 * 60 * 1000;
+	//changes within this delay (milliseconds) are written to the store together
+	static final long SAVE_DELAY = 1000;
+
+	private final ConcurrentHashMap<String, Entry> entries;
+	private final ConcurrentHashMap<String, Loading> loading;
+	private volatile long ttl;
+	private TableMetadataStore store;
+	private StorageContext context;
+	private final AtomicBoolean saveScheduled = new AtomicBoolean();
+
+	private final AtomicLong hits = new AtomicLong();
+	private final AtomicLong misses = new AtomicLong();
+	private final AtomicLong loads = new AtomicLong();
+	private final AtomicLong inFlight = new AtomicLong();
+	private final AtomicLong restored = new AtomicLong();
+
+	TableMetadataCache(long ttl){
+		this.entries = new ConcurrentHashMap<String, Entry>();
+		this.loading = new ConcurrentHashMap<String, Loading>();
+		this.ttl = ttl;
+	}
+
+	void setTtl(long ttl){
+		this.ttl = ttl;
+	}
+
+	TableMetadata get(String name){
+		Entry entry = entries.get(name);
+		return entry == null ? null : entry.meta;
+	}
+
+	void put(TableMetadata tm){
+		entries.put(tm.getName(), new Entry(tm, System.currentTimeMillis()));
+		save();
+	}
+
+	//drops the table, for instance deleted or recreated with another key
+	void invalidate(String name){
+		if(entries.remove(name) != null)
+			save();
+	}
+
+	//keeps serving the entry, but the next use revalidates it with the server
+	void expire(String name){
+		Entry entry = entries.get(name);
+		if(entry != null && entry.loadedAt != 0)
+			entries.replace(name, entry, new Entry(entry.meta, 0));
+	}
+
+	//serves the saved entries right away, each one is revalidated the first time it is used
+	void restore(TableMetadataStore store, StorageContext context){
+		for(TableMetadata tm : store.load().values()){
+			if(tm.getName() != null && entries.putIfAbsent(tm.getName(), new Entry(tm, 0)) == null)
+				restored.incrementAndGet();
+		}
+		this.context = context;
+		this.store = store;
+	}
+
+	//the whole file is rewritten, so the changes made meanwhile are written by a single delayed task on the timer
+	private void save(){
+		final TableMetadataStore current = store;
+		if(current == null || !saveScheduled.compareAndSet(false, true))
+			return;
+		context.scheduleOnTimer(new Runnable(){
+			@Override
+			public void run() {
+				//a change made from now on schedules the next write
+				saveScheduled.set(false);
+				ArrayList<TableMetadata> tables = new ArrayList<TableMetadata>();
+				for(Entry entry : entries.values())
+					tables.add(entry.meta);
+				current.save(tables);
+			}
+		}, SAVE_DELAY);
+	}
+
+	//runs the callback with the metadata of the table, right away when it is cached
+	void withTableMeta(TableRef table, OnTableMetadata onTableMetadata, OnError onError){
+		Entry entry = entries.get(table.name());
+		if(entry != null){
+			hits.incrementAndGet();
+			if(System.currentTimeMillis() - entry.loadedAt > ttl)
+				load(table, null, null);
+			onTableMetadata.run(entry.meta);
+			return;
+		}
+		misses.incrementAndGet();
+		load(table, onTableMetadata, onError);
+	}
+
+	//fetches the metadata of the table, joining the describeTable already in flight for it if there is one
+	void load(final TableRef table, OnTableMetadata onTableMetadata, OnError onError){
+		final String name = table.name();
+		while(true){
+			Loading current = loading.get(name);
+			if(current == null){
+				final Loading created = new Loading();
+				created.add(onTableMetadata, onError);
+				if(loading.putIfAbsent(name, created) != null)
+					continue;
+				loads.incrementAndGet();
+				inFlight.incrementAndGet();
+				table.describe(new OnTableMetadata(){
+					@Override
+					public void run(TableMetadata tableMetadata) {
+						complete(name, created, tableMetadata, null, null);
+					}
+				}, new OnError(){
+					@Override
+					public void run(Integer code, String errorMessage) {
+						complete(name, created, null, code, errorMessage);
+					}
+				});
+				return;
+			}
+			if(current.add(onTableMetadata, onError))
+				return;
+			//the request finished in the meantime, its result is already cached unless it failed
+			loading.remove(name, current);
+			TableMetadata tm = get(name);
+			if(tm != null){
+				if(onTableMetadata != null)
+					onTableMetadata.run(tm);
+				return;
+			}
+		}
+	}
+
+	void collectMetrics(Map<String, Long> metrics){
+		metrics.put("metadata.hits", hits.get());
+		metrics.put("metadata.misses", misses.get());
+		metrics.put("metadata.loads", loads.get());
+		metrics.put("metadata.inFlight", inFlight.get());
+		metrics.put("metadata.restored", restored.get());
+	}
+
+	private void complete(String name, Loading request, TableMetadata tm, Integer code, String errorMessage){
+		loading.remove(name, request);
+		inFlight.decrementAndGet();
+		for(Waiter waiter : request.finish()){
+			if(tm != null){
+				if(waiter.onTableMetadata != null)
+					waiter.onTableMetadata.run(tm);
+			} else if(waiter.onError != null){
+				waiter.onError.run(code, errorMessage);
+			}
+		}
+	}
+
+	private static class Entry {
+		final TableMetadata meta;
+		final long loadedAt;
+
+		Entry(TableMetadata meta, long loadedAt){
+			this.meta = meta;
+			this.loadedAt = loadedAt;
+		}
+	}
+
+	private static class Waiter {
+		final OnTableMetadata onTableMetadata;
+		final OnError onError;
+
+		Waiter(OnTableMetadata onTableMetadata, OnError onError){
+			this.onTableMetadata = onTableMetadata;
+			this.onError = onError;
+		}
+	}
+
+	private static class Loading {
+		private ArrayList<Waiter> waiters = new ArrayList<Waiter>();
+
+		synchronized boolean add(OnTableMetadata onTableMetadata, OnError onError){
+			if(waiters == null)
+				return false;
+			if(onTableMetadata != null || onError != null)
+				waiters.add(new Waiter(onTableMetadata, onError));
+			return true;
+		}
+
+		synchronized ArrayList<Waiter> finish(){
+			ArrayList<Waiter> finished = waiters;
+			waiters = null;
+			return finished;
+		}
+	}
+}
@@ -0,0 +1,56 @@
+package co.realtime.storage;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import co.realtime.storage.entities.TableMetadata;
+
+//Keeps the table metadata of an application in a small json file, so a new storage reference knows the
+//key schema of its tables before the first describeTable completes. The file is only a hint: restored
+//entries are revalidated against the server in the background.
+class TableMetadataStore {
+	private final File file;
+	private final ObjectMapper mapper;
+
+	TableMetadataStore(File dir, String applicationKey){
+		this.file = new File(dir, "rtcs-metadata-" + applicationKey.replaceAll("[^A-Za-z0-9_-]", "_") + ".json");
+		this.mapper = new ObjectMapper();
+		this.mapper.configure(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES, false);
+	}
+
+	Map<String, TableMetadata> load(){
+		if(!file.exists())
+			return new LinkedHashMap<String, TableMetadata>();
+		try {
+			return mapper.readValue(file, new TypeReference<LinkedHashMap<String, TableMetadata>>(){});
+		} catch (IOException e) {
+			//an unreadable file is dropped, the metadata will be fetched again
+			file.delete();
+			return new LinkedHashMap<String, TableMetadata>();
+		}
+	}
+
+	synchronized void save(Collection<TableMetadata> tables){
+		LinkedHashMap<String, TableMetadata> content = new LinkedHashMap<String, TableMetadata>();
+		for(TableMetadata tm : tables)
+			content.put(tm.getName(), tm);
+		//written aside and renamed, so a crash never leaves a truncated file behind
+		File temp = new File(file.getPath() + ".tmp");
+		try {
+			mapper.writeValue(temp, content);
+			if(!temp.renameTo(file)){
+				file.delete();
+				temp.renameTo(file);
+			}
+		} catch (IOException e) {
+			temp.delete();
+		}
+	}
+}
@@ -0,0 +1,85 @@
+package co.realtime.storage;
+
+import java.util.LinkedHashSet;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import co.realtime.storage.entities.TableMetadata;
+import co.realtime.storage.ext.OnBooleanResponse;
+import co.realtime.storage.ext.OnError;
+import co.realtime.storage.ext.OnTableMetadata;
+
+//Warms a storage context for a set of tables: the balancer is asked once for the storage server, then
+//the describeTable requests of all the tables are sent at the same time. They run on the workers of the
+//context executor, so their connections stay in the keep-alive pool for the requests that follow.
+class TablePreloader {
+	private final StorageContext context;
+	private final LinkedHashSet<String> tables;
+	private final OnBooleanResponse onBooleanResponse;
+	private final OnError onError;
+	private final AtomicInteger pending;
+	private volatile Integer errorCode;
+	private volatile String errorMessage;
+
+	TablePreloader(StorageContext context, String[] tables, OnBooleanResponse onBooleanResponse, OnError onError){
+		this.context = context;
+		this.tables = new LinkedHashSet<String>();
+		for(String table : tables)
+			this.tables.add(table);
+		this.onBooleanResponse = onBooleanResponse;
+		this.onError = onError;
+		this.pending = new AtomicInteger(this.tables.size());
+	}
+
+	void start(){
+		context.restExecutor.execute(new Runnable(){
+			@Override
+			public void run() {
+				try {
+					context.resolveServerUrl();
+				} catch (Exception e) {
+					if(onError != null)
+						onError.run(1002, e.getMessage());
+					return;
+				}
+				if(tables.isEmpty()){
+					if(onBooleanResponse != null)
+						onBooleanResponse.run(true);
+					return;
+				}
+				for(String table : tables){
+					context.loadTableMeta(context.storage.table(table), new OnTableMetadata(){
+						@Override
+						public void run(TableMetadata tableMetadata) {
+							done();
+						}
+					}, new OnError(){
+						@Override
+						public void run(Integer code, String errorMessage) {
+							failed(code, errorMessage);
+						}
+					});
+				}
+			}
+		}, onError);
+	}
+
+	private synchronized void failed(Integer code, String message){
+		//the first error is the one reported
+		if(errorCode == null){
+			errorCode = code;
+			errorMessage = message;
+		}
+		done();
+	}
+
+	private void done(){
+		if(pending.decrementAndGet() != 0)
+			return;
+		if(errorCode != null){
+			if(onError != null)
+				onError.run(errorCode, errorMessage);
+		} else if(onBooleanResponse != null){
+			onBooleanResponse.run(true);
+		}
+	}
+}
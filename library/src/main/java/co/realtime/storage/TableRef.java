@@ -2,6 +2,7 @@ package co.realtime.storage;
 
 
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Iterator;
@@ -19,9 +20,12 @@ import co.realtime.storage.StorageRef.StorageProvisionType;
 import co.realtime.storage.entities.Key;
 import co.realtime.storage.entities.TableMetadata;
 import co.realtime.storage.entities.Throughput;
+import co.realtime.storage.ext.OnBatchCompleted;
+import co.realtime.storage.ext.OnBatchItemError;
 import co.realtime.storage.ext.OnBooleanResponse;
 import co.realtime.storage.ext.OnError;
 import co.realtime.storage.ext.OnItemSnapshot;
+import co.realtime.storage.ext.OnMissingKeys;
 import co.realtime.storage.ext.OnPresence;
 import co.realtime.storage.ext.OnTableCreation;
 import co.realtime.storage.ext.OnTableMetadata;
@@ -37,6 +41,7 @@ public class TableRef {
 	protected Boolean pushNotificationsEnabled;
 	private LinkedHashMap<String, Object> key;
 
+	private static final int DEFAULT_BATCH_PARALLELISM = 8;
 
 	TableRef(StorageContext context, String name) {
 		this.context = context;
@@ -286,7 +291,7 @@ public class TableRef {
 	}
 	
 	/**
-	 * Gets the metadata of the table reference.
+	 * Gets the metadata of the table reference. Concurrent calls for the same table share a single request to the server.
 	 * 
 	 * <pre>
 	 * StorageRef storage = new StorageRef("your_app_key", "your_token");
@@ -316,13 +321,18 @@ public class TableRef {
 	 * @return Current table reference
 	 */
 	public TableRef meta(OnTableMetadata onTableMetadata, OnError onError){
+		context.loadTableMeta(this, onTableMetadata, onError);
+		return this;
+	}
+	
+	//sends the describeTable request, callers go through the metadata cache
+	void describe(OnTableMetadata onTableMetadata, OnError onError){
 		PostBodyBuilder pbb = new PostBodyBuilder(context);		
 		pbb.addObject("table", this.name);
 		Rest r = new Rest(context, RestType.DESCRIBETABLE, pbb, null);
 		r.onError = onError;
 		r.onTableMetadata = onTableMetadata;
 		context.processRest(r);
-		return this;		
 	}
 	
 	/**
@@ -453,6 +463,119 @@ public class TableRef {
 		return this;
 	}
 	
+	/**
+	 * Adds the items of an iterable to the table, with a bounded number of requests in flight. The items are taken from the iterable only as the previous requests complete, so a lazy iterable is never held in memory.
+	 * 
+	 * <pre>
+	 * StorageRef storage = new StorageRef("your_app_key", "your_token");
+	 * 
+	 * TableRef tableRef = storage.table("your_table");
+	 * 
+	 * tableRef.pushAll(items, 16, new OnBatchItemError() {
+	 *       &#064;Override
+	 *       public void run(LinkedHashMap&lt;String, ItemAttribute&gt; item, Integer code, String errorMessage) {
+	 *           Log.e("TableRef", "Error inserting item " + item + ": " + errorMessage);
+	 *       }
+	 *   }, new OnBatchCompleted() {
+	 *       &#064;Override
+	 *       public void run(BatchResult result) {
+	 *           Log.d("TableRef", result.getSucceeded() + " items inserted at " + result.getItemsPerSecond() + " items/s");
+	 *       }
+	 *   }, new OnError() {
+	 *       &#064;Override
+	 *       public void run(Integer code, String errorMessage) {
+	 *           Log.e("TableRef", "Error starting the batch: " + errorMessage);
+	 *       }
+	 *   });
+	 * 
+	 * </pre>
+	 * 
+	 * @param items
+	 * 		The items to add
+	 * @param parallelism
+	 * 		The maximum number of requests in flight. Ranges between 1 and 64.
+	 * @param onItemError
+	 * 		The callback to call for each item that could not be added
+	 * @param onCompleted
+	 * 		The callback to run once every item was added or failed, with the number of items added and failed and the throughput of the batch
+	 * @param onError
+	 * 		The callback to call if the batch could not start
+	 * @return Current table reference
+	 */
+	public TableRef pushAll(Iterable<LinkedHashMap<String, ItemAttribute>> items, Integer parallelism, OnBatchItemError onItemError, OnBatchCompleted onCompleted, OnError onError){
+		startBatch(RestType.PUTITEM, items, parallelism, onItemError, onCompleted, onError);
+		return this;
+	}
+	
+	/**
+	 * Adds the items of an iterable to the table, with up to 8 requests in flight. See pushAll(Iterable, Integer, OnBatchItemError, OnBatchCompleted, OnError).
+	 * 
+	 * @param items
+	 * 		The items to add
+	 * @param onItemError
+	 * 		The callback to call for each item that could not be added
+	 * @param onCompleted
+	 * 		The callback to run once every item was added or failed
+	 * @param onError
+	 * 		The callback to call if the batch could not start
+	 * @return Current table reference
+	 */
+	public TableRef pushAll(Iterable<LinkedHashMap<String, ItemAttribute>> items, OnBatchItemError onItemError, OnBatchCompleted onCompleted, OnError onError){
+		return pushAll(items, DEFAULT_BATCH_PARALLELISM, onItemError, onCompleted, onError);
+	}
+	
+	/**
+	 * Deletes items from the table, with a bounded number of requests in flight. Each item of the iterable gives the key of an item to delete: its primary key attribute and, if the table has one, its secondary key attribute. Other attributes are ignored, so the values of item snapshots can be used.
+	 * 
+	 * @param keys
+	 * 		The keys of the items to delete
+	 * @param parallelism
+	 * 		The maximum number of requests in flight. Ranges between 1 and 64.
+	 * @param onItemError
+	 * 		The callback to call for each item that could not be deleted
+	 * @param onCompleted
+	 * 		The callback to run once every item was deleted or failed, with the number of items deleted and failed and the throughput of the batch
+	 * @param onError
+	 * 		The callback to call if the batch could not start
+	 * @return Current table reference
+	 */
+	public TableRef delItems(Iterable<LinkedHashMap<String, ItemAttribute>> keys, Integer parallelism, OnBatchItemError onItemError, OnBatchCompleted onCompleted, OnError onError){
+		startBatch(RestType.DELETEITEM, keys, parallelism, onItemError, onCompleted, onError);
+		return this;
+	}
+	
+	/**
+	 * Deletes items from the table, with up to 8 requests in flight. See delItems(Iterable, Integer, OnBatchItemError, OnBatchCompleted, OnError).
+	 * 
+	 * @param keys
+	 * 		The keys of the items to delete
+	 * @param onItemError
+	 * 		The callback to call for each item that could not be deleted
+	 * @param onCompleted
+	 * 		The callback to run once every item was deleted or failed
+	 * @param onError
+	 * 		The callback to call if the batch could not start
+	 * @return Current table reference
+	 */
+	public TableRef delItems(Iterable<LinkedHashMap<String, ItemAttribute>> keys, OnBatchItemError onItemError, OnBatchCompleted onCompleted, OnError onError){
+		return delItems(keys, DEFAULT_BATCH_PARALLELISM, onItemError, onCompleted, onError);
+	}
+	
+	private void startBatch(RestType type, Iterable<LinkedHashMap<String, ItemAttribute>> items, Integer parallelism, OnBatchItemError onItemError, OnBatchCompleted onCompleted, OnError onError){
+		if(parallelism == null || parallelism < 1 || parallelism > 64){
+			if(onError != null)
+				onError.run(1001, "Parameter 'parallelism' must be between 1 and 64.");
+			return;
+		}
+		final BatchWriter writer = new BatchWriter(this, type, items, parallelism, onItemError, onCompleted);
+		context.withTableMeta(this, new OnTableMetadata(){
+			@Override
+			public void run(TableMetadata tableMetadata) {
+				writer.start();
+			}
+		}, onError);
+	}
+	
 	/**
 	 * Applies a limit to this reference confining the number of items.
 	 * 
@@ -499,7 +622,7 @@ public class TableRef {
 		pbb.addObject("table", this.name);
 		pbb.addObject("provisionLoad", provisionLoad.getValue());
 		pbb.addObject("provisionType", provisionType.getValue());
-		Rest r = new Rest(context, RestType.UPDATETABLE, pbb, null);
+		Rest r = new Rest(context, RestType.UPDATETABLE, pbb, this);
 		r.onError = onError;
 		r.onTableUpdate = onTableUpdate;
 		context.processRest(r);
@@ -540,17 +663,12 @@ public class TableRef {
 	 * @return Current table reference
 	 */
 	public TableRef update(final StorageProvisionLoad provisionLoad, final StorageProvisionType provisionType, final OnTableUpdate onTableUpdate, final OnError onError){
-		TableMetadata tm = context.getTableMeta(this.name);
-		if(tm == null){
-			this.meta(new OnTableMetadata(){
-				@Override
-				public void run(TableMetadata tableMetadata) {
-					_update(provisionLoad, provisionType, onTableUpdate, onError);
-				}				
-			}, onError);
-		} else {
-			this._update(provisionLoad, provisionType, onTableUpdate, onError);
-		}
+		context.withTableMeta(this, new OnTableMetadata(){
+			@Override
+			public void run(TableMetadata tableMetadata) {
+				_update(provisionLoad, provisionType, onTableUpdate, onError);
+			}
+		}, onError);
 		return this;
 	}
 	
@@ -969,7 +1087,7 @@ public class TableRef {
 		return this;
 	}
 	
-	private void _getItems(OnItemSnapshot onItemSnapshot, OnError onError){
+	private void _getItems(OnItemSnapshot onItemSnapshot, OnError onError, RequestHandle handle){
 		TableMetadata tm = context.getTableMeta(this.name);
 		
 		RestType rt = _tryConstructKey(tm);
@@ -977,7 +1095,7 @@ public class TableRef {
 			Iterator<Filter> itr = filters.iterator();
 			Filter f = itr.next(); 
 			StorageDataType primaryType = tm.getPrimaryKeyType();
-			this.item(primaryType == StorageDataType.STRING ? new ItemAttribute(f.value.toString()) : f.value)._get(onItemSnapshot, onError, true);
+			this.item(primaryType == StorageDataType.STRING ? new ItemAttribute(f.value.toString()) : f.value)._get(onItemSnapshot, onError, true, handle);
 			return;
 		}
 		//RestType rt = (lhm == null) ? RestType.LISTITEMS : RestType.QUERYITEMS;
@@ -988,9 +1106,13 @@ public class TableRef {
 			if(this.limit != null)
 				pbb.addObject("limit", this.limit);
 		}
+		//an ordered scan has to read the whole table before the limit can be applied
+		if(rt==RestType.LISTITEMS && this.order == StorageOrder.NULL && this.limit != null)
+			pbb.addObject("limit", this.limit);
 		if(filters.size()>0)
 			pbb.addObject("filter", getFiltersForJSON(rt));
 		Rest r = new Rest(context, rt, pbb, this);
+		r.handle = handle;
 		r.onError = onError;
 		r.onItemSnapshot = onItemSnapshot;
 		r.order = this.order;		
@@ -1096,23 +1218,120 @@ public class TableRef {
 	 * </pre>
 	 * 
 	 * @param onItemSnapshot
-	 * 		The callback to call once the items are available. The success function will be called for each existent item. The argument is an item snapshot. In the end, when all calls are done, the success function will be called with null as argument to signal that there are no more items.
+	 * 		The callback to call once the items are available. The success function will be called for each existent item. The argument is an item snapshot. In the end, when all calls are done, the success function will be called with null as argument to signal that there are no more items. Unless asc() or desc() is used on a table scan, the items are delivered page by page as soon as each page arrives.
 	 * @param onError
 	 * 		The callback to call if an exception occurred
 	 * @return Current table reference
 	 */
 	public TableRef getItems(final OnItemSnapshot onItemSnapshot, final OnError onError){
-		TableMetadata tm = context.getTableMeta(this.name);
-		if(tm == null){
-			this.meta(new OnTableMetadata(){
-				@Override
-				public void run(TableMetadata tableMetadata) {
-					_getItems(onItemSnapshot, onError);
-				}				
-			}, onError);
-		} else {
-			this._getItems(onItemSnapshot, onError);
+		return getItems(onItemSnapshot, onError, new RequestHandle());
+	}
+	
+	/**
+	 * Get the items of this tableRef, under the control of a request handle. The deadline of the handle covers all the pages of the scan, and cancelling the handle stops the scan.
+	 * 
+	 * <pre>
+	 * RequestHandle handle = new RequestHandle(10000);
+	 * 
+	 * tableRef.getItems(onItemSnapshot, onError, handle);
+	 * 
+	 * // the user left the screen, the remaining pages are not downloaded
+	 * handle.cancel();
+	 * </pre>
+	 * 
+	 * @param onItemSnapshot
+	 * 		The callback to call once the items are available, as in getItems(OnItemSnapshot, OnError). It is not called with null after a cancellation.
+	 * @param onError
+	 * 		The callback to call if an exception occurred. Runs with the code 1015 if the deadline of the handle is exceeded.
+	 * @param handle
+	 * 		The handle that can cancel this call and sets its deadline.
+	 * @return Current table reference
+	 */
+	public TableRef getItems(final OnItemSnapshot onItemSnapshot, final OnError onError, final RequestHandle handle){
+		handle.start(context);
+		context.withTableMeta(this, new OnTableMetadata(){
+			@Override
+			public void run(TableMetadata tableMetadata) {
+				_getItems(onItemSnapshot, onError, handle);
+			}
+		}, onError);
+		return this;
+	}
+	
+	/**
+	 * Gets the items of a set of keys, with a bounded number of requests in flight. The filters, order and limit of this reference do not apply.
+	 * 
+	 * <pre>
+	 * StorageRef storage = new StorageRef("your_app_key", "your_token");
+	 * 
+	 * TableRef tableRef = storage.table("your_table");
+	 * 
+	 * tableRef.getItems(keys, new OnItemSnapshot() {
+	 *       &#064;Override
+	 *       public void run(ItemSnapshot itemSnapshot) {
+	 *           if (itemSnapshot != null) {
+	 *               Log.d("TableRef", "Item retrieved: " + itemSnapshot.val());
+	 *           }
+	 *       }
+	 *   }, new OnMissingKeys() {
+	 *       &#064;Override
+	 *       public void run(List&lt;LinkedHashMap&lt;String, ItemAttribute&gt;&gt; keys) {
+	 *           Log.d("TableRef", keys.size() + " items do not exist");
+	 *       }
+	 *   }, new OnError() {
+	 *       &#064;Override
+	 *       public void run(Integer code, String errorMessage) {
+	 *           Log.e("TableRef", "Error retrieving items: " + errorMessage);
+	 *       }
+	 *   });
+	 * 
+	 * </pre>
+	 * 
+	 * @param keys
+	 * 		The keys of the items: the primary key attribute and, if the table has one, the secondary key attribute. Other attributes are ignored and duplicate keys are fetched once.
+	 * @param onItemSnapshot
+	 * 		The callback to call for each item found, in the order of arrival and never concurrently. In the end it is called with null as argument.
+	 * @param onMissingKeys
+	 * 		The callback to call, before the final null, with the keys of the items that do not exist. Not called when every item exists.
+	 * @param onError
+	 * 		The callback to call if an exception occurred. The first error ends the request.
+	 * @return Current table reference
+	 */
+	public TableRef getItems(Collection<LinkedHashMap<String, ItemAttribute>> keys, OnItemSnapshot onItemSnapshot, OnMissingKeys onMissingKeys, OnError onError){
+		return getItems(keys, DEFAULT_BATCH_PARALLELISM, onItemSnapshot, onMissingKeys, onError, new RequestHandle());
+	}
+	
+	/**
+	 * Gets the items of a set of keys, with a bounded number of requests in flight and under the control of a request handle. See getItems(Collection, OnItemSnapshot, OnMissingKeys, OnError).
+	 * 
+	 * @param keys
+	 * 		The keys of the items: the primary key attribute and, if the table has one, the secondary key attribute.
+	 * @param parallelism
+	 * 		The maximum number of requests in flight. Ranges between 1 and 64.
+	 * @param onItemSnapshot
+	 * 		The callback to call for each item found, in the order of arrival and never concurrently. In the end it is called with null as argument.
+	 * @param onMissingKeys
+	 * 		The callback to call, before the final null, with the keys of the items that do not exist.
+	 * @param onError
+	 * 		The callback to call if an exception occurred. The first error ends the request and cancels the handle, which stops the other requests in flight.
+	 * @param handle
+	 * 		The handle that can cancel this call and sets its deadline.
+	 * @return Current table reference
+	 */
+	public TableRef getItems(final Collection<LinkedHashMap<String, ItemAttribute>> keys, Integer parallelism, OnItemSnapshot onItemSnapshot, OnMissingKeys onMissingKeys, OnError onError, RequestHandle handle){
+		if(parallelism == null || parallelism < 1 || parallelism > 64){
+			if(onError != null)
+				onError.run(1001, "Parameter 'parallelism' must be between 1 and 64.");
+			return this;
 		}
+		handle.start(context);
+		final MultiGet multiGet = new MultiGet(this, parallelism, onItemSnapshot, onMissingKeys, onError, handle);
+		context.withTableMeta(this, new OnTableMetadata(){
+			@Override
+			public void run(TableMetadata tableMetadata) {
+				multiGet.start(keys);
+			}
+		}, onError);
 		return this;
 	}
 	
@@ -1283,27 +1502,16 @@ public class TableRef {
 	public TableRef on(StorageEvent eventType, final ItemAttribute primary, final OnItemSnapshot onItemSnapshot, final OnError onError) {
 		if(eventType == StorageEvent.PUT) {			
 			final TableRef self = this;
-			TableMetadata tm = context.getTableMeta(this.name);
-			if(tm == null) {
-				this.meta(new OnTableMetadata(){
-					@Override
-					public void run(TableMetadata tableMetadata) {
-						// see if equals filter exists over the primary key
-						if(!filterExists(StorageFilter.EQUALS, tableMetadata.getPrimaryKeyName())) {
-							self.equals(tableMetadata.getPrimaryKeyName(), primary);
-						}						
-						_getItems(onItemSnapshot, onError);
-					}			
-				}, onError);
-				
-			}
-			else {
-				// see if equals filter exists over the primary key
-				if(!filterExists(StorageFilter.EQUALS, tm.getPrimaryKeyName())) {
-					equals(tm.getPrimaryKeyName(), primary);
-				}
-				_getItems(onItemSnapshot, onError);			
-			}
+			context.withTableMeta(this, new OnTableMetadata(){
+				@Override
+				public void run(TableMetadata tableMetadata) {
+					// see if equals filter exists over the primary key
+					if(!filterExists(StorageFilter.EQUALS, tableMetadata.getPrimaryKeyName())) {
+						self.equals(tableMetadata.getPrimaryKeyName(), primary);
+					}						
+					_getItems(onItemSnapshot, onError, new RequestHandle());
+				}			
+			}, onError);
 		}
 		
 		Event ev = new Event(eventType, this.name, primary, null, false, true, pushNotificationsEnabled, onItemSnapshot);
@@ -1424,27 +1632,16 @@ public class TableRef {
 	public TableRef once(StorageEvent eventType, final ItemAttribute primary, final OnItemSnapshot onItemSnapshot, final OnError onError) {
 		if(eventType == StorageEvent.PUT) {
 			final TableRef self = this;
-			TableMetadata tm = context.getTableMeta(this.name);
-			if(tm == null) {
-				this.meta(new OnTableMetadata() {
-					@Override
-					public void run(TableMetadata tableMetadata) {
-						// see if equals filter exists over the primary key
-						if(!filterExists(StorageFilter.EQUALS, tableMetadata.getPrimaryKeyName())) {
-							self.equals(tableMetadata.getPrimaryKeyName(), primary);
-						}
-						_getItems(onItemSnapshot, onError);
+			context.withTableMeta(this, new OnTableMetadata(){
+				@Override
+				public void run(TableMetadata tableMetadata) {
+					// see if equals filter exists over the primary key
+					if(!filterExists(StorageFilter.EQUALS, tableMetadata.getPrimaryKeyName())) {
+						self.equals(tableMetadata.getPrimaryKeyName(), primary);
 					}
-				}, onError);
-				
-			}
-			else {
-				// see if equals filter exists over the primary key
-				if(!filterExists(StorageFilter.EQUALS, tm.getPrimaryKeyName())) {
-					equals(tm.getPrimaryKeyName(), primary);
+					_getItems(onItemSnapshot, onError, new RequestHandle());
 				}
-				_getItems(onItemSnapshot, onError);			
-			}
+			}, onError);
 		}
 		
 		Event ev = new Event(eventType, this.name, primary, null, true, true, pushNotificationsEnabled, onItemSnapshot);
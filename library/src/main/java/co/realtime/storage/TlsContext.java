@@ -0,0 +1,140 @@
+package co.realtime.storage;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.Socket;
+import java.security.KeyManagementException;
+import java.security.NoSuchAlgorithmException;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.net.ssl.HandshakeCompletedEvent;
+import javax.net.ssl.HandshakeCompletedListener;
+import javax.net.ssl.SSLContext;
+import javax.net.ssl.SSLSessionContext;
+import javax.net.ssl.SSLSocket;
+import javax.net.ssl.SSLSocketFactory;
+
+import co.realtime.storage.entities.TlsConfig;
+
+//One SSLContext per storage context, so the TLS session cache survives between requests and
+//new connections to a known storage node resume the session instead of doing a full handshake.
+class TlsContext {
+	private SSLContext sslContext;
+	private SSLSocketFactory socketFactory;
+	private TlsConfig config;
+
+	private final AtomicLong connections = new AtomicLong();
+	private final AtomicLong fullHandshakes = new AtomicLong();
+	private final AtomicLong resumedHandshakes = new AtomicLong();
+	//set when a socket is opened, HttpsURLConnection connects on the thread of the request
+	private final ThreadLocal<Boolean> opened = new ThreadLocal<Boolean>();
+
+	TlsContext(TlsConfig config){
+		this.config = config;
+	}
+
+	synchronized void configure(TlsConfig config){
+		this.config = config;
+		if(sslContext != null)
+			applySessionConfig();
+	}
+
+	synchronized SSLSocketFactory getSocketFactory() throws NoSuchAlgorithmException, KeyManagementException {
+		if(socketFactory == null){
+			sslContext = SSLContext.getInstance("TLS");
+			sslContext.init(null, null, new java.security.SecureRandom());
+			applySessionConfig();
+			socketFactory = new CountingSocketFactory(sslContext.getSocketFactory());
+		}
+		return socketFactory;
+	}
+
+	//true when the calling thread opened a socket since the last call
+	boolean takeOpened(){
+		Boolean socketOpened = opened.get();
+		opened.remove();
+		return socketOpened != null;
+	}
+
+	void collectMetrics(Map<String, Long> metrics){
+		metrics.put("tls.connections", connections.get());
+		metrics.put("tls.fullHandshakes", fullHandshakes.get());
+		metrics.put("tls.resumedHandshakes", resumedHandshakes.get());
+	}
+
+	private void applySessionConfig(){
+		SSLSessionContext sessions = sslContext.getClientSessionContext();
+		if(sessions != null){
+			sessions.setSessionCacheSize(config.getSessionCacheSize());
+			sessions.setSessionTimeout(config.getSessionTimeout());
+		}
+	}
+
+	private Socket track(Socket socket){
+		connections.incrementAndGet();
+		opened.set(Boolean.TRUE);
+		if(socket instanceof SSLSocket){
+			final long createdAt = System.currentTimeMillis();
+			((SSLSocket) socket).addHandshakeCompletedListener(new HandshakeCompletedListener(){
+				@Override
+				public void handshakeCompleted(HandshakeCompletedEvent event) {
+					//a resumed session was negotiated before this socket existed
+					if(event.getSession().getCreationTime() < createdAt)
+						resumedHandshakes.incrementAndGet();
+					else
+						fullHandshakes.incrementAndGet();
+				}
+			});
+		}
+		return socket;
+	}
+
+	private class CountingSocketFactory extends SSLSocketFactory {
+		private final SSLSocketFactory delegate;
+
+		CountingSocketFactory(SSLSocketFactory delegate){
+			this.delegate = delegate;
+		}
+
+		@Override
+		public String[] getDefaultCipherSuites() {
+			return delegate.getDefaultCipherSuites();
+		}
+
+		@Override
+		public String[] getSupportedCipherSuites() {
+			return delegate.getSupportedCipherSuites();
+		}
+
+		@Override
+		public Socket createSocket() throws IOException {
+			return track(delegate.createSocket());
+		}
+
+		@Override
+		public Socket createSocket(Socket s, String host, int port, boolean autoClose) throws IOException {
+			return track(delegate.createSocket(s, host, port, autoClose));
+		}
+
+		@Override
+		public Socket createSocket(String host, int port) throws IOException {
+			return track(delegate.createSocket(host, port));
+		}
+
+		@Override
+		public Socket createSocket(String host, int port, InetAddress localHost, int localPort) throws IOException {
+			return track(delegate.createSocket(host, port, localHost, localPort));
+		}
+
+		@Override
+		public Socket createSocket(InetAddress host, int port) throws IOException {
+			return track(delegate.createSocket(host, port));
+		}
+
+		@Override
+		public Socket createSocket(InetAddress address, int port, InetAddress localAddress, int localPort) throws IOException {
+			return track(delegate.createSocket(address, port, localAddress, localPort));
+		}
+	}
+}
@@ -0,0 +1,73 @@
+package co.realtime.storage;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.PriorityQueue;
+
+import co.realtime.storage.StorageRef.StorageOrder;
+
+//Keeps the first k items of an ordered scan while the pages arrive, in a heap whose head is the
+//worst item kept. Memory is O(k) and each item costs O(log k) instead of sorting the whole table.
+//Ties are broken by arrival order, so the result matches a stable sort of all items.
+class TopKSelector {
+	private final int k;
+	private final Comparator<Entry> order;
+	private final PriorityQueue<Entry> heap;
+	private long sequence;
+
+	TopKSelector(long k, StorageOrder storageOrder, String sortKey){
+		this.k = (int) Math.min(k, Integer.MAX_VALUE);
+		final Comparator<LinkedHashMap<String, ItemAttribute>> itemsComparator = (storageOrder == StorageOrder.DESC) ?
+				Collections.reverseOrder(new LHMItemsComparator(sortKey)) : new LHMItemsComparator(sortKey);
+		this.order = new Comparator<Entry>(){
+			@Override
+			public int compare(Entry e1, Entry e2) {
+				int c = itemsComparator.compare(e1.item, e2.item);
+				if(c != 0)
+					return c;
+				return e1.sequence < e2.sequence ? -1 : (e1.sequence > e2.sequence ? 1 : 0);
+			}
+		};
+		this.heap = new PriorityQueue<Entry>(Math.max(1, Math.min(this.k, 1024)), Collections.reverseOrder(this.order));
+		this.sequence = 0;
+	}
+
+	void offer(Collection<LinkedHashMap<String, ItemAttribute>> items){
+		for(LinkedHashMap<String, ItemAttribute> item : items)
+			offer(item);
+	}
+
+	void offer(LinkedHashMap<String, ItemAttribute> item){
+		if(k <= 0) return;
+		Entry entry = new Entry(item, sequence++);
+		if(heap.size() < k){
+			heap.add(entry);
+		} else if(order.compare(entry, heap.peek()) < 0){
+			heap.poll();
+			heap.add(entry);
+		}
+	}
+
+	//the kept items, best first
+	ArrayList<LinkedHashMap<String, ItemAttribute>> result(){
+		ArrayList<Entry> entries = new ArrayList<Entry>(heap);
+		Collections.sort(entries, order);
+		ArrayList<LinkedHashMap<String, ItemAttribute>> items = new ArrayList<LinkedHashMap<String, ItemAttribute>>(entries.size());
+		for(Entry e : entries)
+			items.add(e.item);
+		return items;
+	}
+
+	private static class Entry {
+		final LinkedHashMap<String, ItemAttribute> item;
+		final long sequence;
+
+		Entry(LinkedHashMap<String, ItemAttribute> item, long sequence){
+			this.item = item;
+			this.sequence = sequence;
+		}
+	}
+}
@@ -0,0 +1,109 @@
+package co.realtime.storage.entities;
+
+import co.realtime.storage.ext.StorageException;
+
+/**
+ * Balancer configuration. In cluster mode the storage server assigned by the balancer is cached and refreshed in the background shortly before it expires.
+ *
+ * @author RTCS Development Team
+ *
+ */
+public class BalancerConfig {
+	Long ttl;
+	Long refreshAhead;
+	Boolean shared;
+
+	/**
+	 * Retrieves the time (milliseconds) the storage server given by the balancer is used before asking again.
+	 *
+	 * @return The time to live in milliseconds.
+	 */
+	public Long getTtl() {
+		return ttl;
+	}
+
+	/**
+	 * Assigns the time (milliseconds) the storage server given by the balancer is used before asking again.
+	 *
+	 * @param ttl
+	 * 		The time to live in milliseconds. Must be greater than 0.
+	 * @throws StorageException
+	 * 		Exception thrown if the value set is outside the allowed range.
+	 */
+	public void setTtl(Long ttl) throws StorageException {
+		if(ttl > 0)
+			this.ttl = ttl;
+		else
+			throw new StorageException("Parameter 'ttl' must be greater than 0.");
+	}
+
+	/**
+	 * Retrieves how long (milliseconds) before the expiration the storage server is refreshed in the background.
+	 *
+	 * @return The refresh ahead time in milliseconds.
+	 */
+	public Long getRefreshAhead() {
+		return refreshAhead;
+	}
+
+	/**
+	 * Assigns how long (milliseconds) before the expiration the storage server is refreshed in the background. 0 disables the background refresh.
+	 *
+	 * @param refreshAhead
+	 * 		The refresh ahead time in milliseconds. Must not be negative.
+	 * @throws StorageException
+	 * 		Exception thrown if the value set is outside the allowed range.
+	 */
+	public void setRefreshAhead(Long refreshAhead) throws StorageException {
+		if(refreshAhead >= 0)
+			this.refreshAhead = refreshAhead;
+		else
+			throw new StorageException("Parameter 'refreshAhead' must not be negative.");
+	}
+
+	/**
+	 * Retrieves whether the storage references with the same application key and cluster url share the balancer response.
+	 *
+	 * @return True if the balancer response is shared.
+	 */
+	public Boolean getShared() {
+		return shared;
+	}
+
+	/**
+	 * Assigns whether the storage references with the same application key and cluster url share the balancer response.
+	 *
+	 * @param shared
+	 * 		True to share the balancer response.
+	 */
+	public void setShared(Boolean shared) {
+		this.shared = shared;
+	}
+
+	/**
+	 * Creates a BalancerConfig instance with the default configuration: the storage server is kept for 5 minutes, refreshed 30 seconds before it expires, and not shared.
+	 */
+	public BalancerConfig() {
+		ttl = 300000L;
+		refreshAhead = 30000L;
+		shared = false;
+	}
+
+	/**
+	 * Creates a BalancerConfig instance with the given configuration.
+	 *
+	 * @param ttl
+	 * 		The time (milliseconds) the storage server is used before asking the balancer again.
+	 * @param refreshAhead
+	 * 		How long (milliseconds) before the expiration the storage server is refreshed in the background.
+	 * @param shared
+	 * 		True to share the balancer response between the storage references with the same application key and cluster url.
+	 * @throws StorageException
+	 * 		Exception thrown if any of the specified attributes are outside the allowed range.
+	 */
+	public BalancerConfig(Long ttl, Long refreshAhead, Boolean shared) throws StorageException {
+		setTtl(ttl);
+		setRefreshAhead(refreshAhead);
+		setShared(shared);
+	}
+}
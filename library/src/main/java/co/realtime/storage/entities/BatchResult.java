@@ -0,0 +1,65 @@
+package co.realtime.storage.entities;
+
+/**
+ * Outcome of a batch write, given to the completion callback once every item was written or failed.
+ *
+ * @author RTCS Development Team
+ *
+ */
+public class BatchResult {
+	Long succeeded;
+	Long failed;
+	Long duration;
+
+	/**
+	 * Creates a BatchResult instance.
+	 *
+	 * @param succeeded
+	 * 		The number of items written.
+	 * @param failed
+	 * 		The number of items that failed.
+	 * @param duration
+	 * 		The time (milliseconds) the batch took.
+	 */
+	public BatchResult(Long succeeded, Long failed, Long duration) {
+		this.succeeded = succeeded;
+		this.failed = failed;
+		this.duration = duration;
+	}
+
+	/**
+	 * Retrieves the number of items written.
+	 *
+	 * @return The number of items written.
+	 */
+	public Long getSucceeded() {
+		return succeeded;
+	}
+
+	/**
+	 * Retrieves the number of items that failed. Each of them was reported to the item error callback.
+	 *
+	 * @return The number of items that failed.
+	 */
+	public Long getFailed() {
+		return failed;
+	}
+
+	/**
+	 * Retrieves the time (milliseconds) the batch took, from its start to its last response.
+	 *
+	 * @return The duration in milliseconds.
+	 */
+	public Long getDuration() {
+		return duration;
+	}
+
+	/**
+	 * Retrieves the throughput of the batch, in items processed per second.
+	 *
+	 * @return The number of items, written or failed, per second.
+	 */
+	public Double getItemsPerSecond() {
+		return (succeeded + failed) * 1000.0 / Math.max(1, duration);
+	}
+}
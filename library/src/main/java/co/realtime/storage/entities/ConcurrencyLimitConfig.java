@@ -0,0 +1,115 @@
+package co.realtime.storage.entities;
+
+import co.realtime.storage.ext.StorageException;
+
+/**
+ * Adaptive concurrency limit configuration. The number of requests in flight to each table grows while the latency stays flat and is cut when the latency inflates or the storage throttles the requests.
+ * The requests above the limit wait in a queue.
+ *
+ * @author RTCS Development Team
+ *
+ */
+public class ConcurrencyLimitConfig {
+	Integer initialLimit;
+	Integer maxLimit;
+	Integer maxQueued;
+
+	/**
+	 * Retrieves the number of requests in flight allowed to a table before its limit is adapted.
+	 *
+	 * @return The initial limit.
+	 */
+	public Integer getInitialLimit() {
+		return initialLimit;
+	}
+
+	/**
+	 * Assigns the number of requests in flight allowed to a table before its limit is adapted. Ranges between 1 and 1024.
+	 *
+	 * @param initialLimit
+	 * 		The initial limit.
+	 * @throws StorageException
+	 * 		Exception thrown if the value set is outside the allowed range.
+	 */
+	public void setInitialLimit(Integer initialLimit) throws StorageException {
+		if(initialLimit > 0 && initialLimit < 1025)
+			this.initialLimit = initialLimit;
+		else
+			throw new StorageException("Parameter 'initialLimit' must be between 1 and 1024.");
+	}
+
+	/**
+	 * Retrieves the maximum number of requests in flight to a table.
+	 *
+	 * @return The maximum limit.
+	 */
+	public Integer getMaxLimit() {
+		return maxLimit;
+	}
+
+	/**
+	 * Assigns the maximum number of requests in flight to a table. Ranges between 1 and 1024.
+	 *
+	 * @param maxLimit
+	 * 		The maximum limit.
+	 * @throws StorageException
+	 * 		Exception thrown if the value set is outside the allowed range.
+	 */
+	public void setMaxLimit(Integer maxLimit) throws StorageException {
+		if(maxLimit > 0 && maxLimit < 1025)
+			this.maxLimit = maxLimit;
+		else
+			throw new StorageException("Parameter 'maxLimit' must be between 1 and 1024.");
+	}
+
+	/**
+	 * Retrieves the maximum number of requests waiting for a table. The requests beyond it are rejected.
+	 *
+	 * @return The maximum number of queued requests.
+	 */
+	public Integer getMaxQueued() {
+		return maxQueued;
+	}
+
+	/**
+	 * Assigns the maximum number of requests waiting for a table. The requests beyond it are rejected with the code 1013. Ranges between 0 and 100000.
+	 *
+	 * @param maxQueued
+	 * 		The maximum number of queued requests.
+	 * @throws StorageException
+	 * 		Exception thrown if the value set is outside the allowed range.
+	 */
+	public void setMaxQueued(Integer maxQueued) throws StorageException {
+		if(maxQueued >= 0 && maxQueued < 100001)
+			this.maxQueued = maxQueued;
+		else
+			throw new StorageException("Parameter 'maxQueued' must be between 0 and 100000.");
+	}
+
+	/**
+	 * Creates a ConcurrencyLimitConfig instance with the default configuration: 4 requests in flight per table at first, up to 64, and up to 1000 queued requests per table.
+	 */
+	public ConcurrencyLimitConfig() {
+		initialLimit = 4;
+		maxLimit = 64;
+		maxQueued = 1000;
+	}
+
+	/**
+	 * Creates a ConcurrencyLimitConfig instance with the given configuration.
+	 *
+	 * @param initialLimit
+	 * 		The number of requests in flight allowed to a table before its limit is adapted.
+	 * @param maxLimit
+	 * 		The maximum number of requests in flight to a table.
+	 * @param maxQueued
+	 * 		The maximum number of requests waiting for a table.
+	 * @throws StorageException
+	 * 		Exception thrown if any of the specified attributes are outside the allowed range.
+	 */
+	public ConcurrencyLimitConfig(Integer initialLimit, Integer maxLimit, Integer maxQueued) throws StorageException {
+		setInitialLimit(initialLimit);
+		setMaxLimit(maxLimit);
+		setMaxQueued(maxQueued);
+	}
+}
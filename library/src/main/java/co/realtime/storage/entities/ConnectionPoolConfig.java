@@ -0,0 +1,49 @@
+package co.realtime.storage.entities;
+
+/**
+ * Connection pool configuration. Storage requests keep their HTTP connections alive so that following requests to the same storage node skip the TCP and TLS handshakes.
+ * The idle connections are held by the keep-alive cache of HttpURLConnection, whose limits are the process wide system properties "http.maxConnections" and "http.keepAliveDuration".
+ * The storage never changes them, since they apply to every connection of the application and are only read when the cache is first used; set them at startup to change the limits.
+ *
+ * @author RTCS Development Team
+ *
+ */
+public class ConnectionPoolConfig {
+	Boolean keepAlive;
+
+	/**
+	 * Retrieves whether the storage requests keep their connections alive for the following requests.
+	 *
+	 * @return True if the connections are kept alive.
+	 */
+	public Boolean getKeepAlive() {
+		return keepAlive;
+	}
+
+	/**
+	 * Assigns whether the storage requests keep their connections alive for the following requests. False closes the connection after each request.
+	 *
+	 * @param keepAlive
+	 * 		True to keep the connections alive.
+	 */
+	public void setKeepAlive(Boolean keepAlive) {
+		this.keepAlive = keepAlive;
+	}
+
+	/**
+	 * Creates a ConnectionPoolConfig instance with the default configuration: the connections are kept alive.
+	 */
+	public ConnectionPoolConfig() {
+		keepAlive = true;
+	}
+
+	/**
+	 * Creates a ConnectionPoolConfig instance with the given configuration.
+	 *
+	 * @param keepAlive
+	 * 		True to keep the connections alive for the following requests.
+	 */
+	public ConnectionPoolConfig(Boolean keepAlive) {
+		setKeepAlive(keepAlive);
+	}
+}
@@ -0,0 +1,145 @@
+package co.realtime.storage.entities;
+
+import java.util.concurrent.Executor;
+
+import co.realtime.storage.ext.StorageException;
+
+/**
+ * Dispatch configuration. Defines the threads that run the listeners of the notifications. The notifications of a channel, that is of a table or of an item, always reach its listeners in the order they arrived.
+ *
+ * @author RTCS Development Team
+ *
+ */
+public class DispatchConfig {
+
+	/**
+	 * Where the listeners of the notifications run.
+	 */
+	public enum DispatchMode {
+		/**
+		 * On the thread that receives the notifications. A slow listener delays every notification.
+		 */
+		INLINE,
+		/**
+		 * On a single thread of the storage, one listener at a time.
+		 */
+		SERIAL,
+		/**
+		 * On a pool of threads of the storage. The channels are spread over the partitions, which run in parallel.
+		 */
+		PARTITIONED,
+		/**
+		 * On the given executor, for instance one that hands the listeners to the main thread. The channels are spread over the partitions, and a partition submits one task at a time. Without an executor the listeners run inline.
+		 */
+		EXECUTOR
+	}
+
+	DispatchMode mode;
+	Integer partitions;
+	Executor executor;
+
+	/**
+	 * Retrieves where the listeners run.
+	 *
+	 * @return The dispatch mode.
+	 */
+	public DispatchMode getMode() {
+		return mode;
+	}
+
+	/**
+	 * Assigns where the listeners run.
+	 *
+	 * @param mode
+	 * 		The dispatch mode.
+	 */
+	public void setMode(DispatchMode mode) {
+		this.mode = mode;
+	}
+
+	/**
+	 * Retrieves the number of partitions the channels are spread over.
+	 *
+	 * @return The number of partitions.
+	 */
+	public Integer getPartitions() {
+		return partitions;
+	}
+
+	/**
+	 * Assigns the number of partitions the channels are spread over, used by the PARTITIONED and EXECUTOR modes. Ranges between 1 and 64.
+	 *
+	 * @param partitions
+	 * 		The number of partitions.
+	 * @throws StorageException
+	 * 		Exception thrown if the value set is outside the allowed range.
+	 */
+	public void setPartitions(Integer partitions) throws StorageException {
+		if(partitions > 0 && partitions < 65)
+			this.partitions = partitions;
+		else
+			throw new StorageException("Parameter 'partitions' must be between 1 and 64.");
+	}
+
+	/**
+	 * Retrieves the executor of the EXECUTOR mode.
+	 *
+	 * @return The executor.
+	 */
+	public Executor getExecutor() {
+		return executor;
+	}
+
+	/**
+	 * Assigns the executor of the EXECUTOR mode.
+	 *
+	 * @param executor
+	 * 		The executor.
+	 */
+	public void setExecutor(Executor executor) {
+		this.executor = executor;
+	}
+
+	/**
+	 * Creates a DispatchConfig instance with the default configuration: the INLINE mode.
+	 */
+	public DispatchConfig() {
+		mode = DispatchMode.INLINE;
+		partitions = 4;
+	}
+
+	/**
+	 * Creates a DispatchConfig instance that runs the listeners on threads of the storage.
+	 *
+	 * @param mode
+	 * 		The dispatch mode, INLINE, SERIAL or PARTITIONED.
+	 * @param partitions
+	 * 		The number of partitions of the PARTITIONED mode.
+	 * @throws StorageException
+	 * 		Exception thrown if any of the specified attributes are outside the allowed range.
+	 */
+	public DispatchConfig(DispatchMode mode, Integer partitions) throws StorageException {
+		if(mode == DispatchMode.EXECUTOR)
+			throw new StorageException("Parameter 'mode' must be INLINE, SERIAL or PARTITIONED.");
+		setMode(mode);
+		setPartitions(partitions);
+	}
+
+	/**
+	 * Creates a DispatchConfig instance that runs the listeners on the given executor, in the EXECUTOR mode.
+	 *
+	 * @param executor
+	 * 		The executor.
+	 * @param partitions
+	 * 		The number of partitions the channels are spread over.
+	 * @throws StorageException
+	 * 		Exception thrown if any of the specified attributes are outside the allowed range.
+	 */
+	public DispatchConfig(Executor executor, Integer partitions) throws StorageException {
+		if(executor == null)
+			throw new StorageException("Parameter 'executor' can not be null.");
+		setMode(DispatchMode.EXECUTOR);
+		setExecutor(executor);
+		setPartitions(partitions);
+	}
+}
@@ -0,0 +1,112 @@
+package co.realtime.storage.entities;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import co.realtime.storage.ext.StorageException;
+
+/**
+ * Endpoint selection configuration. The storage requests are spread over a small set of storage servers, sending each request to the server with the lowest recent latency and error rate.
+ *
+ * @author RTCS Development Team
+ *
+ */
+public class EndpointSelectionConfig {
+	List<String> endpoints;
+	Integer maxEndpoints;
+	Long probeInterval;
+
+	/**
+	 * Retrieves the storage server urls to choose from. When empty, the servers are discovered from the balancer answers in cluster mode.
+	 *
+	 * @return The storage server urls.
+	 */
+	public List<String> getEndpoints() {
+		return endpoints;
+	}
+
+	/**
+	 * Assigns the storage server urls to choose from. When empty, the servers are discovered from the balancer answers in cluster mode.
+	 *
+	 * @param endpoints
+	 * 		The storage server urls.
+	 */
+	public void setEndpoints(List<String> endpoints) {
+		this.endpoints = endpoints == null ? new ArrayList<String>() : new ArrayList<String>(endpoints);
+	}
+
+	/**
+	 * Retrieves the maximum number of storage servers discovered from the balancer.
+	 *
+	 * @return The maximum number of storage servers.
+	 */
+	public Integer getMaxEndpoints() {
+		return maxEndpoints;
+	}
+
+	/**
+	 * Assigns the maximum number of storage servers discovered from the balancer. Ranges between 1 and 16.
+	 *
+	 * @param maxEndpoints
+	 * 		The maximum number of storage servers.
+	 * @throws StorageException
+	 * 		Exception thrown if the value set is outside the allowed range.
+	 */
+	public void setMaxEndpoints(Integer maxEndpoints) throws StorageException {
+		if(maxEndpoints > 0 && maxEndpoints < 17)
+			this.maxEndpoints = maxEndpoints;
+		else
+			throw new StorageException("Parameter 'maxEndpoints' must be between 1 and 16.");
+	}
+
+	/**
+	 * Retrieves the time (milliseconds) between two probes of the storage servers.
+	 *
+	 * @return The probe interval in milliseconds.
+	 */
+	public Long getProbeInterval() {
+		return probeInterval;
+	}
+
+	/**
+	 * Assigns the time (milliseconds) between two probes of the storage servers. Each probe measures the latency of every known server and, in cluster mode, asks the balancer for a server.
+	 *
+	 * @param probeInterval
+	 * 		The probe interval in milliseconds. Must be greater than 0.
+	 * @throws StorageException
+	 * 		Exception thrown if the value set is outside the allowed range.
+	 */
+	public void setProbeInterval(Long probeInterval) throws StorageException {
+		if(probeInterval > 0)
+			this.probeInterval = probeInterval;
+		else
+			throw new StorageException("Parameter 'probeInterval' must be greater than 0.");
+	}
+
+	/**
+	 * Creates an EndpointSelectionConfig instance with the default configuration: up to 3 storage servers discovered from the balancer, probed every 30 seconds.
+	 */
+	public EndpointSelectionConfig() {
+		endpoints = new ArrayList<String>();
+		maxEndpoints = 3;
+		probeInterval = 30000L;
+	}
+
+	/**
+	 * Creates an EndpointSelectionConfig instance with the given configuration.
+	 *
+	 * @param endpoints
+	 * 		The storage server urls to choose from, or an empty list to discover them from the balancer.
+	 * @param maxEndpoints
+	 * 		The maximum number of storage servers discovered from the balancer.
+	 * @param probeInterval
+	 * 		The time (milliseconds) between two probes of the storage servers.
+	 * @throws StorageException
+	 * 		Exception thrown if any of the specified attributes are outside the allowed range.
+	 */
+	public EndpointSelectionConfig(List<String> endpoints, Integer maxEndpoints, Long probeInterval) throws StorageException {
+		setEndpoints(endpoints);
+		setMaxEndpoints(maxEndpoints);
+		setProbeInterval(probeInterval);
+	}
+}
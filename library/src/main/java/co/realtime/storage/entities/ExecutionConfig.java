@@ -0,0 +1,132 @@
+package co.realtime.storage.entities;
+
+import co.realtime.storage.ext.StorageException;
+
+/**
+ * Execution configuration. Defines the worker pool that runs every storage request and the queue where requests wait when all workers are busy.
+ *
+ * @author RTCS Development Team
+ *
+ */
+public class ExecutionConfig {
+
+	/**
+	 * What happens to a request submitted while the request queue is full.
+	 */
+	public enum RejectionPolicy {
+		/**
+		 * The new request fails immediately and its error callback is called.
+		 */
+		ABORT,
+		/**
+		 * The new request runs on the thread that submitted it, network I/O included, which blocks that thread until the request completes.
+		 * Never use it when requests are submitted from the Android main thread: a request submitted from the main thread while the queue is full fails as with ABORT instead.
+		 */
+		CALLER_RUNS,
+		/**
+		 * The oldest queued request fails and the new request takes its place in the queue.
+		 */
+		DISCARD_OLDEST
+	}
+
+	Integer poolSize;
+	Integer maxQueueDepth;
+	RejectionPolicy rejectionPolicy;
+
+	/**
+	 * Retrieves the number of worker threads.
+	 *
+	 * @return The number of worker threads.
+	 */
+	public Integer getPoolSize() {
+		return poolSize;
+	}
+
+	/**
+	 * Assigns the number of worker threads. Ranges between 1 and 64.
+	 *
+	 * @param poolSize
+	 * 		The number of worker threads.
+	 * @throws StorageException
+	 * 		Exception thrown if the value set is outside the allowed range.
+	 */
+	public void setPoolSize(Integer poolSize) throws StorageException {
+		if(poolSize > 0 && poolSize < 65)
+			this.poolSize = poolSize;
+		else
+			throw new StorageException("Parameter 'poolSize' must be between 1 and 64.");
+	}
+
+	/**
+	 * Retrieves the maximum number of requests waiting for a worker.
+	 *
+	 * @return The maximum queue depth.
+	 */
+	public Integer getMaxQueueDepth() {
+		return maxQueueDepth;
+	}
+
+	/**
+	 * Assigns the maximum number of requests waiting for a worker. Once the queue is bounded, a burst of requests beyond the workers and the queue is handled by the rejection policy,
+	 * which with ABORT fails the requests with the error code 1013.
+	 *
+	 * @param maxQueueDepth
+	 * 		The maximum queue depth. Must be greater than 0.
+	 * @throws StorageException
+	 * 		Exception thrown if the value set is outside the allowed range.
+	 */
+	public void setMaxQueueDepth(Integer maxQueueDepth) throws StorageException {
+		if(maxQueueDepth > 0)
+			this.maxQueueDepth = maxQueueDepth;
+		else
+			throw new StorageException("Parameter 'maxQueueDepth' must be greater than 0.");
+	}
+
+	/**
+	 * Retrieves the policy applied when the request queue is full.
+	 *
+	 * @return The rejection policy.
+	 */
+	public RejectionPolicy getRejectionPolicy() {
+		return rejectionPolicy;
+	}
+
+	/**
+	 * Assigns the policy applied when the request queue is full.
+	 *
+	 * @param rejectionPolicy
+	 * 		The rejection policy.
+	 */
+	public void setRejectionPolicy(RejectionPolicy rejectionPolicy) {
+		this.rejectionPolicy = rejectionPolicy;
+	}
+
+	/**
+	 * Creates an ExecutionConfig instance with the default configuration: 4 worker threads and an unbounded queue, so no request is ever rejected.
+	 * Unlike the earlier versions, which ran each request on a thread of its own, at most 4 requests run at the same time and the others wait for a worker.
+	 * The ABORT policy only applies once the queue is bounded with setMaxQueueDepth.
+	 */
+	public ExecutionConfig() {
+		poolSize = 4;
+		maxQueueDepth = Integer.MAX_VALUE;
+		rejectionPolicy = RejectionPolicy.ABORT;
+	}
+
+	/**
+	 * Creates an ExecutionConfig instance with the given configuration.
+	 *
+	 * @param poolSize
+	 * 		The number of worker threads.
+	 * @param maxQueueDepth
+	 * 		The maximum number of requests waiting for a worker.
+	 * @param rejectionPolicy
+	 * 		The policy applied when the request queue is full.
+	 * @throws StorageException
+	 * 		Exception thrown if any of the specified attributes are outside the allowed range.
+	 */
+	public ExecutionConfig(Integer poolSize, Integer maxQueueDepth, RejectionPolicy rejectionPolicy) throws StorageException {
+		setPoolSize(poolSize);
+		setMaxQueueDepth(maxQueueDepth);
+		setRejectionPolicy(rejectionPolicy);
+	}
+}
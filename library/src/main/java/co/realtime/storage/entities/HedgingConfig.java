@@ -0,0 +1,86 @@
+package co.realtime.storage.entities;
+
+import co.realtime.storage.ext.StorageException;
+
+/**
+ * Request hedging configuration. When a read takes longer than most recent reads of the same kind, a duplicate request is sent and the first response is used.
+ * Only getItem, queryItems, listItems and describeTable requests are hedged.
+ *
+ * @author RTCS Development Team
+ *
+ */
+public class HedgingConfig {
+	Integer percentile;
+	Integer maxExtraLoad;
+
+	/**
+	 * Retrieves the latency percentile after which a duplicate request is sent.
+	 *
+	 * @return The latency percentile.
+	 */
+	public Integer getPercentile() {
+		return percentile;
+	}
+
+	/**
+	 * Assigns the latency percentile after which a duplicate request is sent. Ranges between 50 and 99.
+	 *
+	 * @param percentile
+	 * 		The latency percentile.
+	 * @throws StorageException
+	 * 		Exception thrown if the value set is outside the allowed range.
+	 */
+	public void setPercentile(Integer percentile) throws StorageException {
+		if(percentile >= 50 && percentile < 100)
+			this.percentile = percentile;
+		else
+			throw new StorageException("Parameter 'percentile' must be between 50 and 99.");
+	}
+
+	/**
+	 * Retrieves the maximum extra load, in percentage of the requests, that the duplicate requests may add.
+	 *
+	 * @return The maximum extra load percentage.
+	 */
+	public Integer getMaxExtraLoad() {
+		return maxExtraLoad;
+	}
+
+	/**
+	 * Assigns the maximum extra load, in percentage of the requests, that the duplicate requests may add. Ranges between 1 and 100.
+	 *
+	 * @param maxExtraLoad
+	 * 		The maximum extra load percentage.
+	 * @throws StorageException
+	 * 		Exception thrown if the value set is outside the allowed range.
+	 */
+	public void setMaxExtraLoad(Integer maxExtraLoad) throws StorageException {
+		if(maxExtraLoad > 0 && maxExtraLoad < 101)
+			this.maxExtraLoad = maxExtraLoad;
+		else
+			throw new StorageException("Parameter 'maxExtraLoad' must be between 1 and 100.");
+	}
+
+	/**
+	 * Creates a HedgingConfig instance with the default configuration: a duplicate request is sent after the 95th latency percentile, adding at most 5% of extra requests.
+	 */
+	public HedgingConfig() {
+		percentile = 95;
+		maxExtraLoad = 5;
+	}
+
+	/**
+	 * Creates a HedgingConfig instance with the given configuration.
+	 *
+	 * @param percentile
+	 * 		The latency percentile after which a duplicate request is sent.
+	 * @param maxExtraLoad
+	 * 		The maximum extra load, in percentage of the requests, that the duplicate requests may add.
+	 * @throws StorageException
+	 * 		Exception thrown if any of the specified attributes are outside the allowed range.
+	 */
+	public HedgingConfig(Integer percentile, Integer maxExtraLoad) throws StorageException {
+		setPercentile(percentile);
+		setMaxExtraLoad(maxExtraLoad);
+	}
+}
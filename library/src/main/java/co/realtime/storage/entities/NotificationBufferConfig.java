@@ -0,0 +1,95 @@
+package co.realtime.storage.entities;
+
+import co.realtime.storage.ext.StorageException;
+
+/**
+ * Notification buffer configuration. The notifications of a table whose metadata is not loaded yet wait in a queue of the table while a single request fetches the metadata, and are delivered in the order they arrived once it is loaded.
+ *
+ * @author RTCS Development Team
+ *
+ */
+public class NotificationBufferConfig {
+
+	/**
+	 * What happens to a notification received while the queue of its table is full.
+	 */
+	public enum OverflowPolicy {
+		/**
+		 * The new notification is dropped.
+		 */
+		DROP_NEWEST,
+		/**
+		 * The oldest queued notification is dropped and the new notification takes its place in the queue.
+		 */
+		DROP_OLDEST
+	}
+
+	Integer maxPending;
+	OverflowPolicy overflowPolicy;
+
+	/**
+	 * Retrieves the maximum number of notifications waiting for the metadata of a table.
+	 *
+	 * @return The maximum number of pending notifications.
+	 */
+	public Integer getMaxPending() {
+		return maxPending;
+	}
+
+	/**
+	 * Assigns the maximum number of notifications waiting for the metadata of a table. Ranges between 1 and 100000.
+	 *
+	 * @param maxPending
+	 * 		The maximum number of pending notifications.
+	 * @throws StorageException
+	 * 		Exception thrown if the value set is outside the allowed range.
+	 */
+	public void setMaxPending(Integer maxPending) throws StorageException {
+		if(maxPending > 0 && maxPending < 100001)
+			this.maxPending = maxPending;
+		else
+			throw new StorageException("Parameter 'maxPending' must be between 1 and 100000.");
+	}
+
+	/**
+	 * Retrieves the policy applied when the queue of a table is full.
+	 *
+	 * @return The overflow policy.
+	 */
+	public OverflowPolicy getOverflowPolicy() {
+		return overflowPolicy;
+	}
+
+	/**
+	 * Assigns the policy applied when the queue of a table is full.
+	 *
+	 * @param overflowPolicy
+	 * 		The overflow policy.
+	 */
+	public void setOverflowPolicy(OverflowPolicy overflowPolicy) {
+		this.overflowPolicy = overflowPolicy;
+	}
+
+	/**
+	 * Creates a NotificationBufferConfig instance with the default configuration: up to 1000 pending notifications per table and the DROP_OLDEST policy.
+	 */
+	public NotificationBufferConfig() {
+		maxPending = 1000;
+		overflowPolicy = OverflowPolicy.DROP_OLDEST;
+	}
+
+	/**
+	 * Creates a NotificationBufferConfig instance with the given configuration.
+	 *
+	 * @param maxPending
+	 * 		The maximum number of notifications waiting for the metadata of a table.
+	 * @param overflowPolicy
+	 * 		The policy applied when the queue of a table is full.
+	 * @throws StorageException
+	 * 		Exception thrown if any of the specified attributes are outside the allowed range.
+	 */
+	public NotificationBufferConfig(Integer maxPending, OverflowPolicy overflowPolicy) throws StorageException {
+		setMaxPending(maxPending);
+		setOverflowPolicy(overflowPolicy);
+	}
+}
@@ -0,0 +1,115 @@
+package co.realtime.storage.entities;
+
+import co.realtime.storage.ext.StorageException;
+
+/**
+ * Client side rate limit configuration. The requests to each table are paced to the read and write throughput provisioned for it, so they wait in the client instead of being throttled by the storage.
+ * A read or a write consumes one unit of throughput for each started block of the unit size, according to the estimated size of its items.
+ *
+ * @author RTCS Development Team
+ *
+ */
+public class RateLimitConfig {
+	Integer readUnitSize;
+	Integer writeUnitSize;
+	Integer burst;
+
+	/**
+	 * Retrieves the size (bytes) of item data read with one unit of read throughput.
+	 *
+	 * @return The read unit size in bytes.
+	 */
+	public Integer getReadUnitSize() {
+		return readUnitSize;
+	}
+
+	/**
+	 * Assigns the size (bytes) of item data read with one unit of read throughput.
+	 *
+	 * @param readUnitSize
+	 * 		The read unit size in bytes. Must be greater than 0.
+	 * @throws StorageException
+	 * 		Exception thrown if the value set is outside the allowed range.
+	 */
+	public void setReadUnitSize(Integer readUnitSize) throws StorageException {
+		if(readUnitSize > 0)
+			this.readUnitSize = readUnitSize;
+		else
+			throw new StorageException("Parameter 'readUnitSize' must be greater than 0.");
+	}
+
+	/**
+	 * Retrieves the size (bytes) of item data written with one unit of write throughput.
+	 *
+	 * @return The write unit size in bytes.
+	 */
+	public Integer getWriteUnitSize() {
+		return writeUnitSize;
+	}
+
+	/**
+	 * Assigns the size (bytes) of item data written with one unit of write throughput.
+	 *
+	 * @param writeUnitSize
+	 * 		The write unit size in bytes. Must be greater than 0.
+	 * @throws StorageException
+	 * 		Exception thrown if the value set is outside the allowed range.
+	 */
+	public void setWriteUnitSize(Integer writeUnitSize) throws StorageException {
+		if(writeUnitSize > 0)
+			this.writeUnitSize = writeUnitSize;
+		else
+			throw new StorageException("Parameter 'writeUnitSize' must be greater than 0.");
+	}
+
+	/**
+	 * Retrieves the number of seconds of unused throughput that can be spent at once.
+	 *
+	 * @return The burst in seconds.
+	 */
+	public Integer getBurst() {
+		return burst;
+	}
+
+	/**
+	 * Assigns the number of seconds of unused throughput that can be spent at once. Ranges between 1 and 60.
+	 *
+	 * @param burst
+	 * 		The burst in seconds.
+	 * @throws StorageException
+	 * 		Exception thrown if the value set is outside the allowed range.
+	 */
+	public void setBurst(Integer burst) throws StorageException {
+		if(burst > 0 && burst < 61)
+			this.burst = burst;
+		else
+			throw new StorageException("Parameter 'burst' must be between 1 and 60.");
+	}
+
+	/**
+	 * Creates a RateLimitConfig instance with the default configuration: read units of 4 KB, write units of 1 KB and a burst of 1 second of throughput.
+	 */
+	public RateLimitConfig() {
+		readUnitSize = 4096;
+		writeUnitSize = 1024;
+		burst = 1;
+	}
+
+	/**
+	 * Creates a RateLimitConfig instance with the given configuration.
+	 *
+	 * @param readUnitSize
+	 * 		The size (bytes) of item data read with one unit of read throughput.
+	 * @param writeUnitSize
+	 * 		The size (bytes) of item data written with one unit of write throughput.
+	 * @param burst
+	 * 		The number of seconds of unused throughput that can be spent at once.
+	 * @throws StorageException
+	 * 		Exception thrown if any of the specified attributes are outside the allowed range.
+	 */
+	public RateLimitConfig(Integer readUnitSize, Integer writeUnitSize, Integer burst) throws StorageException {
+		setReadUnitSize(readUnitSize);
+		setWriteUnitSize(writeUnitSize);
+		setBurst(burst);
+	}
+}
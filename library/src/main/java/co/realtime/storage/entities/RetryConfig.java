@@ -0,0 +1,173 @@
+package co.realtime.storage.entities;
+
+import co.realtime.storage.ext.StorageException;
+
+/**
+ * Retry configuration of the storage requests. A failed request is sent again after an exponential backoff with random jitter, and a storage server that keeps failing is skipped for a while.
+ * Requests with side effects, such as incr or createTable, are only sent again when the failed attempt could not reach the server.
+ *
+ * @author RTCS Development Team
+ *
+ */
+public class RetryConfig {
+	Integer maxAttempts;
+	Long baseDelay;
+	Long maxDelay;
+	Integer failureThreshold;
+	Long openDuration;
+
+	/**
+	 * Retrieves the maximum number of times a request is sent, the first attempt included.
+	 *
+	 * @return The maximum number of attempts.
+	 */
+	public Integer getMaxAttempts() {
+		return maxAttempts;
+	}
+
+	/**
+	 * Assigns the maximum number of times a request is sent, the first attempt included. Ranges between 1 and 10, 1 disables the retries.
+	 *
+	 * @param maxAttempts
+	 * 		The maximum number of attempts.
+	 * @throws StorageException
+	 * 		Exception thrown if the value set is outside the allowed range.
+	 */
+	public void setMaxAttempts(Integer maxAttempts) throws StorageException {
+		if(maxAttempts > 0 && maxAttempts < 11)
+			this.maxAttempts = maxAttempts;
+		else
+			throw new StorageException("Parameter 'maxAttempts' must be between 1 and 10.");
+	}
+
+	/**
+	 * Retrieves the backoff (milliseconds) before the first retry. It doubles with each following retry.
+	 *
+	 * @return The base delay in milliseconds.
+	 */
+	public Long getBaseDelay() {
+		return baseDelay;
+	}
+
+	/**
+	 * Assigns the backoff (milliseconds) before the first retry. It doubles with each following retry, and the actual delay is drawn at random below it.
+	 *
+	 * @param baseDelay
+	 * 		The base delay in milliseconds. Must be greater than 0.
+	 * @throws StorageException
+	 * 		Exception thrown if the value set is outside the allowed range.
+	 */
+	public void setBaseDelay(Long baseDelay) throws StorageException {
+		if(baseDelay > 0)
+			this.baseDelay = baseDelay;
+		else
+			throw new StorageException("Parameter 'baseDelay' must be greater than 0.");
+	}
+
+	/**
+	 * Retrieves the maximum backoff (milliseconds) between two attempts.
+	 *
+	 * @return The maximum delay in milliseconds.
+	 */
+	public Long getMaxDelay() {
+		return maxDelay;
+	}
+
+	/**
+	 * Assigns the maximum backoff (milliseconds) between two attempts.
+	 *
+	 * @param maxDelay
+	 * 		The maximum delay in milliseconds. Must be greater than 0.
+	 * @throws StorageException
+	 * 		Exception thrown if the value set is outside the allowed range.
+	 */
+	public void setMaxDelay(Long maxDelay) throws StorageException {
+		if(maxDelay > 0)
+			this.maxDelay = maxDelay;
+		else
+			throw new StorageException("Parameter 'maxDelay' must be greater than 0.");
+	}
+
+	/**
+	 * Retrieves the number of consecutive failures after which the requests to a storage server fail fast.
+	 *
+	 * @return The failure threshold.
+	 */
+	public Integer getFailureThreshold() {
+		return failureThreshold;
+	}
+
+	/**
+	 * Assigns the number of consecutive failures after which the requests to a storage server fail fast. Ranges between 1 and 100.
+	 *
+	 * @param failureThreshold
+	 * 		The failure threshold.
+	 * @throws StorageException
+	 * 		Exception thrown if the value set is outside the allowed range.
+	 */
+	public void setFailureThreshold(Integer failureThreshold) throws StorageException {
+		if(failureThreshold > 0 && failureThreshold < 101)
+			this.failureThreshold = failureThreshold;
+		else
+			throw new StorageException("Parameter 'failureThreshold' must be between 1 and 100.");
+	}
+
+	/**
+	 * Retrieves the time (milliseconds) the requests to a failing storage server fail fast before a single request probes it again.
+	 *
+	 * @return The open duration in milliseconds.
+	 */
+	public Long getOpenDuration() {
+		return openDuration;
+	}
+
+	/**
+	 * Assigns the time (milliseconds) the requests to a failing storage server fail fast before a single request probes it again.
+	 *
+	 * @param openDuration
+	 * 		The open duration in milliseconds. Must be greater than 0.
+	 * @throws StorageException
+	 * 		Exception thrown if the value set is outside the allowed range.
+	 */
+	public void setOpenDuration(Long openDuration) throws StorageException {
+		if(openDuration > 0)
+			this.openDuration = openDuration;
+		else
+			throw new StorageException("Parameter 'openDuration' must be greater than 0.");
+	}
+
+	/**
+	 * Creates a RetryConfig instance with the default configuration: 3 attempts with a backoff from 100 milliseconds up to 5 seconds, and a server skipped for 10 seconds after 5 consecutive failures.
+	 */
+	public RetryConfig() {
+		maxAttempts = 3;
+		baseDelay = 100L;
+		maxDelay = 5000L;
+		failureThreshold = 5;
+		openDuration = 10000L;
+	}
+
+	/**
+	 * Creates a RetryConfig instance with the given configuration.
+	 *
+	 * @param maxAttempts
+	 * 		The maximum number of times a request is sent, the first attempt included.
+	 * @param baseDelay
+	 * 		The backoff (milliseconds) before the first retry.
+	 * @param maxDelay
+	 * 		The maximum backoff (milliseconds) between two attempts.
+	 * @param failureThreshold
+	 * 		The number of consecutive failures after which the requests to a storage server fail fast.
+	 * @param openDuration
+	 * 		The time (milliseconds) the requests to a failing storage server fail fast before a single request probes it again.
+	 * @throws StorageException
+	 * 		Exception thrown if any of the specified attributes are outside the allowed range.
+	 */
+	public RetryConfig(Integer maxAttempts, Long baseDelay, Long maxDelay, Integer failureThreshold, Long openDuration) throws StorageException {
+		setMaxAttempts(maxAttempts);
+		setBaseDelay(baseDelay);
+		setMaxDelay(maxDelay);
+		setFailureThreshold(failureThreshold);
+		setOpenDuration(openDuration);
+	}
+}
@@ -0,0 +1,114 @@
+package co.realtime.storage.entities;
+
+import co.realtime.storage.ext.StorageException;
+
+/**
+ * Timeout configuration of the storage requests. The connect and read timeouts bound every HTTP request, the deadline bounds a whole storage call, including all the pages of a table scan.
+ *
+ * @author RTCS Development Team
+ *
+ */
+public class TimeoutConfig {
+	Integer connectTimeout;
+	Integer readTimeout;
+	Long deadline;
+
+	/**
+	 * Retrieves the time (milliseconds) allowed to open a connection to a storage node.
+	 *
+	 * @return The connect timeout in milliseconds.
+	 */
+	public Integer getConnectTimeout() {
+		return connectTimeout;
+	}
+
+	/**
+	 * Assigns the time (milliseconds) allowed to open a connection to a storage node.
+	 *
+	 * @param connectTimeout
+	 * 		The connect timeout in milliseconds. Must be greater than 0.
+	 * @throws StorageException
+	 * 		Exception thrown if the value set is outside the allowed range.
+	 */
+	public void setConnectTimeout(Integer connectTimeout) throws StorageException {
+		if(connectTimeout > 0)
+			this.connectTimeout = connectTimeout;
+		else
+			throw new StorageException("Parameter 'connectTimeout' must be greater than 0.");
+	}
+
+	/**
+	 * Retrieves the time (milliseconds) a request waits for data from the storage node.
+	 *
+	 * @return The read timeout in milliseconds.
+	 */
+	public Integer getReadTimeout() {
+		return readTimeout;
+	}
+
+	/**
+	 * Assigns the time (milliseconds) a request waits for data from the storage node.
+	 *
+	 * @param readTimeout
+	 * 		The read timeout in milliseconds. Must be greater than 0.
+	 * @throws StorageException
+	 * 		Exception thrown if the value set is outside the allowed range.
+	 */
+	public void setReadTimeout(Integer readTimeout) throws StorageException {
+		if(readTimeout > 0)
+			this.readTimeout = readTimeout;
+		else
+			throw new StorageException("Parameter 'readTimeout' must be greater than 0.");
+	}
+
+	/**
+	 * Retrieves the default time (milliseconds) a storage call may take, 0 when the calls have no deadline.
+	 *
+	 * @return The default deadline in milliseconds.
+	 */
+	public Long getDeadline() {
+		return deadline;
+	}
+
+	/**
+	 * Assigns the default time (milliseconds) a storage call may take. A call that passes a RequestHandle with its own deadline uses that one instead.
+	 *
+	 * @param deadline
+	 * 		The default deadline in milliseconds, 0 for no deadline.
+	 * @throws StorageException
+	 * 		Exception thrown if the value set is outside the allowed range.
+	 */
+	public void setDeadline(Long deadline) throws StorageException {
+		if(deadline >= 0)
+			this.deadline = deadline;
+		else
+			throw new StorageException("Parameter 'deadline' must be greater than or equal to 0.");
+	}
+
+	/**
+	 * Creates a TimeoutConfig instance with the default configuration: 10 seconds to connect, 30 seconds to wait for data and no deadline.
+	 */
+	public TimeoutConfig() {
+		connectTimeout = 10000;
+		readTimeout = 30000;
+		deadline = 0L;
+	}
+
+	/**
+	 * Creates a TimeoutConfig instance with the given configuration.
+	 *
+	 * @param connectTimeout
+	 * 		The time (milliseconds) allowed to open a connection to a storage node.
+	 * @param readTimeout
+	 * 		The time (milliseconds) a request waits for data from the storage node.
+	 * @param deadline
+	 * 		The default time (milliseconds) a storage call may take, 0 for no deadline.
+	 * @throws StorageException
+	 * 		Exception thrown if any of the specified attributes are outside the allowed range.
+	 */
+	public TimeoutConfig(Integer connectTimeout, Integer readTimeout, Long deadline) throws StorageException {
+		setConnectTimeout(connectTimeout);
+		setReadTimeout(readTimeout);
+		setDeadline(deadline);
+	}
+}
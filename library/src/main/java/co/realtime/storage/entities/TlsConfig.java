@@ -0,0 +1,85 @@
+package co.realtime.storage.entities;
+
+import co.realtime.storage.ext.StorageException;
+
+/**
+ * TLS configuration. Secure storage requests resume previously negotiated TLS sessions, skipping the full handshake, while the session is kept in the cache.
+ *
+ * @author RTCS Development Team
+ *
+ */
+public class TlsConfig {
+	Integer sessionCacheSize;
+	Integer sessionTimeout;
+
+	/**
+	 * Retrieves the maximum number of TLS sessions kept for resumption.
+	 *
+	 * @return The session cache size.
+	 */
+	public Integer getSessionCacheSize() {
+		return sessionCacheSize;
+	}
+
+	/**
+	 * Assigns the maximum number of TLS sessions kept for resumption. 0 means no limit.
+	 *
+	 * @param sessionCacheSize
+	 * 		The session cache size.
+	 * @throws StorageException
+	 * 		Exception thrown if the value set is outside the allowed range.
+	 */
+	public void setSessionCacheSize(Integer sessionCacheSize) throws StorageException {
+		if(sessionCacheSize >= 0)
+			this.sessionCacheSize = sessionCacheSize;
+		else
+			throw new StorageException("Parameter 'sessionCacheSize' must not be negative.");
+	}
+
+	/**
+	 * Retrieves the time (seconds) a TLS session can be resumed after being negotiated.
+	 *
+	 * @return The session timeout in seconds.
+	 */
+	public Integer getSessionTimeout() {
+		return sessionTimeout;
+	}
+
+	/**
+	 * Assigns the time (seconds) a TLS session can be resumed after being negotiated. 0 means no limit.
+	 *
+	 * @param sessionTimeout
+	 * 		The session timeout in seconds.
+	 * @throws StorageException
+	 * 		Exception thrown if the value set is outside the allowed range.
+	 */
+	public void setSessionTimeout(Integer sessionTimeout) throws StorageException {
+		if(sessionTimeout >= 0)
+			this.sessionTimeout = sessionTimeout;
+		else
+			throw new StorageException("Parameter 'sessionTimeout' must not be negative.");
+	}
+
+	/**
+	 * Creates a TlsConfig instance with the default configuration: 64 sessions, resumable for 1 hour.
+	 */
+	public TlsConfig() {
+		sessionCacheSize = 64;
+		sessionTimeout = 3600;
+	}
+
+	/**
+	 * Creates a TlsConfig instance with the given configuration.
+	 *
+	 * @param sessionCacheSize
+	 * 		The maximum number of TLS sessions kept for resumption.
+	 * @param sessionTimeout
+	 * 		The time (seconds) a TLS session can be resumed after being negotiated.
+	 * @throws StorageException
+	 * 		Exception thrown if any of the specified attributes are outside the allowed range.
+	 */
+	public TlsConfig(Integer sessionCacheSize, Integer sessionTimeout) throws StorageException {
+		setSessionCacheSize(sessionCacheSize);
+		setSessionTimeout(sessionTimeout);
+	}
+}
@@ -0,0 +1,7 @@
+package co.realtime.storage.ext;
+
+import co.realtime.storage.entities.BatchResult;
+
+public interface OnBatchCompleted {
+	public void run(BatchResult result);
+}
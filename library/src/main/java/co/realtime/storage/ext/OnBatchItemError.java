@@ -0,0 +1,9 @@
+package co.realtime.storage.ext;
+
+import java.util.LinkedHashMap;
+
+import co.realtime.storage.ItemAttribute;
+
+public interface OnBatchItemError {
+	public void run(LinkedHashMap<String, ItemAttribute> item, Integer code, String errorMessage);
+}
@@ -0,0 +1,10 @@
+package co.realtime.storage.ext;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+
+import co.realtime.storage.ItemAttribute;
+
+public interface OnMissingKeys {
+	public void run(List<LinkedHashMap<String, ItemAttribute>> keys);
+}
@@ -0,0 +1,53 @@
+package co.realtime.storage;
+
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+
+import org.junit.Test;
+
+import co.realtime.storage.entities.BalancerConfig;
+
+public class BalancerResolverTest {
+	private static final String CLUSTER = "http://balancer.test/server/1.0";
+
+	@Test
+	public void sharedResolverLivesWhileAContextUsesIt() throws Exception {
+		BalancerResolver first = BalancerResolver.shared(CLUSTER, "app", new BalancerConfig());
+		BalancerResolver second = BalancerResolver.shared(CLUSTER, "app", new BalancerConfig());
+		assertSame(first, second);
+
+		first.release();
+		BalancerResolver third = BalancerResolver.shared(CLUSTER, "app", new BalancerConfig());
+		assertSame(first, third);
+
+		second.release();
+		third.release();
+		BalancerResolver fresh = BalancerResolver.shared(CLUSTER, "app", new BalancerConfig());
+		assertNotSame(first, fresh);
+		fresh.release();
+	}
+
+	@Test
+	public void contextsReleaseTheSharedResolverOnCloseAndOnReconfiguration() throws Exception {
+		BalancerConfig shared = new BalancerConfig();
+		shared.setShared(true);
+		StorageContext one = new StorageContext("app", null, "token", true, false, CLUSTER, null);
+		StorageContext two = new StorageContext("app", null, "token", true, false, CLUSTER, null);
+		one.setBalancerConfig(shared);
+		two.setBalancerConfig(shared);
+		BalancerResolver resolver = one.balancer;
+		assertSame(resolver, two.balancer);
+
+		//a config without the shared flag set is not shared
+		BalancerConfig unset = new BalancerConfig();
+		unset.setShared(null);
+		one.setBalancerConfig(unset);
+		assertNotSame(resolver, one.balancer);
+		two.close();
+
+		BalancerResolver fresh = BalancerResolver.shared(CLUSTER, "app", shared);
+		assertNotSame(resolver, fresh);
+		fresh.release();
+		one.close();
+	}
+}
@@ -0,0 +1,131 @@
+package co.realtime.storage;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.fasterxml.jackson.databind.JsonNode;
+
+import co.realtime.storage.StorageRef.StorageDataType;
+import co.realtime.storage.entities.BatchResult;
+import co.realtime.storage.ext.OnBatchCompleted;
+import co.realtime.storage.ext.OnBatchItemError;
+
+//pushAll against a local stub server, with executors that reject the requests.
+public class BatchWriterTest {
+	private StubStorage storage;
+	private TableRef table;
+
+	@Before
+	public void setUp() throws Exception {
+		storage = new StubStorage(new StubStorage.Responder(){
+			@Override
+			public String respond(String operation, JsonNode body) {
+				return "{\"data\":" + body.get("item") + "}";
+			}
+		});
+		table = storage.table("items", StorageDataType.NUMBER);
+	}
+
+	@After
+	public void tearDown() {
+		storage.stop();
+	}
+
+	@Test
+	public void everyItemIsWrittenOnce() throws Exception {
+		Batch batch = push(items(50), 4);
+		assertEquals(50L, (long) batch.result.get().getSucceeded());
+		assertEquals(0L, (long) batch.result.get().getFailed());
+		assertEquals(50, storage.requests.size());
+	}
+
+	@Test
+	public void itemsRejectedByABusyQueueAreSentAgain() throws Exception {
+		final AtomicInteger rejections = new AtomicInteger(5);
+		final ExecutorService workers = Executors.newFixedThreadPool(2);
+		storage.context.setExecutor(new Executor(){
+			@Override
+			public void execute(Runnable command) {
+				if(rejections.getAndDecrement() > 0)
+					throw new RejectedExecutionException();
+				workers.execute(command);
+			}
+		});
+		Batch batch;
+		try {
+			batch = push(items(10), 2);
+		} finally {
+			workers.shutdown();
+		}
+		assertEquals(10L, (long) batch.result.get().getSucceeded());
+		assertTrue(batch.errors.isEmpty());
+		assertEquals(10, storage.requests.size());
+	}
+
+	@Test
+	public void queueThatStaysFullFailsTheItemsAndCompletes() throws Exception {
+		storage.context.setExecutor(new Executor(){
+			@Override
+			public void execute(Runnable command) {
+				throw new RejectedExecutionException();
+			}
+		});
+		Batch batch = push(items(3), 2);
+		assertEquals(0L, (long) batch.result.get().getSucceeded());
+		assertEquals(3L, (long) batch.result.get().getFailed());
+		assertEquals(Collections.nCopies(3, 1013), batch.errors);
+		assertEquals(0, storage.requests.size());
+	}
+
+	private Batch push(List<LinkedHashMap<String, ItemAttribute>> items, int parallelism) throws InterruptedException {
+		final Batch batch = new Batch();
+		table.pushAll(items, parallelism, new OnBatchItemError(){
+			@Override
+			public void run(LinkedHashMap<String, ItemAttribute> item, Integer code, String errorMessage) {
+				batch.errors.add(code);
+			}
+		}, new OnBatchCompleted(){
+			@Override
+			public void run(BatchResult result) {
+				batch.result.set(result);
+				batch.done.countDown();
+			}
+		}, null);
+		assertTrue(batch.done.await(20, TimeUnit.SECONDS));
+		return batch;
+	}
+
+	private static List<LinkedHashMap<String, ItemAttribute>> items(int count){
+		ArrayList<LinkedHashMap<String, ItemAttribute>> items = new ArrayList<LinkedHashMap<String, ItemAttribute>>();
+		for(int i = 0; i < count; i++){
+			LinkedHashMap<String, ItemAttribute> item = new LinkedHashMap<String, ItemAttribute>();
+			item.put("id", new ItemAttribute(i));
+			item.put("name", new ItemAttribute("item " + i));
+			items.add(item);
+		}
+		return items;
+	}
+
+	private static class Batch {
+		final List<Integer> errors = Collections.synchronizedList(new ArrayList<Integer>());
+		final AtomicReference<BatchResult> result = new AtomicReference<BatchResult>();
+		final CountDownLatch done = new CountDownLatch(1);
+	}
+}
@@ -0,0 +1,54 @@
+package co.realtime.storage;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+
+//A minimal measurement harness for the benchmarks of the test sources, which run as main classes and not
+//as unit tests. Each case is warmed up until the JIT had time to compile it, then timed over a few rounds,
+//and the best round is reported, with the bytes it allocated on HotSpot based virtual machines.
+class BenchmarkHarness {
+	private static final long WARMUP_NANOS = 2000000000L;
+	private static final int ROUNDS = 10;
+
+	interface Case {
+		//runs the measured operation ops times, the result keeps the work from being optimized away
+		long run(int ops);
+	}
+
+	private static volatile long sink;
+
+	//the best time per operation in nanoseconds; the bytes allocated per operation are reported too when the virtual machine tells them
+	static double measure(String name, int ops, Case c){
+		return measure(name, ops, ROUNDS, c);
+	}
+
+	static double measure(String name, int ops, int rounds, Case c){
+		long warmup = System.nanoTime();
+		while(System.nanoTime() - warmup < WARMUP_NANOS)
+			sink += c.run(ops);
+		long best = Long.MAX_VALUE;
+		long allocated = Long.MAX_VALUE;
+		for(int i = 0; i < rounds; i++){
+			long bytes = allocatedBytes();
+			long start = System.nanoTime();
+			sink += c.run(ops);
+			best = Math.min(best, System.nanoTime() - start);
+			if(bytes >= 0)
+				allocated = Math.min(allocated, allocatedBytes() - bytes);
+		}
+		double perOp = (double) best / ops;
+		if(allocated == Long.MAX_VALUE)
+			System.out.println(String.format("%-48s %12.1f ns/op", name, perOp));
+		else
+			System.out.println(String.format("%-48s %12.1f ns/op %10.1f B/op", name, perOp, (double) allocated / ops));
+		return perOp;
+	}
+
+	//bytes allocated so far by the current thread, -1 when the virtual machine does not count them
+	private static long allocatedBytes(){
+		ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+		if(threads instanceof com.sun.management.ThreadMXBean)
+			return ((com.sun.management.ThreadMXBean) threads).getThreadAllocatedBytes(Thread.currentThread().getId());
+		return -1;
+	}
+}
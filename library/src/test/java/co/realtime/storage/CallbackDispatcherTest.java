@@ -0,0 +1,185 @@
+package co.realtime.storage;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.lang.Thread.UncaughtExceptionHandler;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+import co.realtime.storage.StorageRef.StorageEvent;
+import co.realtime.storage.entities.DispatchConfig;
+import co.realtime.storage.entities.DispatchConfig.DispatchMode;
+import co.realtime.storage.ext.OnItemSnapshot;
+
+public class CallbackDispatcherTest {
+	private static final int CHANNELS = 8;
+	private static final int NOTIFICATIONS = 200;
+
+	@Test
+	public void eachChannelKeepsItsOrderAcrossPartitions() throws Exception {
+		CallbackDispatcher dispatcher = new CallbackDispatcher(new DispatchConfig(DispatchMode.PARTITIONED, 4), null, null);
+		final ConcurrentHashMap<String, List<Integer>> received = new ConcurrentHashMap<String, List<Integer>>();
+		final CountDownLatch done = new CountDownLatch(CHANNELS * NOTIFICATIONS);
+		final Map<String, Event> events = new LinkedHashMap<String, Event>();
+		for(int c = 0; c < CHANNELS; c++){
+			final String channel = "rtcs_table:" + c;
+			received.put(channel, Collections.synchronizedList(new ArrayList<Integer>()));
+			events.put(channel, event(new OnItemSnapshot(){
+				@Override
+				public void run(ItemSnapshot itemSnapshot) {
+					received.get(channel).add(number(itemSnapshot));
+					done.countDown();
+				}
+			}));
+		}
+		for(int i = 0; i < NOTIFICATIONS; i++){
+			for(Map.Entry<String, Event> entry : events.entrySet())
+				dispatcher.dispatch(entry.getKey(), entry.getValue(), snapshot(i));
+		}
+		assertTrue(done.await(10, TimeUnit.SECONDS));
+		for(List<Integer> numbers : received.values())
+			assertEquals(sequence(0, NOTIFICATIONS), numbers);
+	}
+
+	@Test
+	public void failingListenerIsReportedAndTheFollowingOnesStillRun() throws Exception {
+		final List<Throwable> reported = Collections.synchronizedList(new ArrayList<Throwable>());
+		CallbackDispatcher dispatcher = new CallbackDispatcher(new DispatchConfig(DispatchMode.SERIAL, 1), null, new UncaughtExceptionHandler(){
+			@Override
+			public void uncaughtException(Thread thread, Throwable e) {
+				reported.add(e);
+			}
+		});
+		final List<Integer> received = Collections.synchronizedList(new ArrayList<Integer>());
+		final CountDownLatch done = new CountDownLatch(10);
+		Event event = event(new OnItemSnapshot(){
+			@Override
+			public void run(ItemSnapshot itemSnapshot) {
+				int n = number(itemSnapshot);
+				done.countDown();
+				if(n == 3)
+					throw new IllegalStateException("listener failed");
+				received.add(n);
+			}
+		});
+		for(int i = 0; i < 10; i++)
+			dispatcher.dispatch("rtcs_table", event, snapshot(i));
+		assertTrue(done.await(10, TimeUnit.SECONDS));
+		waitFor(received, 9);
+		assertEquals(9, received.size());
+		assertFalse(received.contains(3));
+		assertEquals(1, reported.size());
+		assertEquals("listener failed", reported.get(0).getMessage());
+	}
+
+	@Test
+	public void partitionRecoversFromAnErrorThrownByAListener() throws Exception {
+		CallbackDispatcher dispatcher = new CallbackDispatcher(new DispatchConfig(DispatchMode.SERIAL, 1), null, null);
+		final List<Integer> received = Collections.synchronizedList(new ArrayList<Integer>());
+		Event event = event(new OnItemSnapshot(){
+			@Override
+			public void run(ItemSnapshot itemSnapshot) {
+				int n = number(itemSnapshot);
+				if(n == 2)
+					throw new ExpectedError();
+				received.add(n);
+			}
+		});
+		//the thread the error ends is replaced, the listeners queued behind it run on another one
+		Thread.UncaughtExceptionHandler previous = Thread.getDefaultUncaughtExceptionHandler();
+		Thread.setDefaultUncaughtExceptionHandler(new UncaughtExceptionHandler(){
+			@Override
+			public void uncaughtException(Thread thread, Throwable e) {
+			}
+		});
+		try {
+			for(int i = 0; i < 10; i++)
+				dispatcher.dispatch("rtcs_table", event, snapshot(i));
+			waitFor(received, 9);
+			//and the partition takes new notifications afterwards
+			dispatcher.dispatch("rtcs_table", event, snapshot(10));
+			waitFor(received, 10);
+		} finally {
+			Thread.setDefaultUncaughtExceptionHandler(previous);
+		}
+		ArrayList<Integer> expected = sequence(0, 11);
+		expected.remove(Integer.valueOf(2));
+		assertEquals(expected, received);
+	}
+
+	@Test
+	public void replacingDispatcherKeepsTheOrderOfAChannel() throws Exception {
+		final CountDownLatch release = new CountDownLatch(1);
+		final List<Integer> received = Collections.synchronizedList(new ArrayList<Integer>());
+		Event event = event(new OnItemSnapshot(){
+			@Override
+			public void run(ItemSnapshot itemSnapshot) {
+				int n = number(itemSnapshot);
+				//the first listener is slow, the old dispatcher still has a queue when it is replaced
+				if(n == 0){
+					try {
+						release.await(10, TimeUnit.SECONDS);
+					} catch (InterruptedException e) {
+						Thread.currentThread().interrupt();
+					}
+				}
+				received.add(n);
+			}
+		});
+		CallbackDispatcher old = new CallbackDispatcher(new DispatchConfig(DispatchMode.SERIAL, 1), null, null);
+		for(int i = 0; i < 5; i++)
+			old.dispatch("rtcs_table", event, snapshot(i));
+		CallbackDispatcher replacement = new CallbackDispatcher(new DispatchConfig(DispatchMode.PARTITIONED, 4), old, null);
+		for(int i = 5; i < 10; i++)
+			replacement.dispatch("rtcs_table", event, snapshot(i));
+		release.countDown();
+		waitFor(received, 10);
+		assertEquals(sequence(0, 10), received);
+
+		//once the old dispatcher is idle the replacement runs the listeners itself
+		replacement.dispatch("rtcs_table", event, snapshot(10));
+		waitFor(received, 11);
+		assertEquals(sequence(0, 11), received);
+	}
+
+	private static Event event(OnItemSnapshot listener){
+		return new Event(StorageEvent.UPDATE, "table", null, null, false, true, false, listener);
+	}
+
+	private static ItemSnapshot snapshot(int n){
+		LinkedHashMap<String, ItemAttribute> item = new LinkedHashMap<String, ItemAttribute>();
+		item.put("n", new ItemAttribute(n));
+		return new ItemSnapshot(null, item, null, null);
+	}
+
+	private static int number(ItemSnapshot itemSnapshot){
+		return ((Number) itemSnapshot.val().get("n").get()).intValue();
+	}
+
+	private static ArrayList<Integer> sequence(int from, int to){
+		ArrayList<Integer> sequence = new ArrayList<Integer>();
+		for(int i = from; i < to; i++)
+			sequence.add(i);
+		return sequence;
+	}
+
+	private static void waitFor(List<Integer> received, int count) throws InterruptedException {
+		long until = System.currentTimeMillis() + 10000;
+		while(received.size() < count && System.currentTimeMillis() < until)
+			Thread.sleep(5);
+	}
+
+	private static class ExpectedError extends Error {
+		private static final long serialVersionUID = 1L;
+	}
+}
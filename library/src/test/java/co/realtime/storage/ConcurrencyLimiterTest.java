@@ -0,0 +1,156 @@
+package co.realtime.storage;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import co.realtime.storage.entities.ConcurrencyLimitConfig;
+import co.realtime.storage.ext.OnError;
+
+public class ConcurrencyLimiterTest {
+	private static final String TABLE = "items";
+	private StorageContext context;
+
+	@Before
+	public void setUp() {
+		context = new StorageContext(null, null, "token", false, false, "http://127.0.0.1/", null);
+	}
+
+	@Test
+	public void fullWindowGrowsByAboutOneRequestPerRoundTrip() throws Exception {
+		ConcurrencyLimiter limiter = new ConcurrencyLimiter(context, new ConcurrencyLimitConfig(2, 20, 100));
+		//the window of a table exists from its first request
+		assertTrue(limiter.acquire(TABLE, null, null));
+		limiter.release(TABLE, -1, false);
+		for(int round = 0; round < 50; round++)
+			roundTrip(limiter, 10, false);
+		//the window grows by 1/limit per round trip, so limit^2/2 grows by one per round trip
+		long limit = metric(limiter, "limit");
+		assertTrue("limit " + limit, limit >= 8 && limit <= 11);
+
+		for(int round = 0; round < 500; round++)
+			roundTrip(limiter, 10, false);
+		assertEquals(20L, metric(limiter, "limit"));
+	}
+
+	@Test
+	public void idleWindowKeepsItsLimit() throws Exception {
+		ConcurrencyLimiter limiter = new ConcurrencyLimiter(context, new ConcurrencyLimitConfig(8, 20, 100));
+		for(int i = 0; i < 100; i++){
+			assertTrue(limiter.acquire(TABLE, null, null));
+			limiter.release(TABLE, 10, false);
+		}
+		assertEquals(8L, metric(limiter, "limit"));
+	}
+
+	@Test
+	public void overloadHalvesTheWindowOncePerRoundTrip() throws Exception {
+		ConcurrencyLimiter limiter = new ConcurrencyLimiter(context, new ConcurrencyLimitConfig(16, 64, 100));
+		//a round trip of 200 milliseconds
+		assertTrue(limiter.acquire(TABLE, null, null));
+		limiter.release(TABLE, 200, false);
+		assertEquals(16L, metric(limiter, "limit"));
+
+		for(int i = 0; i < 3; i++){
+			assertTrue(limiter.acquire(TABLE, null, null));
+			limiter.release(TABLE, 200, true);
+		}
+		assertEquals(8L, metric(limiter, "limit"));
+
+		Thread.sleep(250);
+		assertTrue(limiter.acquire(TABLE, null, null));
+		limiter.release(TABLE, 200, true);
+		assertEquals(4L, metric(limiter, "limit"));
+	}
+
+	@Test
+	public void inflatedLatencyShrinksTheWindowByATenth() throws Exception {
+		ConcurrencyLimiter limiter = new ConcurrencyLimiter(context, new ConcurrencyLimitConfig(20, 64, 100));
+		assertTrue(limiter.acquire(TABLE, null, null));
+		limiter.release(TABLE, 10, false);
+		//well above twice the lowest latency
+		assertTrue(limiter.acquire(TABLE, null, null));
+		limiter.release(TABLE, 100, false);
+		assertEquals(18L, metric(limiter, "limit"));
+	}
+
+	@Test
+	public void abortedRequestGivesItsPlaceBackWithoutAdapting() throws Exception {
+		ConcurrencyLimiter limiter = new ConcurrencyLimiter(context, new ConcurrencyLimitConfig(1, 64, 100));
+		assertTrue(limiter.acquire(TABLE, null, null));
+		limiter.release(TABLE, -1, true);
+		assertEquals(1L, metric(limiter, "limit"));
+		assertEquals(0L, metric(limiter, "inFlight"));
+	}
+
+	@Test
+	public void queueOverflowIsRejectedAndTheQueueDrainsInOrder() throws Exception {
+		ConcurrencyLimiter limiter = new ConcurrencyLimiter(context, new ConcurrencyLimitConfig(1, 1, 3));
+		final List<Integer> started = Collections.synchronizedList(new ArrayList<Integer>());
+		final CountDownLatch drained = new CountDownLatch(3);
+		final List<Integer> errors = Collections.synchronizedList(new ArrayList<Integer>());
+		OnError onError = new OnError(){
+			@Override
+			public void run(Integer code, String errorMessage) {
+				errors.add(code);
+			}
+		};
+		assertTrue(limiter.acquire(TABLE, null, onError));
+		for(int i = 1; i <= 4; i++){
+			final int request = i;
+			assertFalse(limiter.acquire(TABLE, new Runnable(){
+				@Override
+				public void run() {
+					started.add(request);
+					drained.countDown();
+				}
+			}, onError));
+		}
+		assertEquals(Arrays.asList(1013), errors);
+		assertEquals(3L, metric(limiter, "queued"));
+
+		//each response lets the next queued request in
+		for(int i = 0; i < 3; i++){
+			limiter.release(TABLE, 10, false);
+			waitFor(started, i + 1);
+		}
+		assertTrue(drained.await(5, TimeUnit.SECONDS));
+		assertEquals(Arrays.asList(1, 2, 3), started);
+		assertEquals(0L, metric(limiter, "queued"));
+		LinkedHashMap<String, Long> metrics = new LinkedHashMap<String, Long>();
+		limiter.collectMetrics(metrics);
+		assertEquals(1L, (long) metrics.get("concurrency.rejected"));
+	}
+
+	//fills the window, then every request gets its response
+	private static void roundTrip(ConcurrencyLimiter limiter, long latency, boolean overloaded){
+		int limit = (int) metric(limiter, "limit");
+		for(int i = 0; i < limit; i++)
+			assertTrue(limiter.acquire(TABLE, null, null));
+		for(int i = 0; i < limit; i++)
+			limiter.release(TABLE, latency, overloaded);
+	}
+
+	private static long metric(ConcurrencyLimiter limiter, String name){
+		LinkedHashMap<String, Long> metrics = new LinkedHashMap<String, Long>();
+		limiter.collectMetrics(metrics);
+		return metrics.get("concurrency." + TABLE + "." + name);
+	}
+
+	private static void waitFor(List<Integer> started, int count) throws InterruptedException {
+		long until = System.currentTimeMillis() + 5000;
+		while(started.size() < count && System.currentTimeMillis() < until)
+			Thread.sleep(5);
+	}
+}
@@ -0,0 +1,179 @@
+package co.realtime.storage;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.net.HttpURLConnection;
+import java.net.InetSocketAddress;
+import java.net.URL;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.LinkedList;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+import co.realtime.storage.entities.EndpointSelectionConfig;
+import co.realtime.storage.ext.OnError;
+
+//The selector against local stub servers, with a scripted balancer in place of the storage context.
+public class EndpointSelectorTest {
+	private HttpServer live;
+	private String liveUrl;
+	private String deadUrl;
+	private StubSource source;
+
+	@Before
+	public void setUp() throws IOException {
+		live = start();
+		liveUrl = url(live);
+		//nothing listens on the port of a stopped server, so connecting to it fails at once
+		HttpServer dead = start();
+		deadUrl = url(dead);
+		dead.stop(0);
+		source = new StubSource();
+	}
+
+	@After
+	public void tearDown() {
+		live.stop(0);
+	}
+
+	@Test
+	public void failedDiscoveredServerIsReplacedByTheBalancer() throws Exception {
+		source.answers.add(deadUrl);
+		source.answers.add(liveUrl);
+		EndpointSelector selector = new EndpointSelector(new EndpointSelectionConfig(), source);
+		assertEquals(deadUrl, selector.select(Long.MAX_VALUE));
+
+		assertTrue(selector.invalidate(deadUrl));
+		assertEquals(Arrays.asList(deadUrl), source.forgotten);
+		assertEquals(liveUrl, selector.select(Long.MAX_VALUE));
+		assertEquals(1L, (long) metrics(selector).get("endpoints.count"));
+	}
+
+	@Test
+	public void discoveredServerWithHighErrorRateIsEvicted() throws Exception {
+		source.answers.add(deadUrl);
+		source.answers.add(liveUrl);
+		EndpointSelector selector = new EndpointSelector(new EndpointSelectionConfig(), source);
+		assertEquals(deadUrl, selector.select(Long.MAX_VALUE));
+
+		for(int i = 0; i < 4; i++)
+			selector.record(deadUrl, 10, false);
+		assertEquals(Arrays.asList(deadUrl), source.forgotten);
+		assertEquals(liveUrl, selector.select(Long.MAX_VALUE));
+		assertEquals(1L, (long) metrics(selector).get("endpoints.evictions"));
+	}
+
+	@Test
+	public void probesEvictDeadDiscoveredServer() throws Exception {
+		source.answers.add(deadUrl);
+		source.lookups.add(liveUrl);
+		EndpointSelector selector = new EndpointSelector(new EndpointSelectionConfig(), source);
+		assertEquals(deadUrl, selector.select(Long.MAX_VALUE));
+
+		for(int i = 0; i < 4; i++)
+			selector.probe();
+		assertEquals(Arrays.asList(deadUrl), source.forgotten);
+		assertEquals(liveUrl, selector.select(Long.MAX_VALUE));
+		assertEquals(1L, (long) metrics(selector).get("endpoints.count"));
+	}
+
+	@Test
+	public void configuredServersAreKeptAndTheLiveOneIsPreferred() throws Exception {
+		EndpointSelectionConfig config = new EndpointSelectionConfig(Arrays.asList(deadUrl, liveUrl), 2, 60000L);
+		EndpointSelector selector = new EndpointSelector(config, source);
+
+		for(int i = 0; i < 4; i++)
+			selector.probe();
+		assertEquals(liveUrl, selector.select(Long.MAX_VALUE));
+		assertTrue(source.forgotten.isEmpty());
+		assertEquals(2L, (long) metrics(selector).get("endpoints.count"));
+		assertEquals(0, source.resolutions);
+	}
+
+	@Test
+	public void serverMetricsAreKeyedByHostAndPort() throws Exception {
+		EndpointSelectionConfig config = new EndpointSelectionConfig(Arrays.asList(deadUrl, liveUrl), 2, 60000L);
+		EndpointSelector selector = new EndpointSelector(config, source);
+
+		for(int i = 0; i < 4; i++)
+			selector.probe();
+		LinkedHashMap<String, Long> metrics = metrics(selector);
+		URL dead = new URL(deadUrl);
+		URL alive = new URL(liveUrl);
+		assertTrue(metrics.get("endpoints." + dead.getHost() + ":" + dead.getPort() + ".errorPercent") > 0);
+		assertEquals(0L, (long) metrics.get("endpoints." + alive.getHost() + ":" + alive.getPort() + ".errorPercent"));
+	}
+
+	private static HttpServer start() throws IOException {
+		HttpServer server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+		server.createContext("/", new HttpHandler(){
+			@Override
+			public void handle(HttpExchange exchange) throws IOException {
+				exchange.sendResponseHeaders(200, -1);
+				exchange.close();
+			}
+		});
+		server.start();
+		return server;
+	}
+
+	private static String url(HttpServer server){
+		return "http://127.0.0.1:" + server.getAddress().getPort() + "/";
+	}
+
+	private static LinkedHashMap<String, Long> metrics(EndpointSelector selector){
+		LinkedHashMap<String, Long> metrics = new LinkedHashMap<String, Long>();
+		selector.collectMetrics(metrics);
+		return metrics;
+	}
+
+	//a balancer giving its answers in order, the probes run on the calling thread
+	private static class StubSource implements EndpointSelector.Source {
+		final LinkedList<String> answers = new LinkedList<String>();
+		final LinkedList<String> lookups = new LinkedList<String>();
+		final ArrayList<String> forgotten = new ArrayList<String>();
+		int resolutions;
+
+		@Override
+		public String resolve(long remaining) throws IOException {
+			resolutions++;
+			if(answers.isEmpty())
+				throw new IOException("Cannot get response from balancer!");
+			return answers.poll();
+		}
+
+		@Override
+		public String lookup() {
+			return lookups.poll();
+		}
+
+		@Override
+		public void forget(String url) {
+			forgotten.add(url);
+		}
+
+		@Override
+		public HttpURLConnection open(String url) throws IOException {
+			HttpURLConnection connection = (HttpURLConnection) new URL(url).openConnection();
+			connection.setConnectTimeout(1000);
+			connection.setReadTimeout(1000);
+			return connection;
+		}
+
+		@Override
+		public void execute(Runnable task, OnError onError) {
+			task.run();
+		}
+	}
+}
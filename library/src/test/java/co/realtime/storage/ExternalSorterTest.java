@@ -0,0 +1,123 @@
+package co.realtime.storage;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.JsonSerializer;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializerProvider;
+import com.fasterxml.jackson.databind.module.SimpleModule;
+
+public class ExternalSorterTest {
+	private File dir;
+
+	@Before
+	public void setUp() throws IOException {
+		dir = File.createTempFile("rtcs-sorter-test", "");
+		dir.delete();
+		assertTrue(dir.mkdir());
+	}
+
+	@After
+	public void tearDown() {
+		File[] files = dir.listFiles();
+		if(files != null){
+			for(File file : files)
+				file.delete();
+		}
+		dir.delete();
+	}
+
+	@Test
+	public void runsMergeInOrderAndEqualItemsKeepTheirArrivalOrder() throws IOException {
+		ObjectMapper mapper = new ObjectMapper();
+		ExternalSorter sorter = new ExternalSorter(new LHMItemsComparator("score"), 2000, dir, mapper, new RestResponseDecoder(mapper));
+		ArrayList<LinkedHashMap<String, ItemAttribute>> items = new ArrayList<LinkedHashMap<String, ItemAttribute>>();
+		Random random = new Random(7);
+		for(int i = 0; i < 1000; i++)
+			items.add(item(random.nextInt(50), i));
+		//the items arrive in pages, as from a scan
+		for(int i = 0; i < items.size(); i += 100)
+			sorter.add(items.subList(i, i + 100));
+		assertTrue(sorter.getRunCount() > 2);
+		assertEquals(sorter.getRunCount(), dir.listFiles().length);
+
+		final ArrayList<LinkedHashMap<String, ItemAttribute>> sorted = new ArrayList<LinkedHashMap<String, ItemAttribute>>();
+		sorter.drain(new ExternalSorter.ItemConsumer(){
+			@Override
+			public void accept(LinkedHashMap<String, ItemAttribute> item) {
+				sorted.add(item);
+			}
+		});
+		sorter.close();
+
+		//a stable sort of the whole scan
+		Collections.sort(items, new LHMItemsComparator("score"));
+		assertEquals(sequence(items), sequence(sorted));
+		assertEquals(0, dir.listFiles().length);
+	}
+
+	@Test
+	public void failedSpillLeavesNoFileBehind() throws IOException {
+		final int[] written = new int[1];
+		ObjectMapper failing = new ObjectMapper();
+		SimpleModule module = new SimpleModule();
+		//the third run fails while it is written
+		module.addSerializer(ItemAttribute.class, new JsonSerializer<ItemAttribute>(){
+			@Override
+			public void serialize(ItemAttribute value, JsonGenerator generator, SerializerProvider provider) throws IOException {
+				if(++written[0] > 200)
+					throw new IOException("disk full");
+				generator.writeObject(value.get());
+			}
+		});
+		failing.registerModule(module);
+		ExternalSorter sorter = new ExternalSorter(new LHMItemsComparator("score"), 2000, dir, failing, new RestResponseDecoder(failing));
+		try {
+			for(int i = 0; i < 1000; i++)
+				sorter.add(Collections.singletonList(item(i, i)));
+			fail("the spill should have failed");
+		} catch (IOException e) {
+			assertEquals("disk full", rootMessage(e));
+		}
+		//the runs spilled before stay until the scan closes the sorter
+		assertTrue(sorter.getRunCount() > 0);
+		assertEquals(sorter.getRunCount(), dir.listFiles().length);
+		sorter.close();
+		assertEquals(0, dir.listFiles().length);
+	}
+
+	private static String rootMessage(Throwable e){
+		while(e.getCause() != null)
+			e = e.getCause();
+		return e.getMessage();
+	}
+
+	private static List<String> sequence(List<LinkedHashMap<String, ItemAttribute>> items){
+		ArrayList<String> sequence = new ArrayList<String>();
+		for(LinkedHashMap<String, ItemAttribute> item : items)
+			sequence.add(item.get("score") + "/" + item.get("id"));
+		return sequence;
+	}
+
+	private static LinkedHashMap<String, ItemAttribute> item(int score, int id){
+		LinkedHashMap<String, ItemAttribute> item = new LinkedHashMap<String, ItemAttribute>();
+		item.put("id", new ItemAttribute(id));
+		item.put("score", new ItemAttribute(score));
+		return item;
+	}
+}
@@ -0,0 +1,156 @@
+package co.realtime.storage;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+
+import org.junit.Test;
+
+import co.realtime.storage.StorageRef.StorageDataType;
+import co.realtime.storage.entities.TableMetadata;
+
+public class ItemAttributeTest {
+
+	@Test
+	public void numbersAreEqualByValue() {
+		assertEqualValues(new ItemAttribute(1), new ItemAttribute(1L));
+		assertEqualValues(new ItemAttribute(1), new ItemAttribute(1.0));
+		assertEqualValues(new ItemAttribute(1.5f), new ItemAttribute(new BigDecimal("1.50")));
+		assertEqualValues(new ItemAttribute(0.0), new ItemAttribute(-0.0));
+		assertEqualValues(new ItemAttribute(new BigInteger("12345678901234567890")), new ItemAttribute(new BigDecimal("12345678901234567890.000")));
+	}
+
+	@Test
+	public void numbersAreEqualToTheStringsOfTheirText() {
+		assertEqualValues(new ItemAttribute("1"), new ItemAttribute(1));
+		assertEqualValues(new ItemAttribute("1"), new ItemAttribute(1.0));
+		assertEqualValues(new ItemAttribute("1.0"), new ItemAttribute(1L));
+		assertEqualValues(new ItemAttribute("0.1"), new ItemAttribute(0.1));
+		assertEqualValues(new ItemAttribute("-7"), new ItemAttribute((short) -7));
+		assertEqualValues(new ItemAttribute("NaN"), new ItemAttribute(Double.NaN));
+		assertNotEquals(new ItemAttribute("1a"), new ItemAttribute(1));
+	}
+
+	@Test
+	public void stringsAreEqualOnlyToTheSameText() {
+		assertNotEquals(new ItemAttribute("007"), new ItemAttribute("7"));
+		assertNotEquals(new ItemAttribute("07.0"), new ItemAttribute("7"));
+		assertNotEquals(new ItemAttribute("7e0"), new ItemAttribute("7"));
+		assertNotEquals(new ItemAttribute("1.0"), new ItemAttribute("1"));
+		assertNotEquals(new ItemAttribute("abc"), new ItemAttribute("ABC"));
+		assertEqualValues(new ItemAttribute("007"), new ItemAttribute("007"));
+		assertTrue(new ItemAttribute("007").compareTo(new ItemAttribute("7")) != 0);
+	}
+
+	@Test
+	public void equalityIsSymmetricAndTransitiveWithinStringsAndWithinNumbers() {
+		List<ItemAttribute> strings = Arrays.asList(
+				new ItemAttribute("1"), new ItemAttribute("1.0"), new ItemAttribute("01"), new ItemAttribute("0.1"), new ItemAttribute("1e1"), new ItemAttribute("x"),
+				new ItemAttribute("1000000000000000000"), new ItemAttribute("1"), new ItemAttribute("x"));
+		List<ItemAttribute> numbers = Arrays.asList(
+				new ItemAttribute(1), new ItemAttribute(1L), new ItemAttribute(1.0), new ItemAttribute(1.0f), new ItemAttribute(0.1), new ItemAttribute(0.1f), new ItemAttribute(10),
+				new ItemAttribute(1e18), new ItemAttribute(1000000000000000000L), new ItemAttribute(new BigDecimal("1E+18")));
+		assertEquivalence(strings);
+		assertEquivalence(numbers);
+		ArrayList<ItemAttribute> mixed = new ArrayList<ItemAttribute>(strings);
+		mixed.addAll(numbers);
+		for(ItemAttribute a : mixed){
+			for(ItemAttribute b : mixed){
+				assertEquals(a + " " + b, a.equals(b), b.equals(a));
+				if(a.equals(b))
+					assertEquals(a + " " + b, a.hashCode(), b.hashCode());
+			}
+		}
+	}
+
+	@Test
+	public void longsAboveTheDoublePrecisionStayDistinct() {
+		ItemAttribute odd = new ItemAttribute(9007199254740993L);
+		ItemAttribute even = new ItemAttribute(9007199254740992L);
+		assertNotEquals(odd, even);
+		assertNotEquals(new ItemAttribute(Long.MAX_VALUE), new ItemAttribute(Long.MAX_VALUE - 1));
+		assertEqualValues(new ItemAttribute(Long.MAX_VALUE), new ItemAttribute(Long.toString(Long.MAX_VALUE)));
+		assertEqualValues(new ItemAttribute(Long.MIN_VALUE), new ItemAttribute(BigInteger.valueOf(Long.MIN_VALUE)));
+		assertEqualValues(new ItemAttribute(new BigInteger("9223372036854775808")), new ItemAttribute("9223372036854775808.0"));
+		assertEqualValues(odd, new ItemAttribute("9007199254740993"));
+		assertNotEquals(new ItemAttribute("9007199254740993"), new ItemAttribute("9007199254740992"));
+	}
+
+	@Test
+	public void numberKeysDedupeByValueWithoutMergingLargeLongs() {
+		TableMetadata tm = table(StorageDataType.NUMBER);
+		HashSet<ItemKey> keys = new HashSet<ItemKey>();
+		keys.add(ItemKey.of(tm, item(new ItemAttribute(9007199254740993L))));
+		keys.add(ItemKey.of(tm, item(new ItemAttribute(9007199254740992L))));
+		keys.add(ItemKey.of(tm, item(new ItemAttribute("9007199254740992"))));
+		keys.add(ItemKey.of(tm, item(new ItemAttribute(7))));
+		keys.add(ItemKey.of(tm, item(new ItemAttribute(7.0))));
+		keys.add(ItemKey.of(tm, item(new ItemAttribute("7"))));
+		keys.add(ItemKey.of(tm, item(new ItemAttribute("7.0"))));
+		assertEquals(3, keys.size());
+	}
+
+	@Test
+	public void stringKeysDedupeByText() {
+		TableMetadata tm = table(StorageDataType.STRING);
+		HashSet<ItemKey> keys = new HashSet<ItemKey>();
+		keys.add(ItemKey.of(tm, item(new ItemAttribute("007"))));
+		keys.add(ItemKey.of(tm, item(new ItemAttribute("7"))));
+		keys.add(ItemKey.of(tm, item(new ItemAttribute("07.0"))));
+		keys.add(ItemKey.of(tm, item(new ItemAttribute("7e0"))));
+		keys.add(ItemKey.of(tm, item(new ItemAttribute("7"))));
+		keys.add(ItemKey.of(tm, item(new ItemAttribute(7))));
+		assertEquals(4, keys.size());
+	}
+
+	@Test
+	public void nullValuesOnlyEqualNullValues() {
+		ItemAttribute none = new ItemAttribute((String) null);
+		assertTrue(none.equals(new ItemAttribute((Number) null)));
+		assertFalse(none.equals(new ItemAttribute("")));
+		assertEquals(0, none.hashCode());
+	}
+
+	private static void assertEqualValues(ItemAttribute a, ItemAttribute b){
+		assertEquals(a, b);
+		assertEquals(b, a);
+		assertEquals(a.hashCode(), b.hashCode());
+	}
+
+	private static void assertEquivalence(List<ItemAttribute> values){
+		for(ItemAttribute a : values){
+			for(ItemAttribute b : values){
+				assertEquals(a + " " + b, a.equals(b), b.equals(a));
+				if(a.equals(b))
+					assertEquals(a + " " + b, a.hashCode(), b.hashCode());
+				for(ItemAttribute c : values){
+					if(a.equals(b) && b.equals(c))
+						assertTrue(a + " " + b + " " + c, a.equals(c));
+				}
+			}
+		}
+	}
+
+	private static TableMetadata table(StorageDataType primaryKeyType){
+		TableMetadata tm = new TableMetadata();
+		tm.setName("table");
+		tm.setPrimaryKeyName("id");
+		tm.setPrimaryKeyType(primaryKeyType);
+		return tm;
+	}
+
+	private static LinkedHashMap<String, ItemAttribute> item(ItemAttribute id){
+		LinkedHashMap<String, ItemAttribute> item = new LinkedHashMap<String, ItemAttribute>();
+		item.put("id", id);
+		return item;
+	}
+}
@@ -0,0 +1,169 @@
+package co.realtime.storage;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Test;
+
+import com.fasterxml.jackson.databind.JsonNode;
+
+import co.realtime.storage.StorageRef.StorageDataType;
+import co.realtime.storage.ext.OnError;
+import co.realtime.storage.ext.OnItemSnapshot;
+import co.realtime.storage.ext.OnMissingKeys;
+
+//getItems over a set of keys against a local stub server.
+public class MultiGetTest {
+	private StubStorage storage;
+
+	@After
+	public void tearDown() {
+		if(storage != null)
+			storage.stop();
+	}
+
+	@Test
+	public void stringKeysThatReadAsTheSameNumberAreDistinct() throws Exception {
+		storage = new StubStorage(new StubStorage.Responder(){
+			@Override
+			public String respond(String operation, JsonNode body) {
+				return "{\"data\":{\"id\":\"" + body.get("key").get("primary").asText() + "\"}}";
+			}
+		});
+		TableRef table = storage.table("users", StorageDataType.STRING);
+		Result result = getItems(table, keys(new ItemAttribute("007"), new ItemAttribute("7"), new ItemAttribute("7.0"), new ItemAttribute("7")));
+
+		assertEquals(new HashSet<String>(Arrays.asList("007", "7", "7.0")), new HashSet<String>(result.ids));
+		assertEquals(3, storage.requests.size());
+	}
+
+	@Test
+	public void numberKeysOfTheSameValueAreFetchedOnce() throws Exception {
+		storage = new StubStorage(new StubStorage.Responder(){
+			@Override
+			public String respond(String operation, JsonNode body) {
+				return "{\"data\":{\"id\":" + body.get("key").get("primary").asText() + "}}";
+			}
+		});
+		TableRef table = storage.table("scores", StorageDataType.NUMBER);
+		Result result = getItems(table, keys(new ItemAttribute(7), new ItemAttribute(7L), new ItemAttribute(7.0), new ItemAttribute(8)));
+
+		assertEquals(2, result.ids.size());
+		assertEquals(2, storage.requests.size());
+	}
+
+	@Test
+	public void keysNotFoundAreReportedBeforeTheEnd() throws Exception {
+		storage = new StubStorage(new StubStorage.Responder(){
+			@Override
+			public String respond(String operation, JsonNode body) {
+				String id = body.get("key").get("primary").asText();
+				return id.startsWith("a") ? "{\"data\":{\"id\":\"" + id + "\"}}" : "{\"data\":{}}";
+			}
+		});
+		TableRef table = storage.table("users", StorageDataType.STRING);
+		Result result = getItems(table, keys(new ItemAttribute("a1"), new ItemAttribute("b1"), new ItemAttribute("a2"), new ItemAttribute("b2")));
+
+		assertEquals(new HashSet<String>(Arrays.asList("a1", "a2")), new HashSet<String>(result.ids));
+		assertEquals(new HashSet<String>(Arrays.asList("b1", "b2")), new HashSet<String>(result.missing));
+		assertTrue(result.missingBeforeEnd);
+	}
+
+	@Test
+	public void theDeadlineTimerIsReleasedWhenTheCallEnds() throws Exception {
+		storage = new StubStorage(new StubStorage.Responder(){
+			@Override
+			public String respond(String operation, JsonNode body) {
+				return "{\"data\":{\"id\":\"" + body.get("key").get("primary").asText() + "\"}}";
+			}
+		});
+		TableRef table = storage.table("users", StorageDataType.STRING);
+		RequestHandle handle = new RequestHandle(60000);
+		Result result = getItems(table, keys(new ItemAttribute("a1"), new ItemAttribute("a2"), new ItemAttribute("a3")), handle);
+
+		assertEquals(3, result.ids.size());
+		assertNull(handle.timer);
+	}
+
+	@Test
+	public void theDeadlineAppliesToTheWholeCall() throws Exception {
+		storage = new StubStorage(new StubStorage.Responder(){
+			@Override
+			public String respond(String operation, JsonNode body) {
+				try {
+					Thread.sleep(2000);
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+				}
+				return "{\"data\":{}}";
+			}
+		});
+		TableRef table = storage.table("users", StorageDataType.STRING);
+		RequestHandle handle = new RequestHandle(300);
+		Result result = getItems(table, keys(new ItemAttribute("a1"), new ItemAttribute("a2"), new ItemAttribute("a3")), handle);
+
+		assertEquals(Arrays.asList("error 1015"), result.ids);
+		assertNull(handle.timer);
+	}
+
+	private static Result getItems(TableRef table, List<LinkedHashMap<String, ItemAttribute>> keys) throws InterruptedException {
+		return getItems(table, keys, new RequestHandle());
+	}
+
+	private static Result getItems(TableRef table, List<LinkedHashMap<String, ItemAttribute>> keys, RequestHandle handle) throws InterruptedException {
+		final Result result = new Result();
+		table.getItems(keys, 2, new OnItemSnapshot(){
+			@Override
+			public void run(ItemSnapshot itemSnapshot) {
+				if(itemSnapshot == null){
+					result.done.countDown();
+					return;
+				}
+				result.ids.add(itemSnapshot.val().get("id").toString());
+			}
+		}, new OnMissingKeys(){
+			@Override
+			public void run(List<LinkedHashMap<String, ItemAttribute>> missing) {
+				for(LinkedHashMap<String, ItemAttribute> key : missing)
+					result.missing.add(key.get("id").toString());
+				result.missingBeforeEnd = result.done.getCount() == 1;
+			}
+		}, new OnError(){
+			@Override
+			public void run(Integer code, String errorMessage) {
+				result.ids.add("error " + code);
+				result.done.countDown();
+			}
+		}, handle);
+		assertTrue(result.done.await(10, TimeUnit.SECONDS));
+		return result;
+	}
+
+	private static List<LinkedHashMap<String, ItemAttribute>> keys(ItemAttribute... ids){
+		ArrayList<LinkedHashMap<String, ItemAttribute>> keys = new ArrayList<LinkedHashMap<String, ItemAttribute>>();
+		for(ItemAttribute id : ids){
+			LinkedHashMap<String, ItemAttribute> key = new LinkedHashMap<String, ItemAttribute>();
+			key.put("id", id);
+			keys.add(key);
+		}
+		return keys;
+	}
+
+	private static class Result {
+		final List<String> ids = Collections.synchronizedList(new ArrayList<String>());
+		final List<String> missing = Collections.synchronizedList(new ArrayList<String>());
+		volatile boolean missingBeforeEnd;
+		final CountDownLatch done = new CountDownLatch(1);
+	}
+}
@@ -0,0 +1,139 @@
+package co.realtime.storage;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.After;
+import org.junit.Test;
+
+import com.fasterxml.jackson.databind.JsonNode;
+
+import co.realtime.storage.NotificationDecoder.Notification;
+import co.realtime.storage.StorageRef.StorageEvent;
+import co.realtime.storage.entities.NotificationBufferConfig;
+import co.realtime.storage.entities.NotificationBufferConfig.OverflowPolicy;
+import co.realtime.storage.ext.OnItemSnapshot;
+
+//The notifications of a table received while its metadata loads from a local stub server, which holds the
+//describeTable response until the test lets it go.
+public class NotificationBufferTest {
+	private static final String TABLE = "items";
+	private static final String DESCRIPTION = "{\"data\":{\"applicationKey\":\"key\",\"name\":\"" + TABLE + "\",\"provisionType\":{\"id\":1},\"provisionLoad\":{\"id\":1},"
+			+ "\"throughput\":{\"read\":1,\"write\":1},\"creationDate\":1467331200000,\"updateDate\":1467331200000,\"isActive\":true,"
+			+ "\"key\":{\"primary\":{\"name\":\"id\",\"dataType\":\"string\"}},\"status\":\"ACTIVE\",\"size\":0,\"itemCount\":0}}";
+
+	private final CountDownLatch describe = new CountDownLatch(1);
+	private final AtomicInteger describes = new AtomicInteger();
+	private final List<String> delivered = Collections.synchronizedList(new ArrayList<String>());
+	private StubStorage storage;
+
+	@After
+	public void tearDown() {
+		describe.countDown();
+		if(storage != null)
+			storage.stop();
+	}
+
+	@Test
+	public void fullQueueDropsTheOldestAndDrainsInArrivalOrder() throws Exception {
+		NotificationBuffer buffer = buffer(new NotificationBufferConfig(3, OverflowPolicy.DROP_OLDEST), DESCRIPTION);
+		for(int i = 1; i <= 5; i++)
+			buffer.deliver(notification("item" + i));
+		assertEquals(3L, (long) metrics(buffer).get("notifications.pending"));
+
+		describe.countDown();
+		waitFor(3);
+		assertEquals(Arrays.asList("item3", "item4", "item5"), delivered);
+		assertEquals(2L, (long) metrics(buffer).get("notifications.dropped"));
+		assertEquals(1, describes.get());
+
+		//the metadata is there, a notification is delivered at once
+		buffer.deliver(notification("item6"));
+		assertEquals(Arrays.asList("item3", "item4", "item5", "item6"), delivered);
+		assertEquals(0L, (long) metrics(buffer).get("notifications.pending"));
+	}
+
+	@Test
+	public void fullQueueDropsTheNewest() throws Exception {
+		NotificationBuffer buffer = buffer(new NotificationBufferConfig(3, OverflowPolicy.DROP_NEWEST), DESCRIPTION);
+		for(int i = 1; i <= 5; i++)
+			buffer.deliver(notification("item" + i));
+
+		describe.countDown();
+		waitFor(3);
+		assertEquals(Arrays.asList("item1", "item2", "item3"), delivered);
+		assertEquals(2L, (long) metrics(buffer).get("notifications.dropped"));
+	}
+
+	@Test
+	public void failedLoadDiscardsTheQueueAndTheNextNotificationLoadsAgain() throws Exception {
+		NotificationBuffer buffer = buffer(new NotificationBufferConfig(10, OverflowPolicy.DROP_OLDEST), null);
+		for(int i = 1; i <= 4; i++)
+			buffer.deliver(notification("item" + i));
+		describe.countDown();
+		long until = System.currentTimeMillis() + 5000;
+		while(metrics(buffer).get("notifications.pending") > 0 && System.currentTimeMillis() < until)
+			Thread.sleep(10);
+		assertEquals(4L, (long) metrics(buffer).get("notifications.dropped"));
+		assertTrue(delivered.isEmpty());
+
+		buffer.deliver(notification("item5"));
+		until = System.currentTimeMillis() + 5000;
+		while(describes.get() < 2 && System.currentTimeMillis() < until)
+			Thread.sleep(10);
+		assertEquals(2, describes.get());
+	}
+
+	//the stub answers describeTable with the description, or refuses it when there is none
+	private NotificationBuffer buffer(NotificationBufferConfig config, final String description) throws Exception {
+		storage = new StubStorage(new StubStorage.Responder(){
+			@Override
+			public String respond(String operation, JsonNode body) {
+				describes.incrementAndGet();
+				try {
+					describe.await(10, TimeUnit.SECONDS);
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+				}
+				return description;
+			}
+		}, 400);
+		storage.context.subscriptions.add(new Event(StorageEvent.UPDATE, TABLE, null, null, false, true, false, new OnItemSnapshot(){
+			@Override
+			public void run(ItemSnapshot itemSnapshot) {
+				delivered.add(itemSnapshot.val().get("id").toString());
+			}
+		}));
+		return new NotificationBuffer(storage.context, config);
+	}
+
+	private static Notification notification(String id){
+		Notification notification = new Notification(TABLE, NotificationDecoder.CHANNEL_PREFIX + TABLE);
+		notification.type = StorageEvent.UPDATE;
+		notification.item = new LinkedHashMap<String, ItemAttribute>();
+		notification.item.put("id", new ItemAttribute(id));
+		notification.hasListeners = true;
+		return notification;
+	}
+
+	private static LinkedHashMap<String, Long> metrics(NotificationBuffer buffer){
+		LinkedHashMap<String, Long> metrics = new LinkedHashMap<String, Long>();
+		buffer.collectMetrics(metrics);
+		return metrics;
+	}
+
+	private void waitFor(int count) throws InterruptedException {
+		long until = System.currentTimeMillis() + 5000;
+		while(delivered.size() < count && System.currentTimeMillis() < until)
+			Thread.sleep(10);
+	}
+}
@@ -0,0 +1,66 @@
+package co.realtime.storage;
+
+import java.io.IOException;
+import java.util.LinkedHashMap;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import co.realtime.storage.StorageRef.StorageEvent;
+import co.realtime.storage.ext.OnItemSnapshot;
+
+//Time and allocation of decoding a notification: with a listener for its type, with listeners for another type
+//only, on a channel nobody listens to, and, for reference, the whole message read into a map by the ObjectMapper.
+//Run as a main class: java co.realtime.storage.NotificationDecoderBenchmark
+public class NotificationDecoderBenchmark {
+	private static final int OPS = 100000;
+	private static final String MESSAGE = "{\"type\":\"update\",\"data\":{\"id\":\"user-1234\",\"name\":\"Ana Maria\",\"email\":\"ana@example.com\","
+			+ "\"age\":31,\"score\":1234.5,\"city\":\"Lisbon\",\"country\":\"PT\",\"createdAt\":1467331200000,\"active\":1}}";
+
+	public static void main(String[] args) {
+		final ObjectMapper mapper = new ObjectMapper();
+		SubscriptionRegistry subscriptions = new SubscriptionRegistry();
+		final NotificationDecoder decoder = new NotificationDecoder(null, subscriptions, mapper, new RestResponseDecoder(mapper));
+		OnItemSnapshot listener = new OnItemSnapshot(){
+			@Override
+			public void run(ItemSnapshot itemSnapshot) {
+			}
+		};
+		subscriptions.add(new Event(StorageEvent.UPDATE, "updated", null, null, false, true, false, listener));
+		subscriptions.add(new Event(StorageEvent.DELETE, "deleted", null, null, false, true, false, listener));
+
+		measure("decode, listened type", decoder, "rtcs_updated");
+		measure("decode, other type skipped", decoder, "rtcs_deleted");
+		measure("decode, channel without listeners", decoder, "rtcs_nobody");
+		BenchmarkHarness.measure("reference, ObjectMapper.readValue to a map", OPS, new BenchmarkHarness.Case(){
+			@Override
+			public long run(int ops) {
+				long size = 0;
+				try {
+					for(int i = 0; i < ops; i++)
+						size += mapper.readValue(MESSAGE, LinkedHashMap.class).size();
+				} catch (IOException e) {
+					throw new IllegalStateException(e);
+				}
+				return size;
+			}
+		});
+	}
+
+	private static void measure(String name, final NotificationDecoder decoder, final String channel){
+		BenchmarkHarness.measure(name, OPS, new BenchmarkHarness.Case(){
+			@Override
+			public long run(int ops) {
+				long items = 0;
+				try {
+					for(int i = 0; i < ops; i++){
+						if(decoder.decode(channel, MESSAGE).item != null)
+							items++;
+					}
+				} catch (IOException e) {
+					throw new IllegalStateException(e);
+				}
+				return items;
+			}
+		});
+	}
+}
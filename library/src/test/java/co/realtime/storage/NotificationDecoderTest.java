@@ -0,0 +1,108 @@
+package co.realtime.storage;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import co.realtime.storage.NotificationDecoder.Notification;
+import co.realtime.storage.StorageRef.StorageEvent;
+import co.realtime.storage.ext.OnItemSnapshot;
+
+public class NotificationDecoderTest {
+	private static final String CHANNEL = "rtcs_users";
+	private static final String UPDATE = "{\"type\":\"update\",\"data\":{\"id\":\"ana\",\"age\":31,\"tags\":[\"a\",{\"b\":1}]}}";
+	private static final String DELETE = "{\"type\":\"delete\",\"data\":{\"id\":\"ana\",\"age\":31}}";
+
+	private SubscriptionRegistry subscriptions;
+	private NotificationDecoder decoder;
+
+	@Before
+	public void setUp() {
+		ObjectMapper mapper = new ObjectMapper();
+		subscriptions = new SubscriptionRegistry();
+		decoder = new NotificationDecoder(null, subscriptions, mapper, new RestResponseDecoder(mapper));
+	}
+
+	@Test
+	public void tableNameOfTableAndItemChannels() {
+		assertEquals("users", NotificationDecoder.tableName("rtcs_users"));
+		assertEquals("users", NotificationDecoder.tableName("rtcs_users:ana"));
+		assertEquals("users", NotificationDecoder.tableName("rtcs_users:ana:2016"));
+		assertEquals("my_table", NotificationDecoder.tableName("rtcs_my_table:1"));
+	}
+
+	@Test
+	public void tableNameOfOtherChannelsIsNull() {
+		assertNull(NotificationDecoder.tableName(null));
+		assertNull(NotificationDecoder.tableName(""));
+		assertNull(NotificationDecoder.tableName("rtcs_"));
+		assertNull(NotificationDecoder.tableName("rtcs_:ana"));
+		assertNull(NotificationDecoder.tableName("rtcsusers"));
+		assertNull(NotificationDecoder.tableName("users"));
+	}
+
+	@Test
+	public void otherChannelsAreNotDecoded() throws IOException {
+		assertNull(decoder.decode("presence_users", UPDATE));
+	}
+
+	@Test
+	public void channelWithoutListenersIsNotParsed() throws IOException {
+		//not even json: the message is never read
+		Notification notification = decoder.decode(CHANNEL, "not json");
+		assertEquals("users", notification.table);
+		assertNull(notification.type);
+		assertNull(notification.item);
+		assertFalse(notification.hasListeners);
+	}
+
+	@Test
+	public void itemIsDecodedForTheListenedType() throws IOException {
+		listen(StorageEvent.UPDATE);
+		Notification notification = decoder.decode(CHANNEL, UPDATE);
+		assertEquals(StorageEvent.UPDATE, notification.type);
+		assertTrue(notification.hasListeners);
+		assertEquals("ana", notification.item.get("id").toString());
+		assertEquals(31, ((Number) notification.item.get("age").get()).intValue());
+	}
+
+	@Test
+	public void itemIsSkippedForOtherTypes() throws IOException {
+		listen(StorageEvent.UPDATE);
+		Notification notification = decoder.decode(CHANNEL, DELETE);
+		assertEquals(StorageEvent.DELETE, notification.type);
+		assertNull(notification.item);
+		assertFalse(notification.hasListeners);
+	}
+
+	@Test
+	public void itemBeforeTheTypeIsDecoded() throws IOException {
+		listen(StorageEvent.UPDATE);
+		Notification notification = decoder.decode(CHANNEL, "{\"data\":{\"id\":\"ana\"},\"type\":\"update\"}");
+		assertEquals(StorageEvent.UPDATE, notification.type);
+		assertEquals("ana", notification.item.get("id").toString());
+		assertTrue(notification.hasListeners);
+	}
+
+	@Test(expected = IOException.class)
+	public void malformedMessageOfListenedChannelFails() throws IOException {
+		listen(StorageEvent.UPDATE);
+		decoder.decode(CHANNEL, "[1,2]");
+	}
+
+	private void listen(StorageEvent type){
+		subscriptions.add(new Event(type, "users", null, null, false, true, false, new OnItemSnapshot(){
+			@Override
+			public void run(ItemSnapshot itemSnapshot) {
+			}
+		}));
+	}
+}
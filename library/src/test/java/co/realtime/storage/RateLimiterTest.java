@@ -0,0 +1,128 @@
+package co.realtime.storage;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import co.realtime.storage.Rest.RestType;
+import co.realtime.storage.StorageRef.StorageDataType;
+import co.realtime.storage.entities.RateLimitConfig;
+import co.realtime.storage.entities.TableMetadata;
+
+public class RateLimiterTest {
+	private StorageContext context;
+	private RateLimiter limiter;
+
+	@Before
+	public void setUp() throws Exception {
+		context = new StorageContext(null, null, "token", false, false, "http://127.0.0.1/", null);
+		limiter = new RateLimiter(new RateLimitConfig(100, 100, 1));
+	}
+
+	@Test
+	public void writesBeyondTheBurstWaitForTheirShareOfThroughput() {
+		table("items", 10, 10);
+		//the burst of one second goes at once
+		for(int i = 0; i < 10; i++)
+			assertEquals(0, write("items", 10));
+		//then one unit every 100 milliseconds, in order
+		assertBetween(90, 100, write("items", 10));
+		assertBetween(190, 200, write("items", 10));
+		assertBetween(290, 300, write("items", 10));
+		LinkedHashMap<String, Long> metrics = metrics();
+		assertEquals(3L, (long) metrics.get("rateLimit.delayed"));
+	}
+
+	@Test
+	public void largerItemsTakeMoreUnits() {
+		table("items", 10, 10);
+		//240 bytes are 3 units of 100
+		assertEquals(0, write("items", 240));
+		assertEquals(0, write("items", 240));
+		assertEquals(0, write("items", 240));
+		//one unit left, this one drives the bucket two units below zero
+		assertBetween(190, 200, write("items", 240));
+	}
+
+	@Test
+	public void readsAreChargedForWhatTheyReturned() {
+		table("items", 10, 10);
+		assertEquals(0, limiter.reserve(context, "items", RestType.GETITEM, body(null)));
+		//the read returned an item of 9 units, the 8 beyond the one reserved are charged now
+		limiter.chargeRead("items", Collections.singletonList(item(890)));
+		assertEquals(0, limiter.reserve(context, "items", RestType.GETITEM, body(null)));
+		assertBetween(90, 100, limiter.reserve(context, "items", RestType.QUERYITEMS, body(null)));
+		//writes draw from their own bucket
+		assertEquals(0, write("items", 10));
+	}
+
+	@Test
+	public void tablesWithoutThroughputOrMetadataAreNotPaced() {
+		table("free", 0, 0);
+		for(int i = 0; i < 100; i++){
+			assertEquals(0, write("free", 10));
+			assertEquals(0, write("unknown", 10));
+		}
+		assertEquals(0, limiter.reserve(context, "free", RestType.CREATETABLE, body(null)));
+	}
+
+	@Test
+	public void updatedThroughputKeepsTheDebt() {
+		TableMetadata tm = table("items", 10, 10);
+		for(int i = 0; i < 12; i++)
+			write("items", 10);
+		tm.setThroughputWrite(100);
+		limiter.update(tm);
+		//the two units owed are repaid ten times faster
+		assertBetween(20, 30, write("items", 10));
+	}
+
+	private long write(String table, int size){
+		return limiter.reserve(context, table, RestType.PUTITEM, body(item(size)));
+	}
+
+	private PostBodyBuilder body(LinkedHashMap<String, ItemAttribute> item){
+		PostBodyBuilder pbb = new PostBodyBuilder(context);
+		if(item != null)
+			pbb.addObject("item", item);
+		return pbb;
+	}
+
+	//an item of about the size given: the attribute names and the text
+	private static LinkedHashMap<String, ItemAttribute> item(int size){
+		StringBuilder text = new StringBuilder();
+		for(int i = 0; i < size - 6; i++)
+			text.append('x');
+		LinkedHashMap<String, ItemAttribute> item = new LinkedHashMap<String, ItemAttribute>();
+		item.put("id", new ItemAttribute("1"));
+		item.put("te", new ItemAttribute(text.toString()));
+		return item;
+	}
+
+	private TableMetadata table(String name, int read, int write){
+		TableMetadata tm = new TableMetadata();
+		tm.setName(name);
+		tm.setPrimaryKeyName("id");
+		tm.setPrimaryKeyType(StorageDataType.STRING);
+		tm.setThroughputRead(read);
+		tm.setThroughputWrite(write);
+		context.addTableMeta(tm);
+		return tm;
+	}
+
+	private LinkedHashMap<String, Long> metrics(){
+		LinkedHashMap<String, Long> metrics = new LinkedHashMap<String, Long>();
+		limiter.collectMetrics(metrics);
+		return metrics;
+	}
+
+	//the waits are computed from the clock, which may advance a few milliseconds during the test
+	private static void assertBetween(long min, long max, long wait){
+		assertTrue(wait + " not in [" + min + ", " + max + "]", wait >= min && wait <= max);
+	}
+}
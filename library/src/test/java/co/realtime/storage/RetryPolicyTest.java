@@ -0,0 +1,142 @@
+package co.realtime.storage;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.net.ConnectException;
+import java.util.LinkedHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+
+import com.fasterxml.jackson.core.JsonParseException;
+import com.fasterxml.jackson.databind.JsonNode;
+
+import co.realtime.storage.Rest.RestType;
+import co.realtime.storage.StorageRef.StorageDataType;
+import co.realtime.storage.entities.RetryConfig;
+import co.realtime.storage.ext.OnError;
+import co.realtime.storage.ext.OnItemSnapshot;
+
+public class RetryPolicyTest {
+	private static final String SERVER = "http://storage.test/";
+
+	@Test
+	public void backoffStaysBelowTheDoublingBoundAndTheMaximum() throws Exception {
+		RetryPolicy policy = new RetryPolicy(new RetryConfig(10, 100L, 1000L, 5, 1000L));
+		for(int retry = 1; retry <= 30; retry++){
+			long bound = Math.min(100L << Math.min(retry - 1, 20), 1000L);
+			for(int i = 0; i < 200; i++){
+				long delay = policy.backoff(retry);
+				assertTrue(retry + ": " + delay, delay >= 0 && delay < bound);
+			}
+		}
+	}
+
+	@Test
+	public void onlyServerFailuresAreRetried() throws Exception {
+		RetryPolicy policy = new RetryPolicy(new RetryConfig(3, 100L, 1000L, 5, 1000L));
+		assertTrue(policy.shouldRetry(RestType.GETITEM, new IOException("reset"), 1));
+		assertTrue(policy.shouldRetry(RestType.GETITEM, new HttpStatusException(503, "unavailable"), 1));
+		assertTrue(policy.shouldRetry(RestType.GETITEM, new HttpStatusException(429, "too many requests"), 1));
+		assertFalse(policy.shouldRetry(RestType.GETITEM, new HttpStatusException(400, "bad request"), 1));
+		assertFalse(policy.shouldRetry(RestType.GETITEM, new HttpStatusException(401, "unauthorized"), 1));
+		assertFalse(policy.shouldRetry(RestType.GETITEM, new JsonParseException("bad json", null), 1));
+		//a request that may have been applied is only sent again when it is idempotent, unless it never left
+		assertFalse(policy.shouldRetry(RestType.INCR, new HttpStatusException(503, "unavailable"), 1));
+		assertTrue(policy.shouldRetry(RestType.INCR, new ConnectException("refused"), 1));
+		assertFalse(policy.shouldRetry(RestType.GETITEM, new IOException("reset"), 3));
+	}
+
+	@Test
+	public void breakerLetsOneProbeThroughAndClosesWhenItSucceeds() throws Exception {
+		RetryPolicy policy = new RetryPolicy(new RetryConfig(3, 100L, 1000L, 3, 100L));
+		for(int i = 0; i < 2; i++)
+			policy.record(SERVER, false);
+		assertTrue(policy.allowRequest(SERVER));
+		policy.record(SERVER, false);
+		//open
+		assertFalse(policy.allowRequest(SERVER));
+
+		Thread.sleep(150);
+		//half open, one probe only
+		assertTrue(policy.allowRequest(SERVER));
+		assertFalse(policy.allowRequest(SERVER));
+		assertFalse(policy.allowRequest(SERVER));
+
+		policy.record(SERVER, true);
+		//closed
+		assertTrue(policy.allowRequest(SERVER));
+		assertTrue(policy.allowRequest(SERVER));
+		LinkedHashMap<String, Long> metrics = new LinkedHashMap<String, Long>();
+		policy.collectMetrics(metrics);
+		assertEquals(1L, (long) metrics.get("breaker.opened"));
+		assertEquals(0L, (long) metrics.get("breaker.open"));
+	}
+
+	@Test
+	public void failedProbeOpensTheBreakerForAnotherPeriod() throws Exception {
+		RetryPolicy policy = new RetryPolicy(new RetryConfig(3, 100L, 1000L, 1, 100L));
+		policy.record(SERVER, false);
+		assertFalse(policy.allowRequest(SERVER));
+		Thread.sleep(150);
+		assertTrue(policy.allowRequest(SERVER));
+		policy.record(SERVER, false);
+		assertFalse(policy.allowRequest(SERVER));
+		LinkedHashMap<String, Long> metrics = new LinkedHashMap<String, Long>();
+		policy.collectMetrics(metrics);
+		assertEquals(2L, (long) metrics.get("breaker.opened"));
+	}
+
+	@Test
+	public void refusedRequestFailsAtOnceWithoutTrippingTheBreaker() throws Exception {
+		assertEquals(1, requestsUntilError(401, 1005));
+	}
+
+	@Test
+	public void failingServerIsRetriedUpToTheMaximumAttempts() throws Exception {
+		assertEquals(3, requestsUntilError(503, 1005));
+	}
+
+	//the requests a getItem sends to a server that always answers with the status, checking the error code it ends with
+	private static int requestsUntilError(final int status, int expectedCode) throws Exception {
+		final AtomicInteger requests = new AtomicInteger();
+		StubStorage storage = new StubStorage(new StubStorage.Responder(){
+			@Override
+			public String respond(String operation, JsonNode body) {
+				requests.incrementAndGet();
+				return null;
+			}
+		}, status);
+		try {
+			storage.context.setRetryConfig(new RetryConfig(3, 10L, 20L, 5, 10000L));
+			TableRef table = storage.table("items", StorageDataType.STRING);
+			final CountDownLatch done = new CountDownLatch(1);
+			final AtomicInteger code = new AtomicInteger();
+			table.item(new ItemAttribute("a")).get(new OnItemSnapshot(){
+				@Override
+				public void run(ItemSnapshot itemSnapshot) {
+					done.countDown();
+				}
+			}, new OnError(){
+				@Override
+				public void run(Integer errorCode, String errorMessage) {
+					code.set(errorCode);
+					done.countDown();
+				}
+			});
+			assertTrue(done.await(10, TimeUnit.SECONDS));
+			assertEquals(expectedCode, code.get());
+			LinkedHashMap<String, Long> metrics = new LinkedHashMap<String, Long>();
+			storage.context.retryPolicy.collectMetrics(metrics);
+			assertEquals(0L, (long) metrics.get("breaker.opened"));
+			return requests.get();
+		} finally {
+			storage.stop();
+		}
+	}
+}
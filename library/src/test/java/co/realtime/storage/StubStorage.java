@@ -0,0 +1,77 @@
+package co.realtime.storage;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+import co.realtime.storage.StorageRef.StorageDataType;
+import co.realtime.storage.entities.TableMetadata;
+
+//A local server answering the storage requests of a test, and a storage context without messaging that sends them to it.
+class StubStorage {
+	interface Responder {
+		//the json answered with status 200, or null to fail the request with the failure status of the stub
+		String respond(String operation, JsonNode body);
+	}
+
+	final ConcurrentLinkedQueue<JsonNode> requests = new ConcurrentLinkedQueue<JsonNode>();
+	final StorageContext context;
+	private final HttpServer server;
+	private final ObjectMapper mapper = new ObjectMapper();
+
+	StubStorage(Responder responder) throws IOException {
+		this(responder, 500);
+	}
+
+	StubStorage(final Responder responder, final int failureStatus) throws IOException {
+		server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+		server.createContext("/", new HttpHandler(){
+			@Override
+			public void handle(HttpExchange exchange) throws IOException {
+				JsonNode body = mapper.readTree(read(exchange.getRequestBody()));
+				requests.add(body);
+				String operation = exchange.getRequestURI().getPath().substring(1);
+				String response = responder.respond(operation, body);
+				byte[] bytes = (response != null ? response : "{\"message\":\"failed\"}").getBytes("UTF-8");
+				exchange.sendResponseHeaders(response != null ? 200 : failureStatus, bytes.length);
+				OutputStream out = exchange.getResponseBody();
+				out.write(bytes);
+				out.close();
+			}
+		});
+		server.start();
+		context = new StorageContext(null, null, "token", false, false, "http://127.0.0.1:" + server.getAddress().getPort() + "/", null);
+	}
+
+	//a table whose metadata is known, so its calls go straight to the server
+	TableRef table(String name, StorageDataType primaryKeyType){
+		TableMetadata tm = new TableMetadata();
+		tm.setName(name);
+		tm.setPrimaryKeyName("id");
+		tm.setPrimaryKeyType(primaryKeyType);
+		context.addTableMeta(tm);
+		return new TableRef(context, name);
+	}
+
+	void stop(){
+		server.stop(0);
+	}
+
+	private static String read(InputStream in) throws IOException {
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		byte[] buffer = new byte[4096];
+		int n;
+		while((n = in.read(buffer)) != -1)
+			out.write(buffer, 0, n);
+		return out.toString("UTF-8");
+	}
+}
@@ -0,0 +1,90 @@
+package co.realtime.storage;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+
+import co.realtime.storage.StorageRef.StorageDataType;
+import co.realtime.storage.StorageRef.StorageEvent;
+import co.realtime.storage.entities.DispatchConfig;
+import co.realtime.storage.entities.TableMetadata;
+import co.realtime.storage.ext.OnItemSnapshot;
+
+//Dispatch of item notifications with 10k item listeners registered, and de-duplication of 10k item keys
+//as done by getItems. Run as a main class: java co.realtime.storage.SubscriptionDispatchBenchmark
+public class SubscriptionDispatchBenchmark {
+	private static final int KEYS = 10000;
+
+	public static void main(String[] args) {
+		final SubscriptionRegistry registry = new SubscriptionRegistry();
+		final CallbackDispatcher dispatcher = new CallbackDispatcher(new DispatchConfig(), null, null);
+		final long[] fired = new long[1];
+		OnItemSnapshot listener = new OnItemSnapshot(){
+			@Override
+			public void run(ItemSnapshot itemSnapshot) {
+				fired[0]++;
+			}
+		};
+		final String[] channels = new String[KEYS];
+		for(int i = 0; i < KEYS; i++){
+			Event ev = new Event(StorageEvent.UPDATE, "table", new ItemAttribute("key" + i), null, false, false, false, listener);
+			registry.add(ev);
+			channels[i] = ev.getChannelName();
+		}
+
+		BenchmarkHarness.measure("fire, 10k item channels", 1000000, new BenchmarkHarness.Case(){
+			@Override
+			public long run(int ops) {
+				//a stride over the channels, so consecutive messages do not hit the same one
+				int channel = 0;
+				for(int i = 0; i < ops; i++){
+					registry.fire(channels[channel], StorageEvent.UPDATE, null, dispatcher);
+					channel = (channel + 7919) % KEYS;
+				}
+				return fired[0];
+			}
+		});
+		BenchmarkHarness.measure("fire, channel without listeners", 1000000, new BenchmarkHarness.Case(){
+			@Override
+			public long run(int ops) {
+				long empty = 0;
+				for(int i = 0; i < ops; i++){
+					if(registry.fire("rtcs_table:none", StorageEvent.UPDATE, null, dispatcher))
+						empty++;
+				}
+				return empty;
+			}
+		});
+
+		final TableMetadata tm = new TableMetadata();
+		tm.setName("table");
+		tm.setPrimaryKeyName("id");
+		tm.setPrimaryKeyType(StorageDataType.NUMBER);
+		//each key twice, once as a long and once as the text of the same number
+		final ArrayList<LinkedHashMap<String, ItemAttribute>> keys = new ArrayList<LinkedHashMap<String, ItemAttribute>>();
+		for(int i = 0; i < KEYS; i++){
+			keys.add(key(new ItemAttribute(9007199254740992L + i)));
+			keys.add(key(new ItemAttribute(Long.toString(9007199254740992L + i))));
+		}
+		BenchmarkHarness.measure("dedupe 20k keys to 10k, per key", keys.size(), new BenchmarkHarness.Case(){
+			@Override
+			public long run(int ops) {
+				HashSet<ItemKey> unique = new HashSet<ItemKey>();
+				for(int i = 0; i < ops; i++){
+					//fresh attributes, the cached hashes would hide the cost of the first comparison
+					ItemAttribute id = keys.get(i).get("id");
+					unique.add(ItemKey.of(tm, key(id.isString() ? new ItemAttribute((String) id.get()) : new ItemAttribute((Number) id.get()))));
+				}
+				if(unique.size() != KEYS)
+					throw new IllegalStateException("expected " + KEYS + " keys, got " + unique.size());
+				return unique.size();
+			}
+		});
+	}
+
+	private static LinkedHashMap<String, ItemAttribute> key(ItemAttribute id){
+		LinkedHashMap<String, ItemAttribute> key = new LinkedHashMap<String, ItemAttribute>();
+		key.put("id", id);
+		return key;
+	}
+}
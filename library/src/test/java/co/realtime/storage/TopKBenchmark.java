@@ -0,0 +1,52 @@
+package co.realtime.storage;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Random;
+
+import co.realtime.storage.StorageRef.StorageOrder;
+
+//The first k items of an ordered, limited scan: selected by TopKSelector while the items arrive, against all
+//the items collected and sorted with Collections.sort, as the scans did before.
+//Run as a main class, with a heap of 1 GB for the million items: java -Xmx1g co.realtime.storage.TopKBenchmark
+public class TopKBenchmark {
+	private static final int[] SIZES = { 100000, 1000000 };
+	private static final int[] LIMITS = { 10, 1000 };
+	private static final int ROUNDS = 5;
+
+	public static void main(String[] args) {
+		for(int n : SIZES){
+			final ArrayList<LinkedHashMap<String, ItemAttribute>> items = items(n, new Random(n));
+			for(final int k : LIMITS){
+				BenchmarkHarness.measure("top " + k + " of " + n + ", TopKSelector, per item", n, ROUNDS, new BenchmarkHarness.Case(){
+					@Override
+					public long run(int ops) {
+						TopKSelector selector = new TopKSelector(k, StorageOrder.DESC, "score");
+						selector.offer(items);
+						return selector.result().size();
+					}
+				});
+				BenchmarkHarness.measure("top " + k + " of " + n + ", Collections.sort, per item", n, ROUNDS, new BenchmarkHarness.Case(){
+					@Override
+					public long run(int ops) {
+						ArrayList<LinkedHashMap<String, ItemAttribute>> all = new ArrayList<LinkedHashMap<String, ItemAttribute>>(items);
+						Collections.sort(all, Collections.reverseOrder(new LHMItemsComparator("score")));
+						return all.subList(0, k).size();
+					}
+				});
+			}
+		}
+	}
+
+	private static ArrayList<LinkedHashMap<String, ItemAttribute>> items(int n, Random random){
+		ArrayList<LinkedHashMap<String, ItemAttribute>> items = new ArrayList<LinkedHashMap<String, ItemAttribute>>(n);
+		for(int i = 0; i < n; i++){
+			LinkedHashMap<String, ItemAttribute> item = new LinkedHashMap<String, ItemAttribute>();
+			item.put("id", new ItemAttribute("item-" + i));
+			item.put("score", new ItemAttribute(random.nextInt(1000000)));
+			items.add(item);
+		}
+		return items;
+	}
+}